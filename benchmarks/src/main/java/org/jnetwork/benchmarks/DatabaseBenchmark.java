@@ -0,0 +1,118 @@
+package org.jnetwork.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.jnetwork.database.ColumnHeader;
+import org.jnetwork.database.Database;
+import org.jnetwork.database.EntrySet;
+import org.jnetwork.database.QueryException;
+import org.jnetwork.database.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Database#query(String)} against a table of the given size in
+ * a temporary directory. The table is restored to its original rows before
+ * every iteration, so rows added or removed while measuring do not build up.
+ *
+ * Tables are rewritten on every SET and REMOVE, so those scale with the size
+ * of the table.
+ *
+ * @author Lucas Baizer
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+	private static final String TABLE = "Bench";
+
+	@Param({ "100", "1000", "10000" })
+	public int tableSize;
+
+	private Path folder;
+	private Database database;
+	private File tableFile;
+	private byte[] originalRows;
+
+	@Setup(Level.Trial)
+	public void createTable() throws IOException, QueryException {
+		folder = Files.createTempDirectory("jnetwork-bench");
+
+		Table table = new Table(folder.toString(), TABLE,
+				new ColumnHeader[] { new ColumnHeader("Id", ColumnHeader.STORAGE_TYPE_INTEGER),
+						new ColumnHeader("Name", ColumnHeader.STORAGE_TYPE_STRING) });
+		database = new Database();
+		database.addTable(table);
+		for (int i = 0; i < tableSize; i++) {
+			database.query("ADD [" + i + ", user" + i + "] IN " + TABLE);
+		}
+
+		tableFile = table.getTableFile();
+		originalRows = Files.readAllBytes(tableFile.toPath());
+	}
+
+	@Setup(Level.Iteration)
+	public void restoreTable() throws IOException {
+		// truncates the same file, since the table keeps it open for appending
+		Files.write(tableFile.toPath(), originalRows);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteTable() throws IOException {
+		try (Stream<Path> files = Files.walk(folder)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	private int randomId() {
+		return ThreadLocalRandom.current().nextInt(tableSize);
+	}
+
+	@Benchmark
+	public EntrySet add() throws IOException, QueryException {
+		return database.query("ADD [" + tableSize + ", added] IN " + TABLE);
+	}
+
+	@Benchmark
+	public EntrySet get() throws IOException, QueryException {
+		return database.query("GET WHERE Id IS " + randomId() + " IN " + TABLE);
+	}
+
+	@Benchmark
+	public EntrySet set() throws IOException, QueryException {
+		int id = randomId();
+		return database.query("SET WHERE Id IS " + id + " TO [" + id + ", renamed" + id + "] IN " + TABLE);
+	}
+
+	/**
+	 * Removes a row and adds it back, so the table keeps its size.
+	 */
+	@Benchmark
+	public EntrySet removeAndAdd() throws IOException, QueryException {
+		int id = randomId();
+		EntrySet removed = database.query("REMOVE WHERE Id IS " + id + " IN " + TABLE);
+		database.query("ADD [" + id + ", user" + id + "] IN " + TABLE);
+		return removed;
+	}
+}
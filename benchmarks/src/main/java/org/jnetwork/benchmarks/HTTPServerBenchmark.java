@@ -0,0 +1,99 @@
+package org.jnetwork.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetwork.HTTPConnectionCallback;
+import org.jnetwork.HTTPContentType;
+import org.jnetwork.HTTPRequest;
+import org.jnetwork.HTTPResponse;
+import org.jnetwork.HTTPServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link HTTPServer} handling GET requests over loopback, from a
+ * client that keeps its connections alive.
+ *
+ * @author Lucas Baizer
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HTTPServerBenchmark {
+	@State(Scope.Benchmark)
+	public static class Endpoint {
+		HTTPServer server;
+		HttpClient client;
+		HttpRequest textRequest;
+		HttpRequest queryRequest;
+
+		@Setup(Level.Trial)
+		public void start() throws IOException {
+			int port = Loopback.freeTCPPort();
+			server = new HTTPServer(port);
+			server.start();
+			server.get("/text", new HTTPConnectionCallback() {
+				@Override
+				public int get(HTTPRequest req, HTTPResponse res) throws IOException {
+					return res.contentType(HTTPContentType.TEXT_PLAIN).send("Hello, world!");
+				}
+			});
+			server.get("/query", new HTTPConnectionCallback() {
+				@Override
+				public int get(HTTPRequest req, HTTPResponse res) throws IOException {
+					return res.contentType(HTTPContentType.TEXT_PLAIN).send(req.param("name") + " " + req.param("page") + " "
+							+ req.header("Accept").getFirstValue());
+				}
+			});
+
+			client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+			textRequest = HttpRequest.newBuilder(URI.create("http://" + Loopback.HOST + ":" + port + "/text"))
+					.GET().build();
+			queryRequest = HttpRequest
+					.newBuilder(URI.create(
+							"http://" + Loopback.HOST + ":" + port + "/query?name=jnetwork&page=3&sort=desc"))
+					.header("Accept", "text/plain").GET().build();
+		}
+
+		@TearDown(Level.Trial)
+		public void stop() throws IOException {
+			server.close();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public String textLatency(Endpoint endpoint) throws IOException, InterruptedException {
+		return endpoint.client.send(endpoint.textRequest, HttpResponse.BodyHandlers.ofString()).body();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public String textThroughput(Endpoint endpoint) throws IOException, InterruptedException {
+		return endpoint.client.send(endpoint.textRequest, HttpResponse.BodyHandlers.ofString()).body();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public String queryLatency(Endpoint endpoint) throws IOException, InterruptedException {
+		return endpoint.client.send(endpoint.queryRequest, HttpResponse.BodyHandlers.ofString()).body();
+	}
+}
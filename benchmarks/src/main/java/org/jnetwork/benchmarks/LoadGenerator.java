@@ -0,0 +1,622 @@
+package org.jnetwork.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jnetwork.ClientData;
+import org.jnetwork.CompactCodec;
+import org.jnetwork.Connection;
+import org.jnetwork.DataPackage;
+import org.jnetwork.Keystore;
+import org.jnetwork.LatencyHistogram;
+import org.jnetwork.MessageCodec;
+import org.jnetwork.Protocol;
+import org.jnetwork.SSLServer;
+import org.jnetwork.SerializationCodec;
+import org.jnetwork.Server;
+import org.jnetwork.TCPConnectionCallback;
+import org.jnetwork.UDPConnectionCallback;
+import org.jnetwork.UDPServer;
+
+/**
+ * Drives a {@link Server} over loopback to find the load it saturates at.
+ * Connections are opened with the {@link Protocol}'s {@link
+ * org.jnetwork.NetworkFactory}, and each sends {@link DataPackage}s drawn from
+ * a {@link PayloadMix} that the server echoes back. Unless a port is given,
+ * an echo server is started with the same factory.
+ *
+ * Messages are sent in one of two modes:
+ * <ul>
+ * <li>{@link Mode#CLOSED} - Each connection waits for a reply before sending
+ * its next message, optionally throttled to a total rate. When throttled,
+ * latencies are corrected for coordinated omission with
+ * {@link LatencyHistogram#recordCorrected(long, long)}, so a stall counts
+ * against the messages it kept from being sent. When not throttled, the
+ * connections send as fast as the server replies, and latencies cannot be
+ * corrected.</li>
+ * <li>{@link Mode#OPEN} - Each connection sends on a fixed schedule at its
+ * share of the total rate, whether or not replies have arrived, and latency
+ * is measured from when each message was meant to be sent, so time spent
+ * queued behind a slow server is counted.</li>
+ * </ul>
+ *
+ * Run it from the command line with, for example:
+ *
+ * <pre>
+ * java -cp benchmarks.jar org.jnetwork.benchmarks.LoadGenerator --protocol TCP --connections 32 --mode open
+ *         --rate 50000 --duration 30s --mix bytes:64=90,bytes:16384=10
+ * </pre>
+ *
+ * @author Lucas Baizer
+ */
+public class LoadGenerator {
+	/**
+	 * How messages are paced.
+	 */
+	public enum Mode {
+		/**
+		 * Each connection waits for a reply before sending its next message.
+		 */
+		CLOSED,
+		/**
+		 * Each connection sends on a fixed schedule, whether or not replies have
+		 * arrived.
+		 */
+		OPEN;
+	}
+
+	private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(2);
+
+	private Protocol protocol = Protocol.TCP;
+	private int port;
+	private int connections = 1;
+	private Mode mode = Mode.CLOSED;
+	private double rate;
+	private long warmup = TimeUnit.SECONDS.toNanos(2);
+	private long duration = TimeUnit.SECONDS.toNanos(10);
+	private PayloadMix mix = PayloadMix.parse("bytes:64");
+	private String codec = "serialization";
+	private File keystore = new File("keystore.jks");
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final AtomicLong sequence = new AtomicLong();
+	private volatile boolean measuring;
+	private volatile boolean stopping;
+
+	/**
+	 * The result of a run.
+	 *
+	 * This class is immutable, apart from its histogram, which is no longer
+	 * recorded to.
+	 */
+	public static final class Result {
+		private final LoadGenerator generator;
+		private final long completed;
+		private final long errors;
+		private final long lost;
+		private final long elapsed;
+		private final LatencyHistogram latency;
+
+		private Result(LoadGenerator generator, long completed, long errors, long lost, long elapsed,
+				LatencyHistogram latency) {
+			this.generator = generator;
+			this.completed = completed;
+			this.errors = errors;
+			this.lost = lost;
+			this.elapsed = elapsed;
+			this.latency = latency;
+		}
+
+		/**
+		 * @return The number of replies received while measuring.
+		 */
+		public long getCompleted() {
+			return completed;
+		}
+
+		/**
+		 * @return The number of connections that failed.
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return The number of messages never replied to, such as lost
+		 *         datagrams.
+		 */
+		public long getLost() {
+			return lost;
+		}
+
+		/**
+		 * @return The replies received per second while measuring.
+		 */
+		public double getThroughput() {
+			return elapsed == 0 ? 0 : completed * 1e9 / elapsed;
+		}
+
+		/**
+		 * @return The round-trip latencies measured.
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder();
+			out.append(String.format("protocol=%s mode=%s connections=%d rate=%s mix=%s codec=%s%n",
+					generator.protocol, generator.mode, generator.connections,
+					generator.rate > 0 ? String.format("%.0f/s", generator.rate) : "unthrottled", generator.mix,
+					generator.codec));
+			out.append(String.format("completed=%d errors=%d lost=%d throughput=%.1f msg/s%n", completed, errors,
+					lost, getThroughput()));
+			out.append("latency (us): ").append(describe(latency));
+			if (generator.mode == Mode.CLOSED && generator.rate <= 0) {
+				out.append(" [not corrected for coordinated omission; set a rate to correct it]");
+			}
+			out.append(String.format("%n"));
+			return out.toString();
+		}
+
+		private static String describe(LatencyHistogram histogram) {
+			TimeUnit us = TimeUnit.MICROSECONDS;
+			return String.format("p50=%.1f p99=%.1f p99.9=%.1f max=%.1f mean=%.1f",
+					histogram.getPercentile(50, us), histogram.getPercentile(99, us),
+					histogram.getPercentile(99.9, us), histogram.getMax(us), histogram.getMean(us));
+		}
+	}
+
+	/**
+	 * Runs the load, blocking for the warmup and the measured duration.
+	 *
+	 * @return The result.
+	 * @throws IOException
+	 *             If the server cannot be started, or a connection cannot be
+	 *             opened.
+	 */
+	public Result run() throws IOException {
+		if (mode == Mode.OPEN && rate <= 0) {
+			throw new IllegalStateException("An open loop needs a rate");
+		}
+
+		Server server = null;
+		int target = port;
+		if (target == 0) {
+			target = protocol == Protocol.UDP ? Loopback.freeUDPPort() : Loopback.freeTCPPort();
+			server = startEchoServer(target);
+		}
+
+		List<Connection> opened = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		List<Map<Long, Long>> pending = new ArrayList<>();
+		try {
+			for (int i = 0; i < connections; i++) {
+				Connection connection = protocol.getNetworkFactory().createConnection(Loopback.HOST, target);
+				connection.setMessageCodec(createCodec());
+				opened.add(connection);
+			}
+
+			// each connection keeps its share of the total rate
+			long interval = rate > 0 ? (long) (connections * 1e9 / rate) : 0;
+			for (int i = 0; i < connections; i++) {
+				Connection connection = opened.get(i);
+				if (mode == Mode.CLOSED) {
+					threads.add(start("JNetwork-Load-" + i, closedLoop(connection, interval)));
+				} else {
+					Map<Long, Long> intended = new ConcurrentHashMap<>();
+					pending.add(intended);
+					threads.add(start("JNetwork-Load-Sender-" + i, openLoopSender(connection, interval, intended)));
+					threads.add(start("JNetwork-Load-Receiver-" + i, openLoopReceiver(connection, intended)));
+				}
+			}
+
+			sleep(warmup);
+			latency.reset();
+			completed.reset();
+			measuring = true;
+			long start = System.nanoTime();
+			sleep(duration);
+			measuring = false;
+			long elapsed = System.nanoTime() - start;
+			long count = completed.sum();
+
+			stopping = true;
+			long lost = 0;
+			if (mode == Mode.OPEN) {
+				long deadline = System.nanoTime() + DRAIN_TIMEOUT;
+				for (Map<Long, Long> intended : pending) {
+					while (!intended.isEmpty() && System.nanoTime() < deadline) {
+						sleep(TimeUnit.MILLISECONDS.toNanos(10));
+					}
+					lost += intended.size();
+				}
+			}
+
+			return new Result(this, count, errors.sum(), lost, elapsed, latency);
+		} finally {
+			stopping = true;
+			for (Connection connection : opened) {
+				try {
+					connection.close();
+				} catch (IOException e) {
+					// the connection is already broken
+				}
+			}
+			for (Thread thread : threads) {
+				try {
+					thread.join(TimeUnit.NANOSECONDS.toMillis(DRAIN_TIMEOUT));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (server != null) {
+				server.close();
+			}
+		}
+	}
+
+	private Server startEchoServer(int port) throws IOException {
+		Server server;
+		if (protocol == Protocol.UDP) {
+			server = protocol.getNetworkFactory().createServer(port, new UDPConnectionCallback() {
+				@Override
+				public void dataReceived(ClientData event, byte[] data) {
+					Connection connection = event.getConnection();
+					try {
+						// the codec ignores the rest of the receive buffer after the message
+						connection.setMessageCodec(createCodec());
+						connection.writeMessage(connection.getMessageCodec().decode(ByteBuffer.wrap(data)));
+					} catch (IOException | ClassNotFoundException e) {
+						errors.increment();
+					}
+				}
+			});
+			((UDPServer) server).setBufferSize(65507);
+		} else {
+			server = protocol.getNetworkFactory().createServer(port, new TCPConnectionCallback() {
+				@Override
+				public void clientConnected(ClientData event) {
+					Connection connection = event.getConnection();
+					connection.setMessageCodec(createCodec());
+					try {
+						while (!connection.isClosed()) {
+							Serializable message = connection.readMessage();
+							connection.writeMessage(message);
+							connection.flush();
+						}
+					} catch (IOException | ClassNotFoundException e) {
+						// the client disconnected
+					}
+				}
+			});
+			if (protocol == Protocol.SSL) {
+				((SSLServer) server).setKeystore(new Keystore(keystore, "password", "jnetwork", "password"));
+			}
+		}
+
+		server.setJMXEnabled(false);
+		server.start();
+		return server;
+	}
+
+	private MessageCodec createCodec() {
+		switch (codec) {
+		case "serialization":
+			return new SerializationCodec();
+		case "compact":
+			return new CompactCodec();
+		default:
+			throw new IllegalArgumentException("Unknown codec: " + codec);
+		}
+	}
+
+	private Runnable closedLoop(Connection connection, long interval) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				Random random = new Random();
+				long next = System.nanoTime();
+				try {
+					while (!stopping) {
+						if (interval > 0) {
+							sleepUntil(next);
+						}
+
+						long start = System.nanoTime();
+						connection.writeMessage(mix.next(random));
+						connection.flush();
+						connection.readMessage();
+						long end = System.nanoTime();
+
+						if (measuring) {
+							latency.recordCorrected(end - start, interval);
+							completed.increment();
+						}
+						// a stalled message is made up for by the correction, not by sending in a burst
+						next = Math.max(next + interval, end);
+					}
+				} catch (IOException | ClassNotFoundException e) {
+					if (!stopping) {
+						errors.increment();
+					}
+				}
+			}
+		};
+	}
+
+	private Runnable openLoopSender(Connection connection, long interval, Map<Long, Long> intended) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				Random random = new Random();
+				long next = System.nanoTime();
+				try {
+					while (!stopping) {
+						sleepUntil(next);
+
+						long id = sequence.incrementAndGet();
+						intended.put(id, next);
+						DataPackage message = mix.next(random);
+						message.setCorrelationID(Long.toString(id));
+						connection.writeMessage(message);
+						connection.flush();
+
+						// a late send is not made up for by skipping ahead, so the
+						// delay is counted in the latency of every message behind it
+						next += interval;
+					}
+				} catch (IOException e) {
+					if (!stopping) {
+						errors.increment();
+					}
+				}
+			}
+		};
+	}
+
+	private Runnable openLoopReceiver(Connection connection, Map<Long, Long> intended) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (!stopping || !intended.isEmpty()) {
+						DataPackage reply = connection.readMessage();
+						long end = System.nanoTime();
+
+						Long sent = intended.remove(Long.parseLong(reply.getCorrelationID()));
+						if (sent != null && measuring) {
+							latency.record(end - sent);
+							completed.increment();
+						}
+					}
+				} catch (IOException | ClassNotFoundException e) {
+					if (!stopping) {
+						errors.increment();
+					}
+				}
+			}
+		};
+	}
+
+	private static Thread start(String name, Runnable task) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static void sleep(long nanos) {
+		sleepUntil(System.nanoTime() + nanos);
+	}
+
+	private static void sleepUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+
+	public Protocol getProtocol() {
+		return protocol;
+	}
+
+	public void setProtocol(Protocol protocol) {
+		this.protocol = protocol;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Sets the port of an already running server to drive. It must echo every
+	 * <code>DataPackage</code> it receives back to its sender.
+	 *
+	 * @param port
+	 *            - The port, or <code>0</code> to start an echo server.
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public int getConnections() {
+		return connections;
+	}
+
+	public void setConnections(int connections) {
+		if (connections < 1) {
+			throw new IllegalArgumentException("There must be at least one connection");
+		}
+		this.connections = connections;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * Sets the total number of messages sent per second, across every
+	 * connection.
+	 *
+	 * @param rate
+	 *            - The rate, or <code>0</code> for a closed loop that sends as
+	 *            fast as the server replies.
+	 */
+	public void setRate(double rate) {
+		this.rate = Math.max(rate, 0);
+	}
+
+	public long getWarmup(TimeUnit unit) {
+		return unit.convert(warmup, TimeUnit.NANOSECONDS);
+	}
+
+	public void setWarmup(long warmup, TimeUnit unit) {
+		this.warmup = unit.toNanos(Math.max(warmup, 0));
+	}
+
+	public long getDuration(TimeUnit unit) {
+		return unit.convert(duration, TimeUnit.NANOSECONDS);
+	}
+
+	public void setDuration(long duration, TimeUnit unit) {
+		this.duration = unit.toNanos(Math.max(duration, 1));
+	}
+
+	public PayloadMix getMix() {
+		return mix;
+	}
+
+	public void setMix(PayloadMix mix) {
+		this.mix = mix;
+	}
+
+	public String getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @param codec
+	 *            - <code>serialization</code> or <code>compact</code>.
+	 */
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	public File getKeystore() {
+		return keystore;
+	}
+
+	/**
+	 * Sets the keystore the SSL echo server uses, which must have the password
+	 * and alias of the one in the repository.
+	 */
+	public void setKeystore(File keystore) {
+		this.keystore = keystore;
+	}
+
+	/**
+	 * Runs the load generator from the command line. Every option is optional:
+	 *
+	 * <pre>
+	 * --protocol TCP|UNIX|SSL|UDP the transport (TCP)
+	 * --port N                   drive a running echo server instead of starting one
+	 * --connections N            the number of connections (1)
+	 * --mode closed|open         how messages are paced (closed)
+	 * --rate N                   total messages per second; required when open
+	 * --warmup 2s                time before measuring starts
+	 * --duration 10s             time spent measuring
+	 * --mix bytes:64=1           the payload mix; see PayloadMix
+	 * --size N                   shorthand for --mix bytes:N
+	 * --codec serialization|compact
+	 * --keystore keystore.jks    the keystore of the SSL echo server
+	 * </pre>
+	 */
+	public static void main(String[] args) throws IOException {
+		LoadGenerator generator = new LoadGenerator();
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+			String value = args[++i];
+
+			switch (option) {
+			case "--protocol":
+				generator.setProtocol(Protocol.valueOf(value.toUpperCase()));
+				break;
+			case "--port":
+				generator.setPort(Integer.parseInt(value));
+				break;
+			case "--connections":
+				generator.setConnections(Integer.parseInt(value));
+				break;
+			case "--mode":
+				generator.setMode(Mode.valueOf(value.toUpperCase()));
+				break;
+			case "--rate":
+				generator.setRate(Double.parseDouble(value));
+				break;
+			case "--warmup":
+				generator.setWarmup(parseDuration(value), TimeUnit.MILLISECONDS);
+				break;
+			case "--duration":
+				generator.setDuration(parseDuration(value), TimeUnit.MILLISECONDS);
+				break;
+			case "--mix":
+				generator.setMix(PayloadMix.parse(value));
+				break;
+			case "--size":
+				generator.setMix(PayloadMix.parse("bytes:" + value));
+				break;
+			case "--codec":
+				generator.setCodec(value);
+				break;
+			case "--keystore":
+				generator.setKeystore(new File(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + option);
+			}
+		}
+
+		System.out.print(generator.run());
+	}
+
+	/**
+	 * @return A duration such as <code>500ms</code>, <code>10s</code> or
+	 *         <code>2m</code>, in milliseconds. A bare number is in seconds.
+	 */
+	private static long parseDuration(String value) {
+		if (value.endsWith("ms")) {
+			return Long.parseLong(value.substring(0, value.length() - 2));
+		} else if (value.endsWith("s")) {
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(value.substring(0, value.length() - 1)));
+		} else if (value.endsWith("m")) {
+			return TimeUnit.MINUTES.toMillis(Long.parseLong(value.substring(0, value.length() - 1)));
+		}
+		return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+	}
+}
@@ -0,0 +1,47 @@
+package org.jnetwork.benchmarks;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+
+/**
+ * Helpers for running servers and clients on the loopback interface.
+ *
+ * @author Lucas Baizer
+ */
+final class Loopback {
+	static final String HOST = "localhost";
+
+	private Loopback() {
+	}
+
+	/**
+	 * @return A TCP port that was free when this was called.
+	 */
+	static int freeTCPPort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * @return A UDP port that was free when this was called.
+	 */
+	static int freeUDPPort() throws IOException {
+		try (DatagramSocket socket = new DatagramSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * @return A payload of the given size with no zero bytes, since the secure
+	 *         datagram transport trims trailing zeros from what it receives.
+	 */
+	static byte[] payload(int size) {
+		byte[] payload = new byte[size];
+		for (int i = 0; i < size; i++) {
+			payload[i] = (byte) ('a' + i % 26);
+		}
+		return payload;
+	}
+}
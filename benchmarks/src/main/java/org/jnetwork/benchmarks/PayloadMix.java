@@ -0,0 +1,139 @@
+package org.jnetwork.benchmarks;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jnetwork.DataPackage;
+
+/**
+ * A weighted mix of the payloads the {@link LoadGenerator} sends, each wrapped
+ * in a {@link DataPackage}. A mix is written as a comma-separated list of
+ * <code>kind:size=weight</code> entries, such as
+ * <code>bytes:64=70,text:1024=20,objects:16=10</code>, where the kind is one
+ * of:
+ * <ul>
+ * <li><code>bytes</code> - A <code>byte[]</code> of <code>size</code>
+ * bytes.</li>
+ * <li><code>text</code> - A <code>String</code> of <code>size</code>
+ * characters.</li>
+ * <li><code>objects</code> - <code>size</code> small objects, alternating
+ * between <code>Integer</code>s, <code>Long</code>s and
+ * <code>String</code>s.</li>
+ * </ul>
+ * The weight may be left out, and defaults to <code>1</code>.
+ *
+ * This class is immutable.
+ *
+ * @author Lucas Baizer
+ */
+public final class PayloadMix {
+	private final String spec;
+	private final Serializable[][] payloads;
+	private final int[] cumulativeWeights;
+	private final int totalWeight;
+
+	private PayloadMix(String spec, List<Serializable[]> payloads, List<Integer> weights) {
+		this.spec = spec;
+		this.payloads = payloads.toArray(new Serializable[payloads.size()][]);
+		this.cumulativeWeights = new int[weights.size()];
+
+		int total = 0;
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			total += weights.get(i);
+			cumulativeWeights[i] = total;
+		}
+		this.totalWeight = total;
+	}
+
+	/**
+	 * Parses a mix.
+	 *
+	 * @param spec
+	 *            - The mix, such as <code>bytes:64=70,text:1024=30</code>.
+	 * @return The mix.
+	 * @throws IllegalArgumentException
+	 *             If <code>spec</code> is malformed.
+	 */
+	public static PayloadMix parse(String spec) {
+		List<Serializable[]> payloads = new ArrayList<>();
+		List<Integer> weights = new ArrayList<>();
+
+		for (String entry : spec.split(",")) {
+			entry = entry.trim();
+			int colon = entry.indexOf(':');
+			int equals = entry.indexOf('=');
+			if (colon < 0 || (equals >= 0 && equals < colon)) {
+				throw new IllegalArgumentException("Payload mix entry must be kind:size[=weight]: " + entry);
+			}
+
+			String kind = entry.substring(0, colon);
+			int size;
+			int weight;
+			try {
+				size = Integer.parseInt(entry.substring(colon + 1, equals < 0 ? entry.length() : equals));
+				weight = equals < 0 ? 1 : Integer.parseInt(entry.substring(equals + 1));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Payload mix entry has a malformed number: " + entry);
+			}
+			if (size < 0 || weight < 1) {
+				throw new IllegalArgumentException("Payload mix entry must have size >= 0 and weight >= 1: " + entry);
+			}
+
+			payloads.add(createPayload(kind, size));
+			weights.add(weight);
+		}
+
+		return new PayloadMix(spec, payloads, weights);
+	}
+
+	private static Serializable[] createPayload(String kind, int size) {
+		switch (kind) {
+		case "bytes":
+			return new Serializable[] { Loopback.payload(size) };
+		case "text":
+			return new Serializable[] { new String(Loopback.payload(size)) };
+		case "objects":
+			Serializable[] objects = new Serializable[size];
+			for (int i = 0; i < size; i++) {
+				switch (i % 3) {
+				case 0:
+					objects[i] = Integer.valueOf(i);
+					break;
+				case 1:
+					objects[i] = Long.valueOf(i * 31L);
+					break;
+				default:
+					objects[i] = "item-" + i;
+				}
+			}
+			return objects;
+		default:
+			throw new IllegalArgumentException("Unknown payload kind: " + kind);
+		}
+	}
+
+	/**
+	 * Picks a payload by weight. The payload objects are shared between
+	 * messages, but every message gets its own <code>DataPackage</code>.
+	 *
+	 * @param random
+	 *            - The source of randomness.
+	 * @return The message.
+	 */
+	public DataPackage next(Random random) {
+		int pick = random.nextInt(totalWeight);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (pick < cumulativeWeights[i]) {
+				return new DataPackage(payloads[i]);
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	@Override
+	public String toString() {
+		return spec;
+	}
+}
@@ -0,0 +1,78 @@
+package org.jnetwork.benchmarks;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetwork.CompactCodec;
+import org.jnetwork.DataPackage;
+import org.jnetwork.MessageCodec;
+import org.jnetwork.SerializationCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encoding and decoding a {@link DataPackage} with each
+ * {@link MessageCodec}.
+ *
+ * @author Lucas Baizer
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+	@Param({ "serialization", "compact" })
+	public String codec;
+
+	@Param({ "small", "large" })
+	public String message;
+
+	private MessageCodec messageCodec;
+	private DataPackage dataPackage;
+	private ByteBuffer encoded;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		messageCodec = codec.equals("compact") ? new CompactCodec() : new SerializationCodec();
+
+		if (message.equals("small")) {
+			dataPackage = new DataPackage("chat", 42).setMessage("hello");
+		} else {
+			Serializable[] objects = new Serializable[64];
+			for (int i = 0; i < objects.length; i++) {
+				objects[i] = i % 2 == 0 ? "value-" + i : (Serializable) Long.valueOf(i * 31L);
+			}
+			dataPackage = new DataPackage(new DataPackage(objects), Loopback.payload(4096)).setMessage("bulk");
+		}
+		encoded = messageCodec.encode(dataPackage);
+	}
+
+	@Benchmark
+	public ByteBuffer encode() throws IOException {
+		return messageCodec.encode(dataPackage);
+	}
+
+	@Benchmark
+	public Serializable decode() throws IOException, ClassNotFoundException {
+		return messageCodec.decode(encoded.duplicate());
+	}
+
+	@Benchmark
+	public Serializable roundTrip() throws IOException, ClassNotFoundException {
+		return messageCodec.decode(messageCodec.encode(dataPackage));
+	}
+}
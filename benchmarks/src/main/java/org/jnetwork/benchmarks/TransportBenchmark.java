@@ -0,0 +1,218 @@
+package org.jnetwork.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetwork.ClientData;
+import org.jnetwork.Connection;
+import org.jnetwork.Keystore;
+import org.jnetwork.SSLConnection;
+import org.jnetwork.SSLServer;
+import org.jnetwork.Server;
+import org.jnetwork.TCPConnection;
+import org.jnetwork.TCPConnectionCallback;
+import org.jnetwork.TCPServer;
+import org.jnetwork.UDPConnection;
+import org.jnetwork.UDPConnectionCallback;
+import org.jnetwork.UDPServer;
+import org.jnetwork.UnixConnection;
+import org.jnetwork.UnixServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import example.JLSTConnection;
+import example.JLSTServer;
+import example.SDTPConnection;
+import example.SDTPServer;
+
+/**
+ * Measures loopback round trips through each transport: a client writes a
+ * payload, and an echo server writes it back. Every benchmark thread has its
+ * own connection, so running with <code>-t</code> measures that many
+ * connections at once.
+ *
+ * The stream transports echo frames with {@link Connection#writeFrame(ByteBuffer)}
+ * and {@link Connection#readFrame()}. The datagram transports echo each
+ * datagram from a new handler, as their servers do for every packet. UNIX
+ * runs the same stream echo as TCP over a Unix domain socket, to show what
+ * same-host peers save by skipping the TCP/IP stack.
+ *
+ * SSL uses the keystore named by the <code>jnetwork.keystore</code> system
+ * property, or <code>keystore.jks</code> in the working directory, with the
+ * password and alias of the one in the repository.
+ *
+ * @author Lucas Baizer
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransportBenchmark {
+	@State(Scope.Benchmark)
+	public static class EchoServer {
+		@Param({ "TCP", "UNIX", "SSL", "UDP", "JLST", "SDTP" })
+		public String transport;
+
+		@Param({ "64", "1024" })
+		public int payloadSize;
+
+		int port;
+		Server server;
+
+		@Setup(Level.Trial)
+		public void start() throws Exception {
+			switch (transport) {
+			case "TCP":
+				port = Loopback.freeTCPPort();
+				server = new TCPServer(port, streamEcho());
+				break;
+			case "UNIX":
+				// the port only names the socket file
+				port = Loopback.freeTCPPort();
+				server = new UnixServer(port, streamEcho());
+				break;
+			case "SSL":
+				port = Loopback.freeTCPPort();
+				server = new SSLServer(port, streamEcho(), new Keystore(
+						new File(System.getProperty("jnetwork.keystore", "keystore.jks")), "password", "jnetwork",
+						"password"));
+				break;
+			case "JLST":
+				port = Loopback.freeTCPPort();
+				server = new JLSTServer(port, streamEcho());
+				break;
+			case "UDP":
+				port = Loopback.freeUDPPort();
+				UDPServer udp = new UDPServer(port, datagramEcho());
+				udp.setBufferSize(8192);
+				server = udp;
+				break;
+			case "SDTP":
+				port = Loopback.freeUDPPort();
+				server = new SDTPServer(port, datagramEcho());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown transport: " + transport);
+			}
+			server.start();
+		}
+
+		private TCPConnectionCallback streamEcho() {
+			return new TCPConnectionCallback() {
+				@Override
+				public void clientConnected(ClientData event) {
+					Connection connection = event.getConnection();
+					try {
+						while (!connection.isClosed()) {
+							connection.writeFrame(connection.readFrame());
+							connection.flush();
+						}
+					} catch (IOException e) {
+						// the client disconnected
+					}
+				}
+			};
+		}
+
+		private UDPConnectionCallback datagramEcho() {
+			return new UDPConnectionCallback() {
+				@Override
+				public void dataReceived(ClientData event, byte[] data) {
+					try {
+						// the data is the whole receive buffer, so only the payload is echoed
+						event.getConnection().write(Arrays.copyOf(data, payloadSize));
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+		}
+
+		Connection connect() throws Exception {
+			switch (transport) {
+			case "TCP":
+				return new TCPConnection(Loopback.HOST, port);
+			case "UNIX":
+				return new UnixConnection(port);
+			case "SSL":
+				return new SSLConnection(Loopback.HOST, port);
+			case "JLST":
+				return new JLSTConnection(Loopback.HOST, port);
+			case "UDP":
+				return new UDPConnection(Loopback.HOST, port);
+			case "SDTP":
+				return new SDTPConnection(Loopback.HOST, port);
+			default:
+				throw new IllegalArgumentException("Unknown transport: " + transport);
+			}
+		}
+
+		boolean isDatagram() {
+			return transport.equals("UDP") || transport.equals("SDTP");
+		}
+
+		@TearDown(Level.Trial)
+		public void stop() throws IOException {
+			server.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Client {
+		Connection connection;
+		boolean datagram;
+		byte[] payload;
+		byte[] receiveBuffer = new byte[8192];
+
+		@Setup(Level.Trial)
+		public void connect(EchoServer server) throws Exception {
+			connection = server.connect();
+			datagram = server.isDatagram();
+			payload = Loopback.payload(server.payloadSize);
+		}
+
+		@TearDown(Level.Trial)
+		public void close() throws IOException {
+			connection.close();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int roundTripLatency(Client client) throws IOException {
+		return roundTrip(client);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public int roundTripThroughput(Client client) throws IOException {
+		return roundTrip(client);
+	}
+
+	private static int roundTrip(Client client) throws IOException {
+		Connection connection = client.connection;
+		if (client.datagram) {
+			connection.write(client.payload);
+			return connection.read(client.receiveBuffer);
+		}
+
+		connection.writeFrame(ByteBuffer.wrap(client.payload));
+		connection.flush();
+		return connection.readFrame().remaining();
+	}
+}
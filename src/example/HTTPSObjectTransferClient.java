@@ -1,7 +1,6 @@
 package example;
 
 import java.security.SecureRandom;
-import java.security.Security;
 import java.security.cert.X509Certificate;
 
 import javax.net.ssl.HttpsURLConnection;
@@ -15,12 +14,9 @@ import org.jnetwork.HTTPContentType;
 import org.jnetwork.HTTPResult;
 import org.jnetwork.HTTPSConnection;
 
-import com.sun.net.ssl.internal.ssl.Provider;
-
 public class HTTPSObjectTransferClient {
 	@SuppressWarnings("resource")
 	public static void main(String[] args) throws Exception {
-		Security.addProvider(new Provider());
 		System.setProperty("javax.net.ssl.trustStore", "keystore.jks");
 
 		TrustManager[] trustAllCerts = new TrustManager[] { new X509TrustManager() {
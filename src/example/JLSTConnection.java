@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.security.PublicKey;
 
 import javax.crypto.KeyGenerator;
@@ -119,6 +120,46 @@ public class JLSTConnection extends TCPConnection implements SecureConnection {
 		}
 	}
 
+	/**
+	 * Writes a frame, encrypting its contents as a whole. The length written
+	 * before the frame is the length of the encrypted contents.
+	 */
+	@Override
+	public void writeFrame(ByteBuffer frame) throws IOException {
+		byte[] bytes = new byte[checkFrameLength(frame.remaining())];
+		frame.duplicate().get(bytes);
+
+		try {
+			byte[] encrypted = aes.encrypt(bytes);
+			getObjectOutputStream().writeInt(encrypted.length);
+			getObjectOutputStream().write(encrypted);
+			getObjectOutputStream().flush();
+		} catch (CryptographyException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Reads a frame written with {@link #writeFrame(ByteBuffer)}, and decrypts
+	 * its contents.
+	 */
+	@Override
+	public ByteBuffer readFrame() throws IOException {
+		int length = getObjectInputStream().readInt();
+		// the encrypted contents are padded to at most one more block
+		if (length < 0 || length > getMaxFrameLength() + 16) {
+			checkFrameLength(length);
+		}
+
+		byte[] encrypted = new byte[length];
+		getObjectInputStream().readFully(encrypted);
+		try {
+			return ByteBuffer.wrap(aes.decrypt(encrypted));
+		} catch (CryptographyException e) {
+			throw new IOException(e);
+		}
+	}
+
 	@Override
 	public int readUnencrypted() throws IOException {
 		return getObjectInputStream().read();
@@ -2,7 +2,6 @@ package example;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.net.SocketException;
 import java.nio.file.Files;
 import java.security.KeyStore;
 
@@ -73,15 +72,10 @@ public class JLSTServer extends TCPServer implements SecureServer {
 	}
 
 	@Override
-	protected void launchNewThread() throws IOException {
-		final Socket socket;
-		try {
-			socket = server.accept();
-		} catch (SocketException e) {
-			if (e.getMessage().equals("socket closed")) {
-				return;
-			}
-			throw e;
+	protected void launchNewThread(int acceptor) throws IOException {
+		final Socket socket = accept(acceptor);
+		if (socket == null) {
+			return;
 		}
 		try {
 			JLSTConnection client = new JLSTConnection(socket);
@@ -90,16 +84,16 @@ public class JLSTServer extends TCPServer implements SecureServer {
 			DataPackage data = (DataPackage) client.readUnencryptedObject();
 
 			SecretKey key = new SecretKeySpec(crypto.decrypt((byte[]) data.getObjects()[0]), "AES");
-			client.getAESSecurityService().setPublicKey(key);
-			client.getAESSecurityService().setPrivateKey(key);
-
+			// the IV must be set first, since setting the keys initializes the
+			// ciphers with it
 			client.getAESSecurityService()
 					.setParameters(new IvParameterSpec(crypto.decrypt((byte[]) data.getObjects()[1])));
+			client.getAESSecurityService().setPublicKey(key);
+			client.getAESSecurityService().setPrivateKey(key);
 
 			ClientData event = new ClientData(client);
 			launchThreadForConnectedClient(event, "JLSTServer");
 		} catch (CryptographyException | ClassNotFoundException e) {
-			launchNewThread();
 			throw new IOException(e);
 		}
 	}
@@ -107,6 +107,9 @@ public class SDTPServer extends UDPServer implements SecureServer {
 		byte[] receiveData = new byte[bufferSize];
 		DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
 		server.receive(receivePacket); // initial package (new DataPackage())
+		if (shuttingDown) {
+			return;
+		}
 
 		try {
 			SDTPConnection conn = new SDTPConnection(server);
@@ -139,7 +142,6 @@ public class SDTPServer extends UDPServer implements SecureServer {
 								new IvParameterSpec(crypto.decrypt((byte[]) pkg.getObjects()[1]))));
 
 				/* finished handshake */
-				launchNewThread();
 				return;
 			}
 
@@ -151,11 +153,9 @@ public class SDTPServer extends UDPServer implements SecureServer {
 
 			final ClientData event = new ClientData(conn);
 
-			refresh();
-			clients.add(event);
-			refresh();
+			addClient(event);
 
-			Thread thr = new Thread(new Runnable() {
+			executeClientTask(event, "JNetwork-SDTPServer-Thread-" + receivePacket.getSocketAddress(), new Runnable() {
 				@Override
 				public void run() {
 					try {
@@ -174,14 +174,10 @@ public class SDTPServer extends UDPServer implements SecureServer {
 								e1);
 					}
 				}
-			}, "JNetwork-SDTPServer-Thread-" + receivePacket.getSocketAddress());
-			event.setHoldingThread(thr);
-			thr.start();
+			});
 		} catch (Exception e1) {
 			throw new IOException(e1);
 		}
-
-		launchNewThread();
 	}
 
 	private static final byte[] sealedObjectData = new byte[] { -84, -19, 0, 5, 115, 114, 0, 25, 106, 97, 118, 97, 120,
@@ -0,0 +1,415 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * A {@link ConnectionHandler} that limits how much of a server each remote
+ * address, and all of them together, may use. It can be given to any server
+ * that takes a <code>ConnectionHandler</code>, and enforces:
+ * <ul>
+ * <li>A cap on the connections each address may have open at once, or, for an
+ * {@link HTTPServer}, the requests each address may have in flight.</li>
+ * <li>Token-bucket rates at which connections are accepted, from each address
+ * and from all of them.</li>
+ * <li>Token-bucket rates at which HTTP requests are admitted, from each
+ * address and from all of them.</li>
+ * </ul>
+ * Each limit is off until it is set. Checks take no locks and the counters are
+ * striped, so a client reconnecting in a loop costs the accepting thread only
+ * a few compare-and-sets per attempt. Rejected sockets are reset rather than
+ * closed gracefully, so they leave nothing behind in <code>TIME_WAIT</code>,
+ * and rejected HTTP requests are answered with
+ * <code>429 Too Many Requests</code>.
+ *
+ * Limits apply to addresses first seen after they are set, so they should be
+ * set before the controller is given to a server. One controller can be
+ * shared by several servers, which then share its limits.
+ *
+ * The clients of a {@link UnixServer} have no address of their own, so they
+ * are all counted as one address, apart from every network address.
+ *
+ * @see Server#setConnectionHandler(ConnectionHandler)
+ *
+ * @author Lucas Baizer
+ */
+public class AdmissionController implements ConnectionHandler<Object> {
+	private static final int SWEEP_INTERVAL = 4096;
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * The key every Unix domain socket client is counted under.
+	 */
+	private static final Object UNIX_CLIENTS = new Object();
+
+	/**
+	 * What is tracked for one remote address. A state whose count has been
+	 * set to <code>RETIRED</code> has been swept out of the map and must not
+	 * be used.
+	 */
+	private static final class AddressState {
+		private static final int RETIRED = -1;
+
+		private final AtomicInteger active = new AtomicInteger();
+		private final TokenBucket acceptBucket;
+		private final TokenBucket requestBucket;
+
+		private AddressState(TokenBucket acceptBucket, TokenBucket requestBucket) {
+			this.acceptBucket = acceptBucket;
+			this.requestBucket = requestBucket;
+		}
+	}
+
+	private final ConcurrentHashMap<Object, AddressState> addresses = new ConcurrentHashMap<>();
+	private final AtomicInteger sweepCountdown = new AtomicInteger(SWEEP_INTERVAL);
+	private final LongAdder admitted = new LongAdder();
+	private final LongAdder[] rejections = new LongAdder[RejectionReason.values().length];
+
+	private volatile int maxConnectionsPerAddress;
+	private volatile double acceptRatePerAddress;
+	private volatile int acceptBurstPerAddress;
+	private volatile double requestRatePerAddress;
+	private volatile int requestBurstPerAddress;
+	private volatile TokenBucket acceptBucket;
+	private volatile TokenBucket requestBucket;
+
+	public AdmissionController() {
+		for (int i = 0; i < rejections.length; i++) {
+			rejections[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Admits or rejects a client.
+	 *
+	 * @param server
+	 *            - The server the client connected to.
+	 * @param client
+	 *            - A <code>Socket</code>, <code>SocketChannel</code> or
+	 *            <code>HttpExchange</code>.
+	 * @throws IllegalArgumentException
+	 *             If <code>client</code> is none of those.
+	 */
+	@Override
+	public boolean handle(Server server, Object client) {
+		if (client instanceof Socket) {
+			Socket socket = (Socket) client;
+			RejectionReason reason = admit(socket.getInetAddress(), false);
+			if (reason == null) {
+				return true;
+			}
+			try {
+				// reset the connection, so that a client reconnecting in a loop leaves no TIME_WAIT behind
+				socket.setSoLinger(true, 0);
+			} catch (SocketException e) {
+				// the socket is about to be closed anyway
+			}
+			return false;
+		} else if (client instanceof SocketChannel) {
+			// a Unix domain socket leaves nothing in TIME_WAIT, so it is simply closed
+			return admit(keyOf((SocketChannel) client), false) == null;
+		} else if (client instanceof HttpExchange) {
+			HttpExchange exchange = (HttpExchange) client;
+			RejectionReason reason = admit(exchange.getRemoteAddress().getAddress(), true);
+			if (reason == null) {
+				return true;
+			}
+			try {
+				exchange.sendResponseHeaders(TOO_MANY_REQUESTS, -1);
+			} catch (IOException e) {
+				// the exchange is about to be closed anyway
+			}
+			return false;
+		}
+		throw new IllegalArgumentException("Unsupported client type: " + client.getClass().getName());
+	}
+
+	/**
+	 * Counts a client admitted by {@link #handle(Server, Object)} as no longer
+	 * connected, or no longer in flight.
+	 */
+	@Override
+	public void release(Server server, Object client) {
+		Object address;
+		if (client instanceof Socket) {
+			address = ((Socket) client).getInetAddress();
+		} else if (client instanceof SocketChannel) {
+			address = keyOf((SocketChannel) client);
+		} else if (client instanceof HttpExchange) {
+			address = ((HttpExchange) client).getRemoteAddress().getAddress();
+		} else {
+			return;
+		}
+
+		AddressState state = addresses.get(address);
+		if (state != null) {
+			state.active.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The key a channel's client is counted under, which is the same
+	 *         once the channel has been closed.
+	 */
+	private static Object keyOf(SocketChannel channel) {
+		try {
+			return channel.socket().getInetAddress();
+		} catch (UnsupportedOperationException e) {
+			// only a Unix domain channel has no socket
+			return UNIX_CLIENTS;
+		}
+	}
+
+	/**
+	 * @return Why the client was rejected, or <code>null</code> if it was
+	 *         admitted.
+	 */
+	private RejectionReason admit(Object address, boolean request) {
+		if (sweepCountdown.decrementAndGet() <= 0) {
+			sweepCountdown.set(SWEEP_INTERVAL);
+			sweep();
+		}
+
+		long now = System.nanoTime();
+		AddressState state = acquire(address);
+
+		// the per-address limits come first, so one noisy address does not use up everyone's tokens
+		RejectionReason reason = null;
+		if (request) {
+			if (state.requestBucket != null && !state.requestBucket.tryTake(now)) {
+				reason = RejectionReason.ADDRESS_REQUEST_RATE;
+			}
+		} else if (state.acceptBucket != null && !state.acceptBucket.tryTake(now)) {
+			reason = RejectionReason.ADDRESS_ACCEPT_RATE;
+		}
+
+		int max = maxConnectionsPerAddress;
+		if (reason == null && max > 0 && state.active.get() > max) {
+			reason = RejectionReason.ADDRESS_CONNECTION_LIMIT;
+		}
+
+		if (reason == null) {
+			TokenBucket bucket = request ? requestBucket : acceptBucket;
+			if (bucket != null && !bucket.tryTake(now)) {
+				reason = request ? RejectionReason.REQUEST_RATE : RejectionReason.ACCEPT_RATE;
+			}
+		}
+
+		if (reason != null) {
+			state.active.decrementAndGet();
+			rejections[reason.ordinal()].increment();
+			return reason;
+		}
+		admitted.increment();
+		return null;
+	}
+
+	/**
+	 * Counts a new client against its address's state, creating the state if
+	 * there is none.
+	 */
+	private AddressState acquire(Object address) {
+		while (true) {
+			AddressState state = addresses.computeIfAbsent(address, k -> newAddressState());
+			int active;
+			while ((active = state.active.get()) != AddressState.RETIRED) {
+				if (state.active.compareAndSet(active, active + 1)) {
+					return state;
+				}
+			}
+			// the state was swept away after it was looked up, so look up its replacement
+		}
+	}
+
+	private AddressState newAddressState() {
+		return new AddressState(
+				acceptRatePerAddress > 0 ? new TokenBucket(acceptRatePerAddress, acceptBurstPerAddress) : null,
+				requestRatePerAddress > 0 ? new TokenBucket(requestRatePerAddress, requestBurstPerAddress) : null);
+	}
+
+	/**
+	 * Drops the state of every address that has nothing in flight and whose
+	 * buckets are full, since a fresh state would treat it the same.
+	 */
+	private void sweep() {
+		long now = System.nanoTime();
+		for (Object address : addresses.keySet()) {
+			AddressState state = addresses.get(address);
+			if (state == null || (state.acceptBucket != null && !state.acceptBucket.isFull(now))
+					|| (state.requestBucket != null && !state.requestBucket.isFull(now))) {
+				continue;
+			}
+			if (state.active.compareAndSet(0, AddressState.RETIRED)) {
+				addresses.remove(address, state);
+			}
+		}
+	}
+
+	/**
+	 * Sets the most connections each remote address may have open at once,
+	 * or, for an <code>HTTPServer</code>, the most requests it may have in
+	 * flight.
+	 *
+	 * @param max
+	 *            - The maximum, or <code>0</code> for no limit.
+	 */
+	public void setMaxConnectionsPerAddress(int max) {
+		if (max < 0) {
+			throw new IllegalArgumentException("The maximum must not be negative");
+		}
+		this.maxConnectionsPerAddress = max;
+	}
+
+	/**
+	 * @return The most connections each remote address may have open at once,
+	 *         or <code>0</code> if there is no limit.
+	 */
+	public int getMaxConnectionsPerAddress() {
+		return maxConnectionsPerAddress;
+	}
+
+	/**
+	 * Sets the rate at which connections are accepted from all remote
+	 * addresses together.
+	 *
+	 * @param perSecond
+	 *            - The connections accepted per second, or <code>0</code> for
+	 *            no limit.
+	 * @param burst
+	 *            - The most connections accepted at once after a quiet period.
+	 */
+	public void setAcceptRate(double perSecond, int burst) {
+		this.acceptBucket = perSecond > 0 ? new TokenBucket(perSecond, burst) : null;
+	}
+
+	/**
+	 * Sets the rate at which connections are accepted from each remote
+	 * address.
+	 *
+	 * @param perSecond
+	 *            - The connections accepted per second, or <code>0</code> for
+	 *            no limit.
+	 * @param burst
+	 *            - The most connections accepted at once after a quiet period.
+	 */
+	public void setAcceptRatePerAddress(double perSecond, int burst) {
+		if (perSecond > 0) {
+			// fail here rather than on the accepting thread
+			new TokenBucket(perSecond, burst);
+		}
+		this.acceptBurstPerAddress = burst;
+		this.acceptRatePerAddress = perSecond;
+	}
+
+	/**
+	 * Sets the rate at which HTTP requests are admitted from all remote
+	 * addresses together.
+	 *
+	 * @param perSecond
+	 *            - The requests admitted per second, or <code>0</code> for no
+	 *            limit.
+	 * @param burst
+	 *            - The most requests admitted at once after a quiet period.
+	 */
+	public void setRequestRate(double perSecond, int burst) {
+		this.requestBucket = perSecond > 0 ? new TokenBucket(perSecond, burst) : null;
+	}
+
+	/**
+	 * Sets the rate at which HTTP requests are admitted from each remote
+	 * address.
+	 *
+	 * @param perSecond
+	 *            - The requests admitted per second, or <code>0</code> for no
+	 *            limit.
+	 * @param burst
+	 *            - The most requests admitted at once after a quiet period.
+	 */
+	public void setRequestRatePerAddress(double perSecond, int burst) {
+		if (perSecond > 0) {
+			// fail here rather than on the accepting thread
+			new TokenBucket(perSecond, burst);
+		}
+		this.requestBurstPerAddress = burst;
+		this.requestRatePerAddress = perSecond;
+	}
+
+	/**
+	 * @param address
+	 *            - The remote address.
+	 * @return The number of connections or requests the address has in
+	 *         flight.
+	 */
+	public int getActiveConnections(InetAddress address) {
+		AddressState state = addresses.get(address);
+		return state == null ? 0 : Math.max(state.active.get(), 0);
+	}
+
+	/**
+	 * @return The number of connections from a {@link UnixServer}'s clients,
+	 *         which are all counted as one address.
+	 */
+	public int getActiveUnixConnections() {
+		AddressState state = addresses.get(UNIX_CLIENTS);
+		return state == null ? 0 : Math.max(state.active.get(), 0);
+	}
+
+	/**
+	 * @return The number of remote addresses being tracked.
+	 */
+	public int getTrackedAddresses() {
+		return addresses.size();
+	}
+
+	/**
+	 * @return The number of clients admitted.
+	 */
+	public long getAdmitted() {
+		return admitted.sum();
+	}
+
+	/**
+	 * @param reason
+	 *            - The reason.
+	 * @return The number of clients rejected for the reason.
+	 */
+	public long getRejections(RejectionReason reason) {
+		return rejections[reason.ordinal()].sum();
+	}
+
+	/**
+	 * @return The number of clients rejected for any reason.
+	 */
+	public long getRejections() {
+		long total = 0;
+		for (LongAdder rejection : rejections) {
+			total += rejection.sum();
+		}
+		return total;
+	}
+
+	/**
+	 * Clears the admitted and rejected counts. The limits and what is in
+	 * flight are kept.
+	 */
+	public void resetMetrics() {
+		admitted.reset();
+		for (LongAdder rejection : rejections) {
+			rejection.reset();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AdmissionController:[admitted=" + getAdmitted() + ",rejected=" + getRejections()
+				+ ",trackedAddresses=" + getTrackedAddresses() + "]";
+	}
+}
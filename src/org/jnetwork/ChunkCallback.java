@@ -0,0 +1,55 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Used in pair with {@link ChunkedTransfer#receive(ChunkCallback)} to process
+ * a transfer chunk by chunk, while the rest of it is still arriving.
+ *
+ * @author Lucas Baizer
+ */
+public interface ChunkCallback {
+	/**
+	 * This method gets called on when the sender offers a transfer, before
+	 * any of it is sent.
+	 *
+	 * @param name
+	 *            - The name the sender gave the transfer.
+	 * @param length
+	 *            - The length of the whole transfer, in bytes.
+	 * @return The offset to start the transfer from: <code>0</code> for a
+	 *         new transfer, or the number of bytes already received to resume
+	 *         one that was interrupted.
+	 * @throws IOException
+	 *             If the transfer should not be received.
+	 */
+	public long transferOffered(String name, long length) throws IOException;
+
+	/**
+	 * This method gets called on for each chunk, in order, once its checksum
+	 * has been verified.
+	 *
+	 * @param offset
+	 *            - The offset of the chunk in the whole transfer.
+	 * @param chunk
+	 *            - The contents of the chunk. It is only valid until this
+	 *            method returns.
+	 * @throws IOException
+	 *             If the chunk cannot be processed, which ends the transfer.
+	 */
+	public void chunkReceived(long offset, ByteBuffer chunk) throws IOException;
+
+	/**
+	 * This method gets called on once every chunk has been received.
+	 *
+	 * @param name
+	 *            - The name the sender gave the transfer.
+	 * @param length
+	 *            - The length of the whole transfer, in bytes.
+	 * @throws IOException
+	 *             If the transfer cannot be completed.
+	 */
+	public default void transferCompleted(String name, long length) throws IOException {
+	}
+}
@@ -0,0 +1,406 @@
+package org.jnetwork;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Sends large payloads over a {@link Connection} in chunks, without ever
+ * holding the whole payload in memory, which {@link FileData} has to. Each
+ * chunk is sent as a frame carrying its offset and a CRC-32 checksum, and is
+ * handed to the receiver's {@link ChunkCallback} as soon as it has been
+ * verified. A transfer that is interrupted can be resumed, over a new
+ * connection, from the last chunk the receiver processed.
+ *
+ * A transfer goes as follows:
+ * <ol>
+ * <li>The sender offers the transfer, with its name and length.</li>
+ * <li>The receiver accepts it, with the offset to start from.</li>
+ * <li>The sender sends every chunk from that offset on.</li>
+ * <li>The sender ends the transfer.</li>
+ * </ol>
+ *
+ * Transfers need a blocking, reliable connection, such as a
+ * {@link TCPConnection} or {@link SSLConnection}, and should not be mixed
+ * with the object streams on the same connection.
+ *
+ * @author Lucas Baizer
+ */
+public class ChunkedTransfer {
+	/**
+	 * The default size of a chunk, 256 KiB.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+	private static final byte OFFER = 1;
+	private static final byte ACCEPT = 2;
+	private static final byte CHUNK = 3;
+	private static final byte END = 4;
+
+	/**
+	 * The type, offset and checksum that come before the contents of a chunk.
+	 */
+	private static final int CHUNK_HEADER_LENGTH = 1 + 8 + 4;
+
+	private final Connection connection;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * Creates a transfer over a connection.
+	 *
+	 * @param connection
+	 *            - The connection.
+	 * @throws IllegalArgumentException
+	 *             If the connection is not blocking and reliable.
+	 */
+	public ChunkedTransfer(Connection connection) {
+		if (connection instanceof UDPConnection || connection instanceof NIOTCPConnection) {
+			throw new IllegalArgumentException(
+					connection.getClass().getSimpleName() + " cannot be used for a chunked transfer");
+		}
+		this.connection = connection;
+	}
+
+	/**
+	 * @return The size of each chunk sent.
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the size of each chunk sent. Larger chunks cost fewer frames and
+	 * checksums, but more memory, and more data to send again when a transfer
+	 * is resumed.
+	 *
+	 * @param chunkSize
+	 *            - The size of a chunk, in bytes.
+	 * @throws IllegalArgumentException
+	 *             If a chunk of this size does not fit in a frame.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1 || chunkSize > connection.getMaxFrameLength() - CHUNK_HEADER_LENGTH) {
+			throw new IllegalArgumentException("The chunk size must be between 1 and "
+					+ (connection.getMaxFrameLength() - CHUNK_HEADER_LENGTH) + " bytes");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sends a file, named after its file name.
+	 *
+	 * @param file
+	 *            - The file to send.
+	 * @return The number of bytes sent, which is less than the length of the
+	 *         file if the transfer was resumed.
+	 * @throws IOException
+	 *             If an error occurs while reading the file or sending it.
+	 */
+	public long send(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return send(file.getFileName().toString(), channel);
+		}
+	}
+
+	/**
+	 * Sends everything in a channel, from the offset the receiver accepts the
+	 * transfer at.
+	 *
+	 * @param name
+	 *            - The name of the transfer, which the receiver can use to
+	 *            tell what is being sent.
+	 * @param source
+	 *            - The channel to send.
+	 * @return The number of bytes sent.
+	 * @throws ProtocolException
+	 *             If the receiver does not accept the transfer properly.
+	 * @throws IOException
+	 *             If an error occurs while reading the channel or sending it.
+	 */
+	public long send(String name, SeekableByteChannel source) throws IOException {
+		long length = source.size();
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer offer = ByteBuffer.allocate(1 + 8 + 4 + nameBytes.length);
+		offer.put(OFFER).putLong(length).putInt(nameBytes.length).put(nameBytes).flip();
+		connection.writeFrame(offer);
+		connection.flush();
+
+		ByteBuffer accept = connection.readFrame();
+		if (accept.remaining() != 9 || accept.get() != ACCEPT) {
+			throw new ProtocolException("Expected the transfer to be accepted");
+		}
+		long offset = accept.getLong();
+		if (offset < 0 || offset > length) {
+			throw new ProtocolException("Accepted offset " + offset + " is not between 0 and " + length);
+		}
+
+		ByteBuffer frame = ByteBuffer.allocate(CHUNK_HEADER_LENGTH + (int) Math.min(chunkSize, length - offset));
+		CRC32 crc = new CRC32();
+		source.position(offset);
+		long position = offset;
+		while (position < length) {
+			frame.clear();
+			frame.position(CHUNK_HEADER_LENGTH);
+			frame.limit(CHUNK_HEADER_LENGTH + (int) Math.min(frame.capacity() - CHUNK_HEADER_LENGTH, length - position));
+			while (frame.hasRemaining()) {
+				if (source.read(frame) < 0) {
+					throw new EOFException("Source shrank while it was being sent");
+				}
+			}
+
+			crc.reset();
+			crc.update(frame.array(), CHUNK_HEADER_LENGTH, frame.limit() - CHUNK_HEADER_LENGTH);
+			frame.put(0, CHUNK).putLong(1, position).putInt(9, (int) crc.getValue());
+			frame.position(0);
+			connection.writeFrame(frame);
+			position += frame.limit() - CHUNK_HEADER_LENGTH;
+		}
+
+		ByteBuffer end = ByteBuffer.allocate(1 + 8);
+		end.put(END).putLong(length).flip();
+		connection.writeFrame(end);
+		connection.flush();
+		return length - offset;
+	}
+
+	/**
+	 * Receives a transfer into a file, named after it by the sender or not.
+	 * While the transfer is in progress, a sidecar file next to it, named
+	 * after it with <code>.transfer</code> appended, records the name and
+	 * length of the transfer and a checksum of what has been received. If an
+	 * interrupted attempt left the file and its sidecar behind, and the
+	 * sidecar matches the transfer being offered and the file still matches
+	 * the checksum, the transfer is resumed from where it stopped. Otherwise
+	 * the file is truncated and the transfer starts over. The sidecar is
+	 * deleted once the transfer completes.
+	 *
+	 * A source that has been changed in place since the interrupted attempt,
+	 * keeping its name and length, cannot be told apart from the original.
+	 *
+	 * @param file
+	 *            - The file to write to.
+	 * @return The number of bytes received.
+	 * @throws IOException
+	 *             If an error occurs while receiving the transfer or writing
+	 *             the file.
+	 */
+	public long receive(Path file) throws IOException {
+		try (FileChunkCallback callback = new FileChunkCallback(file)) {
+			return receive(callback);
+		}
+	}
+
+	/**
+	 * Receives a transfer, handing each chunk to <code>callback</code> as it
+	 * arrives.
+	 *
+	 * @param callback
+	 *            - The callback that processes the transfer.
+	 * @return The number of bytes received.
+	 * @throws StreamCorruptedException
+	 *             If a chunk does not match its checksum.
+	 * @throws ProtocolException
+	 *             If the sender does not follow the protocol.
+	 * @throws IOException
+	 *             If an error occurs while receiving the transfer, or the
+	 *             callback fails.
+	 */
+	public long receive(ChunkCallback callback) throws IOException {
+		ByteBuffer offer = connection.readFrame();
+		if (offer.remaining() < 13 || offer.get() != OFFER) {
+			throw new ProtocolException("Expected a transfer to be offered");
+		}
+		long length = offer.getLong();
+		int nameLength = offer.getInt();
+		if (length < 0 || nameLength != offer.remaining()) {
+			throw new ProtocolException("Malformed transfer offer");
+		}
+		String name = new String(offer.array(), offer.arrayOffset() + offer.position(), nameLength,
+				StandardCharsets.UTF_8);
+
+		long offset = callback.transferOffered(name, length);
+		if (offset < 0 || offset > length) {
+			throw new IllegalArgumentException("Offset " + offset + " is not between 0 and " + length);
+		}
+		ByteBuffer accept = ByteBuffer.allocate(1 + 8);
+		accept.put(ACCEPT).putLong(offset).flip();
+		connection.writeFrame(accept);
+		connection.flush();
+
+		CRC32 crc = new CRC32();
+		long position = offset;
+		while (true) {
+			ByteBuffer frame = connection.readFrame();
+			byte type = frame.remaining() > 0 ? frame.get() : 0;
+
+			if (type == CHUNK && frame.remaining() >= CHUNK_HEADER_LENGTH - 1) {
+				long chunkOffset = frame.getLong();
+				int checksum = frame.getInt();
+				if (chunkOffset != position || position + frame.remaining() > length) {
+					throw new ProtocolException("Chunk at offset " + chunkOffset + " does not follow offset "
+							+ position + " of " + length);
+				}
+
+				crc.reset();
+				crc.update(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+				if ((int) crc.getValue() != checksum) {
+					throw new StreamCorruptedException("Chunk at offset " + chunkOffset + " failed its checksum");
+				}
+
+				int chunkLength = frame.remaining();
+				callback.chunkReceived(chunkOffset, frame);
+				position += chunkLength;
+			} else if (type == END && frame.remaining() == 8) {
+				if (frame.getLong() != length || position != length) {
+					throw new ProtocolException("Transfer ended after " + position + " of " + length + " bytes");
+				}
+				callback.transferCompleted(name, length);
+				return length - offset;
+			} else {
+				throw new ProtocolException("Expected a chunk or the end of the transfer");
+			}
+		}
+	}
+
+	/**
+	 * Writes a transfer to a file, keeping a sidecar that proves how much of
+	 * the file belongs to the transfer, so that only that much is resumed.
+	 */
+	private static class FileChunkCallback implements ChunkCallback, Closeable {
+		/**
+		 * The first bytes of a sidecar, "JNCT".
+		 */
+		private static final int SIDECAR_MAGIC = 0x4A4E4354;
+
+		/**
+		 * The magic, length, bytes received and checksum that come before
+		 * the name in a sidecar.
+		 */
+		private static final int SIDECAR_HEADER_LENGTH = 4 + 8 + 8 + 4;
+
+		private final Path file;
+		private final Path sidecar;
+		private final CRC32 crc = new CRC32();
+		private FileChannel channel;
+		private FileChannel sidecarChannel;
+		private ByteBuffer record;
+		private long received;
+
+		FileChunkCallback(Path file) {
+			this.file = file;
+			this.sidecar = file.resolveSibling(file.getFileName() + ".transfer");
+		}
+
+		@Override
+		public long transferOffered(String name, long length) throws IOException {
+			byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.READ);
+
+			received = resumableLength(nameBytes, length);
+			if (received == 0) {
+				crc.reset();
+			}
+			// anything past what the sidecar vouches for may be half written
+			channel.truncate(received);
+
+			record = ByteBuffer.allocate(SIDECAR_HEADER_LENGTH + nameBytes.length);
+			record.putInt(SIDECAR_MAGIC).putLong(length).putLong(0).putInt(0).put(nameBytes);
+			sidecarChannel = FileChannel.open(sidecar, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			writeSidecar();
+			return received;
+		}
+
+		/**
+		 * Checks whether the file holds the start of the offered transfer
+		 * from an interrupted attempt. If it does, {@link #crc} is left
+		 * holding the checksum of that start.
+		 *
+		 * @return The number of bytes that can be kept, or <code>0</code>.
+		 */
+		private long resumableLength(byte[] nameBytes, long length) throws IOException {
+			if (!Files.isRegularFile(sidecar)) {
+				return 0;
+			}
+
+			ByteBuffer previous = ByteBuffer.wrap(Files.readAllBytes(sidecar));
+			if (previous.remaining() != SIDECAR_HEADER_LENGTH + nameBytes.length
+					|| previous.getInt() != SIDECAR_MAGIC || previous.getLong() != length) {
+				return 0;
+			}
+			long kept = previous.getLong();
+			int checksum = previous.getInt();
+			if (!previous.equals(ByteBuffer.wrap(nameBytes)) || kept <= 0 || kept > length
+					|| kept > channel.size()) {
+				return 0;
+			}
+
+			crc.reset();
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Connection.FILE_BUFFER_SIZE, kept));
+			long position = 0;
+			while (position < kept) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), kept - position));
+				int read = channel.read(buffer, position);
+				if (read < 0) {
+					return 0;
+				}
+				crc.update(buffer.array(), 0, read);
+				position += read;
+			}
+			return (int) crc.getValue() == checksum ? kept : 0;
+		}
+
+		private void writeSidecar() throws IOException {
+			record.putLong(12, received).putInt(20, (int) crc.getValue());
+			ByteBuffer buffer = record.duplicate();
+			buffer.clear();
+			while (buffer.hasRemaining()) {
+				sidecarChannel.write(buffer, buffer.position());
+			}
+		}
+
+		@Override
+		public void chunkReceived(long offset, ByteBuffer chunk) throws IOException {
+			crc.update(chunk.duplicate());
+			int length = chunk.remaining();
+			while (chunk.hasRemaining()) {
+				offset += channel.write(chunk, offset);
+			}
+
+			// only vouch for the chunk once it has been written
+			received += length;
+			writeSidecar();
+		}
+
+		@Override
+		public void transferCompleted(String name, long length) throws IOException {
+			sidecarChannel.close();
+			Files.deleteIfExists(sidecar);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (channel != null) {
+					channel.close();
+				}
+			} finally {
+				if (sidecarChannel != null) {
+					sidecarChannel.close();
+				}
+			}
+		}
+	}
+}
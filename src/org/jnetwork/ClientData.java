@@ -1,5 +1,7 @@
 package org.jnetwork;
 
+import java.io.Serializable;
+
 /**
  * (Functionally) a struct used to store all the data created when a client
  * connects to a server.
@@ -10,6 +12,11 @@ public class ClientData {
 	private Connection socket;
 	private Thread holder;
 	private boolean keepAlive;
+	private volatile DisconnectReason disconnectReason;
+	private HashedTimingWheel.Timeout idleTimeout;
+	private OutboundQueue outboundQueue;
+	private volatile Server server;
+	private volatile EventLoop eventLoop;
 
 	/**
 	 * Creates a new ClientData with all the required data.
@@ -78,4 +85,77 @@ public class ClientData {
 	public void setKeepAlive(boolean keepAlive) {
 		this.keepAlive = keepAlive;
 	}
+
+	/**
+	 * @return Why the client was removed from its server, or <code>null</code>
+	 *         if it has not been removed.
+	 */
+	public DisconnectReason getDisconnectReason() {
+		return disconnectReason;
+	}
+
+	void setDisconnectReason(DisconnectReason disconnectReason) {
+		this.disconnectReason = disconnectReason;
+	}
+
+	/**
+	 * Gets the queue of frames waiting to be written to this client, such as
+	 * the messages sent with {@link Server#broadcast(Serializable)}.
+	 * 
+	 * @return The queue.
+	 */
+	public synchronized OutboundQueue getOutboundQueue() {
+		if (outboundQueue == null) {
+			outboundQueue = new OutboundQueue(this);
+			if (server != null) {
+				server.configureOutboundQueue(outboundQueue);
+			}
+		}
+		return outboundQueue;
+	}
+
+	/**
+	 * @return The client's outbound queue, or <code>null</code> if nothing
+	 *         has asked for it yet.
+	 */
+	synchronized OutboundQueue peekOutboundQueue() {
+		return outboundQueue;
+	}
+
+	/**
+	 * @return The server the client is connected to, or <code>null</code> if
+	 *         it has not been added to one.
+	 */
+	Server getServer() {
+		return server;
+	}
+
+	void setServer(Server server) {
+		this.server = server;
+	}
+
+	/**
+	 * Gets the event loop the client is pinned to, if its server has an
+	 * {@link EventLoopGroup}. Tasks that touch state belonging only to this
+	 * client can be run on it without locking, since the loop runs them one at
+	 * a time on the same thread for as long as the client is connected.
+	 * 
+	 * @return The event loop, or <code>null</code> if the client is not
+	 *         pinned to one.
+	 */
+	public EventLoop getEventLoop() {
+		return eventLoop;
+	}
+
+	void setEventLoop(EventLoop eventLoop) {
+		this.eventLoop = eventLoop;
+	}
+
+	HashedTimingWheel.Timeout getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	void setIdleTimeout(HashedTimingWheel.Timeout idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
 }
\ No newline at end of file
@@ -12,6 +12,8 @@ public interface ClientDisconnectionCallback extends NetworkListener {
 	/**
 	 * This method gets called on whenever a client is removed from the
 	 * <code>Server</code> forcefully by the server (not the client).
+	 * {@link ClientData#getDisconnectReason()} tells why the client was
+	 * removed.
 	 * 
 	 * @param event
 	 *            - All the data required to make the closing of the client
@@ -0,0 +1,86 @@
+package org.jnetwork;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A collection of <code>Executor</code>s that can be given to
+ * {@link Server#setClientExecutor(Executor)} to choose how a server runs the
+ * callback of each connected client.
+ *
+ * @author Lucas Baizer
+ */
+public final class ClientExecutors {
+	private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+	private ClientExecutors() {
+	}
+
+	private static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = builderClass.getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return If the running JVM supports virtual threads.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VIRTUAL_THREAD_FACTORY != null;
+	}
+
+	/**
+	 * Creates an <code>Executor</code> that runs each client's callback on a
+	 * new virtual thread. Virtual threads are cheap enough that blocking-style
+	 * callbacks can serve hundreds of thousands of concurrent clients.
+	 *
+	 * @return The executor.
+	 * @throws UnsupportedOperationException
+	 *             If the running JVM does not support virtual threads.
+	 */
+	public static Executor newVirtualThreadExecutor() {
+		if (!isVirtualThreadSupported()) {
+			throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+		}
+		return fromThreadFactory(VIRTUAL_THREAD_FACTORY);
+	}
+
+	/**
+	 * Creates an <code>Executor</code> that runs each client's callback on a
+	 * new platform thread. This is what a <code>Server</code> does when no
+	 * executor has been set.
+	 *
+	 * @return The executor.
+	 */
+	public static Executor newPlatformThreadExecutor() {
+		return fromThreadFactory(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r);
+			}
+		});
+	}
+
+	/**
+	 * Creates an <code>Executor</code> that runs each client's callback on a
+	 * new thread created by <code>factory</code>.
+	 *
+	 * @param factory
+	 *            - The factory to create the threads with.
+	 * @return The executor.
+	 */
+	public static Executor fromThreadFactory(ThreadFactory factory) {
+		return new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				factory.newThread(command).start();
+			}
+		};
+	}
+}
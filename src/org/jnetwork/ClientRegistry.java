@@ -0,0 +1,146 @@
+package org.jnetwork;
+
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe collection of the clients connected to a {@link Server}.
+ * Clients are indexed both by their <code>Connection</code> and by their
+ * remote address, so adding, removing and looking up a client are all
+ * constant-time operations, and iterating over the clients never throws a
+ * <code>ConcurrentModificationException</code>.
+ *
+ * @author Lucas Baizer
+ */
+public final class ClientRegistry implements Iterable<ClientData> {
+	private final ConcurrentHashMap<Connection, ClientData> byConnection = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<SocketAddress, ClientData> byAddress = new ConcurrentHashMap<>();
+	private final Collection<ClientData> view = Collections.unmodifiableCollection(byConnection.values());
+
+	ClientRegistry() {
+	}
+
+	/**
+	 * Adds a client to the registry.
+	 *
+	 * @param client
+	 *            - The client to add.
+	 * @return <code>true</code> if the client was not already in the
+	 *         registry.
+	 */
+	public boolean add(ClientData client) {
+		if (byConnection.putIfAbsent(client.getConnection(), client) != null) {
+			return false;
+		}
+
+		SocketAddress address = client.getConnection().getRemoteSocketAddress();
+		if (address != null) {
+			byAddress.put(address, client);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a client from the registry.
+	 *
+	 * @param client
+	 *            - The client to remove.
+	 * @return <code>true</code> if the client was in the registry.
+	 */
+	public boolean remove(ClientData client) {
+		if (!byConnection.remove(client.getConnection(), client)) {
+			return false;
+		}
+
+		SocketAddress address = client.getConnection().getRemoteSocketAddress();
+		if (address != null) {
+			byAddress.remove(address, client);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes every client that matches <code>filter</code>.
+	 *
+	 * @param filter
+	 *            - The filter that decides which clients are removed.
+	 * @return <code>true</code> if any clients were removed.
+	 */
+	public boolean removeIf(Predicate<ClientData> filter) {
+		boolean removed = false;
+		for (ClientData client : byConnection.values()) {
+			if (filter.test(client) && remove(client)) {
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @param client
+	 *            - The client to look for.
+	 * @return If the client is in the registry.
+	 */
+	public boolean contains(ClientData client) {
+		return byConnection.get(client.getConnection()) == client;
+	}
+
+	/**
+	 * @param address
+	 *            - The remote address of the client.
+	 * @return The client connected from <code>address</code>, or
+	 *         <code>null</code> if there is none.
+	 */
+	public ClientData get(SocketAddress address) {
+		return address == null ? null : byAddress.get(address);
+	}
+
+	/**
+	 * @param connection
+	 *            - The connection of the client.
+	 * @return The client using <code>connection</code>, or <code>null</code>
+	 *         if there is none.
+	 */
+	public ClientData get(Connection connection) {
+		return connection == null ? null : byConnection.get(connection);
+	}
+
+	/**
+	 * @return The number of clients in the registry.
+	 */
+	public int size() {
+		return byConnection.size();
+	}
+
+	/**
+	 * @return If the registry has no clients.
+	 */
+	public boolean isEmpty() {
+		return byConnection.isEmpty();
+	}
+
+	/**
+	 * @return An unmodifiable, live view of the clients in the registry. The
+	 *         view reflects clients added and removed after it was obtained,
+	 *         and iterating over it never copies the registry.
+	 */
+	public Collection<ClientData> view() {
+		return view;
+	}
+
+	/**
+	 * @return An array containing every client in the registry.
+	 */
+	public ClientData[] toArray() {
+		return byConnection.values().toArray(new ClientData[0]);
+	}
+
+	@Override
+	public Iterator<ClientData> iterator() {
+		return view.iterator();
+	}
+}
@@ -2,34 +2,94 @@ package org.jnetwork;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A utility class used for closing unclosed <code>Closeable</code> objects on
- * shutdown.
+ * shutdown. Every object is closed at the same time, each on its own thread,
+ * so one that is slow to close does not hold up the rest. Servers are shut
+ * down gracefully with {@link Server#shutdown(long, TimeUnit)}, using the
+ * timeout set with {@link #setShutdownTimeout(long, TimeUnit)}.
  * 
  * This class is immutable.
  * 
  * @author Lucas Baizer
  */
 public final class CloseRequest {
-	private static final ArrayList<Closeable> toClose = new ArrayList<Closeable>();
+	/**
+	 * The default time servers are given to shut down, 5 seconds.
+	 */
+	public static final long DEFAULT_SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+	private static final List<Closeable> toClose = new CopyOnWriteArrayList<Closeable>();
+	private static volatile long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
 
 	static {
 		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
 			@Override
 			public void run() {
-				for (Closeable object : toClose) {
+				Closeable[] objects = getObjectsToClose();
+				Thread[] closers = new Thread[objects.length];
+				for (int i = 0; i < objects.length; i++) {
+					Closeable object = objects[i];
+					closers[i] = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							close(object);
+						}
+					}, "JNetwork-CloseRequest-Closer-" + i);
+					closers[i].start();
+				}
+
+				for (Thread closer : closers) {
 					try {
-						object.close();
-					} catch (IOException e) {
-						Thread.getDefaultUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+						closer.join();
+					} catch (InterruptedException e) {
+						return;
 					}
 				}
 			}
 		}, "JNetwork-CloseRequest-Dispatch"));
 	}
 
+	private static void close(Closeable object) {
+		try {
+			if (object instanceof Server) {
+				((Server) object).shutdown(shutdownTimeout, TimeUnit.NANOSECONDS);
+			} else {
+				object.close();
+			}
+		} catch (IOException e) {
+			Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+		}
+	}
+
+	/**
+	 * Sets how long servers are given to finish with their clients on
+	 * shutdown. See {@link Server#shutdown(long, TimeUnit)}.
+	 * 
+	 * @param timeout
+	 *            - The timeout, or <code>0</code> to close clients straight
+	 *            away.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 */
+	public static void setShutdownTimeout(long timeout, TimeUnit unit) {
+		shutdownTimeout = unit.toNanos(Math.max(timeout, 0));
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the timeout in.
+	 * @return How long servers are given to finish with their clients on
+	 *         shutdown.
+	 */
+	public static long getShutdownTimeout(TimeUnit unit) {
+		return unit.convert(shutdownTimeout, TimeUnit.NANOSECONDS);
+	}
+
 	/**
 	 * Adds a <code>Closeable</code> object to close on shutdown.
 	 * 
@@ -80,11 +140,6 @@ public final class CloseRequest {
 	 * @return Closeable[] - The array of objects to close.
 	 */
 	public static Closeable[] getObjectsToClose() {
-		Closeable[] objects = new Closeable[toClose.size()];
-
-		for (int i = 0; i < objects.length; i++)
-			objects[i] = toClose.get(i);
-
-		return objects;
+		return toClose.toArray(new Closeable[0]);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,204 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An <code>OutputStream</code> that buffers writes according to a
+ * {@link FlushPolicy}, and counts how many writes reach the underlying stream.
+ *
+ * Every stream with an interval policy shares one scheduler thread, which only
+ * times the flushes. The flushes themselves may block on a slow peer, so they
+ * run on {@link Connection#getAsyncExecutor()}.
+ *
+ * @author Lucas Baizer
+ */
+class CoalescingOutputStream extends OutputStream {
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	private static ScheduledExecutorService scheduler;
+
+	private final OutputStream out;
+	private FlushPolicy policy;
+	private byte[] buffer;
+	private int count;
+	private boolean flushScheduled;
+	private IOException flushException;
+	private long writes;
+	private long socketWrites;
+	private long bytes;
+
+	CoalescingOutputStream(OutputStream out, FlushPolicy policy) {
+		this.out = out;
+		setPolicy(policy);
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "JNetwork-Flush-Scheduler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return scheduler;
+	}
+
+	synchronized void setPolicy(FlushPolicy policy) {
+		if (count > 0) {
+			try {
+				flushBuffer();
+			} catch (IOException e) {
+				flushException = e;
+			}
+		}
+
+		this.policy = policy;
+		if (policy.isBuffered()) {
+			int size = policy.getThreshold() == Integer.MAX_VALUE ? DEFAULT_BUFFER_SIZE
+					: Math.max(policy.getThreshold(), DEFAULT_BUFFER_SIZE);
+			if (buffer == null || buffer.length != size) {
+				buffer = new byte[size];
+			}
+		} else {
+			buffer = null;
+		}
+	}
+
+	synchronized FlushPolicy getPolicy() {
+		return policy;
+	}
+
+	synchronized WriteStatistics getStatistics() {
+		return new WriteStatistics(writes, socketWrites, bytes);
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		checkFlushException();
+		writes++;
+		bytes++;
+
+		if (buffer == null) {
+			socketWrites++;
+			out.write(b);
+			return;
+		}
+
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+		afterBufferedWrite();
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		checkFlushException();
+		writes++;
+		bytes += len;
+
+		if (buffer == null || len >= buffer.length) {
+			// too large to be worth copying; keep ordering by flushing first
+			if (count > 0) {
+				flushBuffer();
+			}
+			socketWrites++;
+			out.write(b, off, len);
+			return;
+		}
+
+		if (len > buffer.length - count) {
+			flushBuffer();
+		}
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+		afterBufferedWrite();
+	}
+
+	private void afterBufferedWrite() throws IOException {
+		if (count >= policy.getThreshold()) {
+			flushBuffer();
+		} else if (!flushScheduled && policy.getInterval(TimeUnit.NANOSECONDS) > 0) {
+			flushScheduled = true;
+			getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					handOffFlush();
+				}
+			}, policy.getInterval(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Runs a due flush on the async executor, so that one stalled socket does
+	 * not hold up the flushes of every other stream.
+	 */
+	private void handOffFlush() {
+		try {
+			Connection.getAsyncExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					scheduledFlush();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the buffered data must still go out, so flush it here instead
+			scheduledFlush();
+		}
+	}
+
+	private synchronized void scheduledFlush() {
+		flushScheduled = false;
+		try {
+			flushBuffer();
+			out.flush();
+		} catch (IOException e) {
+			// reported to the next writer, since nobody is waiting on this flush
+			flushException = e;
+		}
+	}
+
+	private void checkFlushException() throws IOException {
+		if (flushException != null) {
+			IOException e = flushException;
+			flushException = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the buffered data to the underlying stream without flushing it.
+	 */
+	synchronized void flushBuffer() throws IOException {
+		if (count > 0) {
+			socketWrites++;
+			int length = count;
+			count = 0;
+			out.write(buffer, 0, length);
+		}
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		checkFlushException();
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,553 @@
+package org.jnetwork;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link MessageCodec} that writes each value as a one-byte type tag
+ * followed by a compact body: integers are written as variable-length
+ * integers, and strings and byte arrays are prefixed with their length. Every
+ * primitive wrapper, <code>String</code>, <code>byte[]</code>,
+ * <code>Serializable[]</code> and {@link DataPackage} is encoded this way.
+ * Other types can be given their own encoding with
+ * {@link #register(int, Class, TypeAdapter)}; anything else falls back to
+ * Java serialization.
+ *
+ * Both ends of a connection must register the same types with the same IDs.
+ *
+ * @author Lucas Baizer
+ */
+public class CompactCodec implements MessageCodec {
+	private static final byte NULL = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+	private static final byte BYTE = 3;
+	private static final byte SHORT = 4;
+	private static final byte CHAR = 5;
+	private static final byte INT = 6;
+	private static final byte LONG = 7;
+	private static final byte FLOAT = 8;
+	private static final byte DOUBLE = 9;
+	private static final byte STRING = 10;
+	private static final byte BYTE_ARRAY = 11;
+	private static final byte ARRAY = 12;
+	private static final byte DATA_PACKAGE = 13;
+	private static final byte ADAPTED = 14;
+	private static final byte SERIALIZED = 15;
+
+	/**
+	 * Writes and reads the values of a type registered with
+	 * {@link CompactCodec#register(int, Class, TypeAdapter)}.
+	 *
+	 * @param <T>
+	 *            - The type.
+	 */
+	public interface TypeAdapter<T> {
+		/**
+		 * Writes a value.
+		 *
+		 * @param value
+		 *            - The value, never <code>null</code>.
+		 * @param out
+		 *            - The writer to write the value with.
+		 * @throws IOException
+		 *             If the value cannot be written.
+		 */
+		public void write(T value, Writer out) throws IOException;
+
+		/**
+		 * Reads a value written with {@link #write(Object, Writer)}.
+		 *
+		 * @param in
+		 *            - The reader to read the value with.
+		 * @return The value.
+		 * @throws IOException
+		 *             If the value cannot be read.
+		 * @throws ClassNotFoundException
+		 *             If the class of a value the type holds cannot be found.
+		 */
+		public T read(Reader in) throws IOException, ClassNotFoundException;
+	}
+
+	private static final class Registration<T> {
+		private final int id;
+		private final Class<T> type;
+		private final TypeAdapter<T> adapter;
+
+		private Registration(int id, Class<T> type, TypeAdapter<T> adapter) {
+			this.id = id;
+			this.type = type;
+			this.adapter = adapter;
+		}
+	}
+
+	private final ConcurrentHashMap<Class<?>, Registration<?>> byType = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Integer, Registration<?>> byID = new ConcurrentHashMap<>();
+
+	/**
+	 * Gives a type its own encoding. Only values whose class is exactly
+	 * <code>type</code> use the adapter; subclasses do not.
+	 *
+	 * @param id
+	 *            - The ID the type is written as, which must not be negative.
+	 * @param type
+	 *            - The type.
+	 * @param adapter
+	 *            - The adapter that writes and reads the type's values.
+	 * @return An instance of <code><b>this</b></code>.
+	 * @throws IllegalArgumentException
+	 *             If the ID is negative, or the ID or type is already
+	 *             registered.
+	 */
+	public synchronized <T extends Serializable> CompactCodec register(int id, Class<T> type,
+			TypeAdapter<T> adapter) {
+		if (id < 0) {
+			throw new IllegalArgumentException("The ID cannot be negative");
+		}
+		if (byID.containsKey(id)) {
+			throw new IllegalArgumentException("The ID " + id + " is already registered");
+		}
+		if (byType.containsKey(type)) {
+			throw new IllegalArgumentException(type.getName() + " is already registered");
+		}
+
+		Registration<T> registration = new Registration<>(id, type, adapter);
+		byType.put(type, registration);
+		byID.put(id, registration);
+		return this;
+	}
+
+	@Override
+	public ByteBuffer encode(Serializable obj) throws IOException {
+		Writer out = new Writer();
+		out.writeValue(obj);
+		return ByteBuffer.wrap(out.buf, 0, out.count);
+	}
+
+	@Override
+	public Serializable decode(ByteBuffer data) throws IOException, ClassNotFoundException {
+		Reader in = new Reader(data.duplicate());
+		Serializable value;
+		try {
+			value = in.readValue();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException("The encoded value is cut off");
+		}
+
+		if (in.buffer.hasRemaining()) {
+			throw new StreamCorruptedException(in.buffer.remaining() + " bytes left over after the encoded value");
+		}
+		return value;
+	}
+
+	/**
+	 * Writes the parts of an encoded value. Handed to a
+	 * {@link TypeAdapter} while a value is encoded.
+	 */
+	public final class Writer {
+		private byte[] buf = new byte[128];
+		private int count;
+
+		private Writer() {
+		}
+
+		private void ensureCapacity(int extra) {
+			if (count + extra > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+			}
+		}
+
+		public void writeByte(int b) {
+			ensureCapacity(1);
+			buf[count++] = (byte) b;
+		}
+
+		public void writeBoolean(boolean b) {
+			writeByte(b ? 1 : 0);
+		}
+
+		/**
+		 * Writes an integer in one to five bytes, seven bits at a time. Small
+		 * non-negative integers take the fewest bytes.
+		 */
+		public void writeVarInt(int i) {
+			ensureCapacity(5);
+			while ((i & ~0x7F) != 0) {
+				buf[count++] = (byte) ((i & 0x7F) | 0x80);
+				i >>>= 7;
+			}
+			buf[count++] = (byte) i;
+		}
+
+		/**
+		 * Writes a long in one to ten bytes, seven bits at a time. Small
+		 * non-negative longs take the fewest bytes.
+		 */
+		public void writeVarLong(long l) {
+			ensureCapacity(10);
+			while ((l & ~0x7FL) != 0) {
+				buf[count++] = (byte) ((l & 0x7F) | 0x80);
+				l >>>= 7;
+			}
+			buf[count++] = (byte) l;
+		}
+
+		/**
+		 * Writes an integer like {@link #writeVarInt(int)}, but so that
+		 * integers close to zero take the fewest bytes whatever their sign.
+		 */
+		public void writeSignedVarInt(int i) {
+			writeVarInt((i << 1) ^ (i >> 31));
+		}
+
+		/**
+		 * Writes a long like {@link #writeVarLong(long)}, but so that longs
+		 * close to zero take the fewest bytes whatever their sign.
+		 */
+		public void writeSignedVarLong(long l) {
+			writeVarLong((l << 1) ^ (l >> 63));
+		}
+
+		public void writeFloat(float f) {
+			int bits = Float.floatToIntBits(f);
+			ensureCapacity(4);
+			buf[count++] = (byte) (bits >>> 24);
+			buf[count++] = (byte) (bits >>> 16);
+			buf[count++] = (byte) (bits >>> 8);
+			buf[count++] = (byte) bits;
+		}
+
+		public void writeDouble(double d) {
+			long bits = Double.doubleToLongBits(d);
+			ensureCapacity(8);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				buf[count++] = (byte) (bits >>> shift);
+			}
+		}
+
+		/**
+		 * Writes a string as its length followed by its UTF-8 bytes.
+		 *
+		 * @param s
+		 *            - The string, which must not be <code>null</code>.
+		 */
+		public void writeString(String s) {
+			writeBytes(s.getBytes(StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Writes a byte array as its length followed by its contents.
+		 *
+		 * @param bytes
+		 *            - The array, which must not be <code>null</code>.
+		 */
+		public void writeBytes(byte[] bytes) {
+			writeVarInt(bytes.length);
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buf, count, bytes.length);
+			count += bytes.length;
+		}
+
+		/**
+		 * Writes any value, or <code>null</code>, with its type tag, so it
+		 * can be read back with {@link Reader#readValue()}.
+		 *
+		 * @param value
+		 *            - The value.
+		 * @throws IOException
+		 *             If the value has to be serialized, and cannot be.
+		 */
+		public void writeValue(Object value) throws IOException {
+			if (value == null) {
+				writeByte(NULL);
+				return;
+			}
+
+			Class<?> type = value.getClass();
+			if (type == String.class) {
+				writeByte(STRING);
+				writeString((String) value);
+			} else if (type == Integer.class) {
+				writeByte(INT);
+				writeSignedVarInt((Integer) value);
+			} else if (type == Long.class) {
+				writeByte(LONG);
+				writeSignedVarLong((Long) value);
+			} else if (type == Boolean.class) {
+				writeByte((Boolean) value ? TRUE : FALSE);
+			} else if (type == Double.class) {
+				writeByte(DOUBLE);
+				writeDouble((Double) value);
+			} else if (type == Float.class) {
+				writeByte(FLOAT);
+				writeFloat((Float) value);
+			} else if (type == Byte.class) {
+				writeByte(BYTE);
+				writeByte((Byte) value);
+			} else if (type == Short.class) {
+				writeByte(SHORT);
+				writeSignedVarInt((Short) value);
+			} else if (type == Character.class) {
+				writeByte(CHAR);
+				writeVarInt((Character) value);
+			} else if (type == byte[].class) {
+				writeByte(BYTE_ARRAY);
+				writeBytes((byte[]) value);
+			} else if (type == Serializable[].class) {
+				Serializable[] array = (Serializable[]) value;
+				writeByte(ARRAY);
+				writeVarInt(array.length);
+				for (Serializable element : array) {
+					writeValue(element);
+				}
+			} else if (type == DataPackage.class) {
+				DataPackage pkg = (DataPackage) value;
+				writeByte(DATA_PACKAGE);
+				writeValue(pkg.getMessage());
+				writeString(pkg.getID());
+				writeValue(pkg.getCorrelationID());
+				writeValue(pkg.getObjects());
+			} else {
+				Registration<?> registration = byType.get(type);
+				if (registration != null) {
+					writeByte(ADAPTED);
+					writeVarInt(registration.id);
+					writeAdapted(registration, value);
+				} else {
+					writeByte(SERIALIZED);
+					writeSerialized(value);
+				}
+			}
+		}
+
+		private <T> void writeAdapted(Registration<T> registration, Object value) throws IOException {
+			registration.adapter.write(registration.type.cast(value), this);
+		}
+
+		private void writeSerialized(Object value) throws IOException {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new ObjectOutputStream(bout)) {
+				out.writeObject(value);
+			}
+			writeBytes(bout.toByteArray());
+		}
+	}
+
+	/**
+	 * Reads the parts of an encoded value. Handed to a
+	 * {@link TypeAdapter} while a value is decoded.
+	 */
+	public final class Reader {
+		private final ByteBuffer buffer;
+
+		private Reader(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public byte readByte() {
+			return buffer.get();
+		}
+
+		public boolean readBoolean() {
+			return buffer.get() != 0;
+		}
+
+		/**
+		 * Reads an integer written with {@link Writer#writeVarInt(int)}.
+		 */
+		public int readVarInt() throws IOException {
+			int result = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				byte b = buffer.get();
+				result |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return result;
+				}
+			}
+			throw new StreamCorruptedException("Variable-length integer is too long");
+		}
+
+		/**
+		 * Reads a long written with {@link Writer#writeVarLong(long)}.
+		 */
+		public long readVarLong() throws IOException {
+			long result = 0;
+			for (int shift = 0; shift < 70; shift += 7) {
+				byte b = buffer.get();
+				result |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return result;
+				}
+			}
+			throw new StreamCorruptedException("Variable-length long is too long");
+		}
+
+		/**
+		 * Reads an integer written with {@link Writer#writeSignedVarInt(int)}.
+		 */
+		public int readSignedVarInt() throws IOException {
+			int i = readVarInt();
+			return (i >>> 1) ^ -(i & 1);
+		}
+
+		/**
+		 * Reads a long written with {@link Writer#writeSignedVarLong(long)}.
+		 */
+		public long readSignedVarLong() throws IOException {
+			long l = readVarLong();
+			return (l >>> 1) ^ -(l & 1);
+		}
+
+		public float readFloat() {
+			return buffer.getFloat();
+		}
+
+		public double readDouble() {
+			return buffer.getDouble();
+		}
+
+		/**
+		 * Reads a string written with {@link Writer#writeString(String)}.
+		 */
+		public String readString() throws IOException {
+			int length = readLength();
+			String s;
+			if (buffer.hasArray()) {
+				s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+						StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+			} else {
+				byte[] bytes = new byte[length];
+				buffer.get(bytes);
+				s = new String(bytes, StandardCharsets.UTF_8);
+			}
+			return s;
+		}
+
+		/**
+		 * Reads a byte array written with {@link Writer#writeBytes(byte[])}.
+		 */
+		public byte[] readBytes() throws IOException {
+			byte[] bytes = new byte[readLength()];
+			buffer.get(bytes);
+			return bytes;
+		}
+
+		/**
+		 * Reads a length, checking that that many bytes are left before
+		 * anything is allocated for them.
+		 */
+		private int readLength() throws IOException {
+			int length = readVarInt();
+			if (length < 0) {
+				throw new StreamCorruptedException("Negative length " + length);
+			}
+			if (length > buffer.remaining()) {
+				throw new EOFException("Length " + length + " is longer than the " + buffer.remaining()
+						+ " bytes left");
+			}
+			return length;
+		}
+
+		/**
+		 * Reads a value written with {@link Writer#writeValue(Object)}.
+		 *
+		 * @return The value, which may be <code>null</code>.
+		 * @throws IOException
+		 *             If the data is not a valid encoding.
+		 * @throws ClassNotFoundException
+		 *             If the class of a serialized value cannot be found.
+		 */
+		public Serializable readValue() throws IOException, ClassNotFoundException {
+			byte tag = buffer.get();
+			switch (tag) {
+			case NULL:
+				return null;
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case BYTE:
+				return buffer.get();
+			case SHORT:
+				return (short) readSignedVarInt();
+			case CHAR:
+				return (char) readVarInt();
+			case INT:
+				return readSignedVarInt();
+			case LONG:
+				return readSignedVarLong();
+			case FLOAT:
+				return buffer.getFloat();
+			case DOUBLE:
+				return buffer.getDouble();
+			case STRING:
+				return readString();
+			case BYTE_ARRAY:
+				return readBytes();
+			case ARRAY:
+				// every element takes at least one byte
+				Serializable[] array = new Serializable[readLength()];
+				for (int i = 0; i < array.length; i++) {
+					array[i] = readValue();
+				}
+				return array;
+			case DATA_PACKAGE:
+				return readDataPackage();
+			case ADAPTED:
+				return readAdapted();
+			case SERIALIZED:
+				return readSerialized();
+			default:
+				throw new StreamCorruptedException("Unknown type tag " + tag);
+			}
+		}
+
+		private DataPackage readDataPackage() throws IOException, ClassNotFoundException {
+			String message = (String) readValue();
+			String id = readString();
+			String correlationID = (String) readValue();
+			Serializable[] objects = (Serializable[]) readValue();
+			return new DataPackage(id, objects).setMessage(message).setCorrelationID(correlationID);
+		}
+
+		private Serializable readAdapted() throws IOException, ClassNotFoundException {
+			int id = readVarInt();
+			Registration<?> registration = byID.get(id);
+			if (registration == null) {
+				throw new StreamCorruptedException("No type is registered with the ID " + id);
+			}
+			return (Serializable) registration.adapter.read(this);
+		}
+
+		private Serializable readSerialized() throws IOException, ClassNotFoundException {
+			byte[] bytes;
+			int off;
+			int length = readLength();
+			if (buffer.hasArray()) {
+				bytes = buffer.array();
+				off = buffer.arrayOffset() + buffer.position();
+				buffer.position(buffer.position() + length);
+			} else {
+				bytes = new byte[length];
+				off = 0;
+				buffer.get(bytes);
+			}
+
+			try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes, off, length))) {
+				return (Serializable) in.readObject();
+			}
+		}
+	}
+}
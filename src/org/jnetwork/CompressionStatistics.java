@@ -0,0 +1,96 @@
+package org.jnetwork;
+
+/**
+ * A snapshot of how well the frames of a {@link Connection} have compressed
+ * since compression was negotiated.
+ *
+ * This class is immutable.
+ *
+ * @see Connection#getCompressionStatistics()
+ *
+ * @author Lucas Baizer
+ */
+public final class CompressionStatistics {
+	private final long compressedFrames;
+	private final long rawFrames;
+	private final long bytesWritten;
+	private final long compressedBytesWritten;
+	private final long bytesRead;
+	private final long compressedBytesRead;
+
+	CompressionStatistics(long compressedFrames, long rawFrames, long bytesWritten, long compressedBytesWritten,
+			long bytesRead, long compressedBytesRead) {
+		this.compressedFrames = compressedFrames;
+		this.rawFrames = rawFrames;
+		this.bytesWritten = bytesWritten;
+		this.compressedBytesWritten = compressedBytesWritten;
+		this.bytesRead = bytesRead;
+		this.compressedBytesRead = compressedBytesRead;
+	}
+
+	/**
+	 * @return The number of frames written compressed.
+	 */
+	public long getCompressedFrames() {
+		return compressedFrames;
+	}
+
+	/**
+	 * @return The number of frames written as-is, because they were below the
+	 *         compression threshold or did not get any smaller.
+	 */
+	public long getRawFrames() {
+		return rawFrames;
+	}
+
+	/**
+	 * @return The number of bytes in the frames written, before compression.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * @return The number of bytes actually sent for the frames written.
+	 */
+	public long getCompressedBytesWritten() {
+		return compressedBytesWritten;
+	}
+
+	/**
+	 * @return The number of bytes in the frames read, after decompression.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return The number of bytes actually received for the frames read.
+	 */
+	public long getCompressedBytesRead() {
+		return compressedBytesRead;
+	}
+
+	/**
+	 * @return The bytes sent divided by the bytes written, where lower is
+	 *         better, or <code>1</code> if nothing has been written.
+	 */
+	public double getWriteRatio() {
+		return bytesWritten == 0 ? 1 : (double) compressedBytesWritten / bytesWritten;
+	}
+
+	/**
+	 * @return The bytes received divided by the bytes read, where lower is
+	 *         better, or <code>1</code> if nothing has been read.
+	 */
+	public double getReadRatio() {
+		return bytesRead == 0 ? 1 : (double) compressedBytesRead / bytesRead;
+	}
+
+	@Override
+	public String toString() {
+		return "CompressionStatistics:[compressedFrames=" + compressedFrames + ",rawFrames=" + rawFrames
+				+ ",bytesWritten=" + bytesWritten + ",compressedBytesWritten=" + compressedBytesWritten
+				+ ",bytesRead=" + bytesRead + ",compressedBytesRead=" + compressedBytesRead + "]";
+	}
+}
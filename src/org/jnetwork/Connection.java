@@ -1,25 +1,109 @@
 package org.jnetwork;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.ProtocolException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 /**
  * An abstract class used for writing objects out to and reading objects from a
  * server. For TCP, use TCPConnection. For UDP, use UDPConnection.
  * 
+ * A connection's monitor is its write lock. {@link #writeFrame(ByteBuffer)}
+ * holds it while writing, and code that writes several frames that must go
+ * out together, or a frame followed by {@link #flush()}, should hold it
+ * around them, as {@link #sendAsync(Serializable)},
+ * {@link MultiplexedConnection} and {@link OutboundQueue} do.
+ * 
  * @see java.net.Socket
  * 
  * @author Lucas Baizer
  */
 public abstract class Connection implements Closeable {
+	/**
+	 * The default largest frame that can be written or read, 16 MiB.
+	 */
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	/**
+	 * The most platform threads the default asynchronous executor runs at
+	 * once, when the JVM does not support virtual threads.
+	 */
+	public static final int DEFAULT_ASYNC_THREADS = 64;
+
+	/**
+	 * Frames up to this size are written with their header in a single write.
+	 */
+	private static final int SINGLE_WRITE_FRAME_LENGTH = 8192;
+
+	private static final MessageCodec DEFAULT_CODEC = new SerializationCodec();
+
+	/**
+	 * The first bytes of the header sent before a file, "JNFL".
+	 */
+	static final int FILE_MAGIC = 0x4A4E464C;
+
+	/**
+	 * The size of the buffer used to copy files that cannot be transferred
+	 * directly between channels.
+	 */
+	static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The default size below which frames are not compressed, 512 bytes.
+	 */
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 512;
+
+	/**
+	 * The first bytes of the frame sent to negotiate compression, "JNCZ".
+	 */
+	private static final int COMPRESSION_MAGIC = 0x4A4E435A;
+
+	/**
+	 * The most bytes compression adds to a frame: a flag byte, and the length
+	 * of the original contents.
+	 */
+	static final int COMPRESSION_OVERHEAD = 5;
+
+	private static Executor asyncExecutor;
+
 	private Object closeWaiter = new Object();
+	// guards the lazily created helpers, since the monitor is held while writing
+	private final Object helperLock = new Object();
 	private String hostAddress;
 	private int hostPort;
+	private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+	private volatile long lastReadTime = System.nanoTime();
+	private volatile long lastWriteTime = lastReadTime;
+	private int maxFrameLength = DEFAULT_MAX_FRAME_LENGTH;
+	private volatile MessageCodec codec = DEFAULT_CODEC;
+	private ObjectChannel objectChannel;
+	private SerialExecutor sendLane;
+	private SerialExecutor receiveLane;
+	private MultiplexedConnection multiplexer;
+	private volatile FrameCompressor compressor;
+	private volatile ServerMetrics metrics;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
 
 	Connection() {
 	}
@@ -125,6 +209,713 @@ public abstract class Connection implements Closeable {
 		}
 	}
 
+	/**
+	 * Gets this connection's {@link ObjectChannel}, which writes and reads
+	 * objects with Java serialization like the object streams, but resets
+	 * itself periodically so its memory use stays flat on a long-lived
+	 * connection. It must not be mixed with {@link #getObjectOutputStream()}
+	 * or {@link #getObjectInputStream()}.
+	 * 
+	 * @return The object channel.
+	 */
+	public ObjectChannel getObjectChannel() {
+		synchronized (helperLock) {
+			if (objectChannel == null) {
+				objectChannel = new ObjectChannel(this);
+			}
+			return objectChannel;
+		}
+	}
+
+	/**
+	 * Writes a frame: a 4-byte big-endian length followed by the bytes from
+	 * <code>frame</code>'s position to its limit. Frames are read back whole
+	 * with {@link #readFrame()}, so message boundaries are kept without any
+	 * serialization. Frames should not be mixed with the object streams on the
+	 * same connection. If compression has been negotiated, the frame is
+	 * compressed first.
+	 * 
+	 * The frame is written while holding the connection's monitor, so frames
+	 * written by different threads are never interleaved.
+	 * 
+	 * @param frame
+	 *            - The contents of the frame. Its position is not changed.
+	 * @throws ProtocolException
+	 *             If the frame is longer than the maximum frame length.
+	 * @throws IOException
+	 *             If an error occurs while writing the frame.
+	 */
+	public void writeFrame(ByteBuffer frame) throws IOException {
+		checkFrameLength(frame.remaining());
+		frame = compressFrame(frame);
+		int length = frame.remaining();
+
+		if (length <= SINGLE_WRITE_FRAME_LENGTH) {
+			byte[] bytes = new byte[4 + length];
+			putFrameHeader(bytes, length);
+			frame.duplicate().get(bytes, 4, length);
+			synchronized (this) {
+				write(bytes, 0, bytes.length);
+			}
+		} else {
+			byte[] header = new byte[4];
+			putFrameHeader(header, length);
+			byte[] bytes;
+			int offset;
+			if (frame.hasArray()) {
+				bytes = frame.array();
+				offset = frame.arrayOffset() + frame.position();
+			} else {
+				bytes = new byte[length];
+				offset = 0;
+				frame.duplicate().get(bytes);
+			}
+			// another thread's frame must not land between the header and the contents
+			synchronized (this) {
+				write(header, 0, 4);
+				write(bytes, offset, length);
+			}
+		}
+	}
+
+	/**
+	 * Reads a frame written with {@link #writeFrame(ByteBuffer)}, blocking
+	 * until the whole frame has arrived.
+	 * 
+	 * @return A buffer holding the contents of the frame.
+	 * @throws EOFException
+	 *             If the connection ends before the whole frame is read.
+	 * @throws ProtocolException
+	 *             If the frame is longer than the maximum frame length.
+	 * @throws IOException
+	 *             If an error occurs while reading the frame.
+	 */
+	public ByteBuffer readFrame() throws IOException {
+		byte[] header = new byte[4];
+		readFully(header, 0, 4);
+
+		int length = checkWireFrameLength(getFrameHeader(header));
+		byte[] bytes = new byte[length];
+		readFully(bytes, 0, length);
+		return decompressFrame(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Reads exactly <code>len</code> bytes, blocking until they have all
+	 * arrived.
+	 * 
+	 * @throws EOFException
+	 *             If the connection ends before every byte is read.
+	 */
+	protected void readFully(byte[] arr, int off, int len) throws IOException {
+		while (len > 0) {
+			int read = read(arr, off, len);
+			if (read < 0) {
+				throw new EOFException();
+			}
+			off += read;
+			len -= read;
+		}
+	}
+
+	/**
+	 * Checks that a frame's length is between <code>0</code> and the maximum
+	 * frame length.
+	 * 
+	 * @return The length.
+	 * @throws ProtocolException
+	 *             If the length is out of range.
+	 */
+	protected int checkFrameLength(int length) throws ProtocolException {
+		if (length < 0 || length > maxFrameLength) {
+			throw new ProtocolException(
+					"Frame length " + length + " is not between 0 and the maximum of " + maxFrameLength);
+		}
+		return length;
+	}
+
+	/**
+	 * Checks the length of a frame as it is sent, which may be up to
+	 * {@link #COMPRESSION_OVERHEAD} bytes longer than the maximum frame length
+	 * if compression has been negotiated. The original contents are checked
+	 * against the maximum when they are decompressed.
+	 * 
+	 * @return The length.
+	 * @throws ProtocolException
+	 *             If the length is out of range.
+	 */
+	int checkWireFrameLength(int length) throws ProtocolException {
+		long max = getMaxWireFrameLength();
+		if (length < 0 || length > max) {
+			throw new ProtocolException("Frame length " + length + " is not between 0 and the maximum of " + max);
+		}
+		return length;
+	}
+
+	/**
+	 * @return The longest a frame can be as it is sent.
+	 */
+	long getMaxWireFrameLength() {
+		return (long) maxFrameLength + (compressor == null ? 0 : COMPRESSION_OVERHEAD);
+	}
+
+	static void putFrameHeader(byte[] bytes, int length) {
+		bytes[0] = (byte) (length >>> 24);
+		bytes[1] = (byte) (length >>> 16);
+		bytes[2] = (byte) (length >>> 8);
+		bytes[3] = (byte) length;
+	}
+
+	static int getFrameHeader(byte[] bytes) {
+		return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+	}
+
+	/**
+	 * @return The largest frame that can be written or read.
+	 */
+	public int getMaxFrameLength() {
+		return maxFrameLength;
+	}
+
+	/**
+	 * Sets the largest frame that can be written or read. Frames announcing a
+	 * larger length are rejected before anything is allocated for them, so a
+	 * misbehaving peer cannot exhaust memory.
+	 * 
+	 * @param maxFrameLength
+	 *            - The largest frame, in bytes.
+	 */
+	public void setMaxFrameLength(int maxFrameLength) {
+		if (maxFrameLength < 0) {
+			throw new IllegalArgumentException("The maximum frame length cannot be negative");
+		}
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	/**
+	 * Agrees with the other end of the connection on whether frames should be
+	 * compressed. Both ends must call this at the same point, typically right
+	 * after connecting, and compression is only enabled if both ask for it.
+	 * Frames below the compression threshold, and frames that do not get any
+	 * smaller, are still sent as-is, at the cost of a single byte.
+	 * 
+	 * @param enabled
+	 *            - If this end wants frames to be compressed.
+	 * @return If frames are compressed from now on.
+	 * @throws ProtocolException
+	 *             If the other end did not negotiate compression.
+	 * @throws IOException
+	 *             If an error occurs while negotiating.
+	 * 
+	 * @see #setCompressionThreshold(int)
+	 * @see #setCompressionLevel(int)
+	 */
+	public boolean negotiateCompression(boolean enabled) throws IOException {
+		ByteBuffer offer = ByteBuffer.allocate(5);
+		offer.putInt(COMPRESSION_MAGIC).put((byte) (enabled ? 1 : 0)).flip();
+		writeFrame(offer);
+		flush();
+
+		ByteBuffer answer = readFrame();
+		if (answer.remaining() != 5 || answer.getInt() != COMPRESSION_MAGIC) {
+			throw new ProtocolException("Expected the other end to negotiate compression");
+		}
+		boolean compress = enabled && answer.get() == 1;
+
+		FrameCompressor old = compressor;
+		compressor = compress ? new FrameCompressor(compressionLevel, compressionThreshold) : null;
+		if (old != null) {
+			old.end();
+		}
+		return compress;
+	}
+
+	/**
+	 * @return If compression has been negotiated on this connection.
+	 */
+	public boolean isCompressionEnabled() {
+		return compressor != null;
+	}
+
+	/**
+	 * @return How well the frames of this connection have compressed, or all
+	 *         zeros if compression has not been negotiated.
+	 */
+	public CompressionStatistics getCompressionStatistics() {
+		FrameCompressor compressor = this.compressor;
+		return compressor == null ? new CompressionStatistics(0, 0, 0, 0, 0, 0) : compressor.getStatistics();
+	}
+
+	/**
+	 * @return The level frames are compressed at.
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Sets the level frames are compressed at, from
+	 * <code>Deflater.BEST_SPEED</code> to
+	 * <code>Deflater.BEST_COMPRESSION</code>. This takes effect the next time
+	 * compression is negotiated.
+	 * 
+	 * @param compressionLevel
+	 *            - The level.
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+		}
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @return The size below which frames are sent without being compressed.
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Sets the size below which frames are sent without being compressed,
+	 * since small frames rarely get smaller and are not worth the time spent
+	 * on them. This takes effect the next time compression is negotiated.
+	 * 
+	 * @param compressionThreshold
+	 *            - The size, in bytes.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		if (compressionThreshold < 0) {
+			throw new IllegalArgumentException("The compression threshold cannot be negative");
+		}
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * Compresses a frame about to be written, if compression has been
+	 * negotiated. Subclasses that override {@link #writeFrame(ByteBuffer)}
+	 * should call this first.
+	 * 
+	 * @return The frame to write.
+	 */
+	protected ByteBuffer compressFrame(ByteBuffer frame) throws IOException {
+		FrameCompressor compressor = this.compressor;
+		return compressor == null ? frame : compressor.compress(frame);
+	}
+
+	/**
+	 * Decompresses a frame that was just read, if compression has been
+	 * negotiated. Subclasses that override {@link #readFrame()} should call
+	 * this on every frame they return.
+	 * 
+	 * @return The original contents of the frame.
+	 * @throws ProtocolException
+	 *             If the frame is malformed, or its contents are longer than
+	 *             the maximum frame length.
+	 */
+	protected ByteBuffer decompressFrame(ByteBuffer frame) throws IOException {
+		FrameCompressor compressor = this.compressor;
+		return compressor == null ? frame : compressor.decompress(frame, maxFrameLength);
+	}
+
+	/**
+	 * Sends a file, streaming it from disk instead of loading it into memory.
+	 * The file is preceded by a 12-byte header holding its length, and is read
+	 * at the other end with {@link #receiveFile(Path)}. Files should not be
+	 * mixed with the object streams on the same connection.
+	 * 
+	 * @param file
+	 *            - The file to send.
+	 * @return The number of bytes of the file that were sent.
+	 * @throws IOException
+	 *             If an error occurs while reading the file or writing it to
+	 *             the connection.
+	 */
+	public long sendFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			writeFileHeader(length);
+
+			byte[] bytes = new byte[(int) Math.min(FILE_BUFFER_SIZE, Math.max(length, 1))];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			long sent = 0;
+			while (sent < length) {
+				buffer.clear();
+				buffer.limit((int) Math.min(bytes.length, length - sent));
+				int read = channel.read(buffer, sent);
+				if (read < 0) {
+					throw new EOFException("File shrank while it was being sent");
+				}
+				write(bytes, 0, read);
+				sent += read;
+			}
+			flush();
+			return sent;
+		}
+	}
+
+	/**
+	 * Receives a file sent with {@link #sendFile(Path)}, streaming it to disk
+	 * instead of holding it in memory. The file is created if it does not
+	 * exist, and replaced if it does.
+	 * 
+	 * @param file
+	 *            - The file to write to.
+	 * @return The number of bytes received.
+	 * @throws ProtocolException
+	 *             If what is received is not a file.
+	 * @throws EOFException
+	 *             If the connection ends before the whole file is received.
+	 *             Whatever was received is left in the file.
+	 * @throws IOException
+	 *             If an error occurs while reading from the connection or
+	 *             writing the file.
+	 */
+	public long receiveFile(Path file) throws IOException {
+		long length = readFileHeader();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			byte[] bytes = new byte[(int) Math.min(FILE_BUFFER_SIZE, Math.max(length, 1))];
+			long received = 0;
+			while (received < length) {
+				int read = read(bytes, 0, (int) Math.min(bytes.length, length - received));
+				if (read < 0) {
+					throw new EOFException("Connection ended after " + received + " of " + length + " bytes");
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				received += read;
+			}
+			return received;
+		}
+	}
+
+	/**
+	 * Writes the header that comes before a file: the 4 bytes "JNFL" followed
+	 * by the 8-byte length of the file.
+	 */
+	protected void writeFileHeader(long length) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(12).putInt(FILE_MAGIC).putLong(length);
+		write(header.array(), 0, 12);
+	}
+
+	/**
+	 * Reads the header written by {@link #writeFileHeader(long)}.
+	 * 
+	 * @return The length of the file.
+	 * @throws ProtocolException
+	 *             If the header is not a file header.
+	 */
+	protected long readFileHeader() throws IOException {
+		byte[] header = new byte[12];
+		readFully(header, 0, 12);
+
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		if (buffer.getInt() != FILE_MAGIC) {
+			throw new ProtocolException("Expected a file, but received something else");
+		}
+		long length = buffer.getLong();
+		if (length < 0) {
+			throw new ProtocolException("Negative file length " + length);
+		}
+		return length;
+	}
+
+	/**
+	 * Encodes an object with this connection's {@link MessageCodec} and writes
+	 * it as a single frame.
+	 * 
+	 * @param message
+	 *            - The object to write.
+	 * @throws IOException
+	 *             If the object cannot be encoded, or an error occurs while
+	 *             writing it.
+	 * 
+	 * @see #setMessageCodec(MessageCodec)
+	 */
+	public void writeMessage(Serializable message) throws IOException {
+		writeFrame(codec.encode(message));
+	}
+
+	/**
+	 * Reads a frame and decodes it with this connection's
+	 * {@link MessageCodec}.
+	 * 
+	 * @return The decoded object, or <code>null</code> if this type of
+	 *         connection does not block and no whole frame has been received.
+	 * @throws IOException
+	 *             If an error occurs while reading the frame, or it cannot be
+	 *             decoded.
+	 * @throws ClassNotFoundException
+	 *             If the class of a decoded object cannot be found.
+	 * 
+	 * @see #setMessageCodec(MessageCodec)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Serializable> T readMessage() throws IOException, ClassNotFoundException {
+		ByteBuffer frame = readFrame();
+		return frame == null ? null : (T) codec.decode(frame);
+	}
+
+	/**
+	 * Writes a message with {@link #writeMessage(Serializable)} and flushes
+	 * it, without blocking the calling thread. Messages sent asynchronously
+	 * are written in the order this method is called.
+	 * <p>
+	 * The write still blocks, on a thread of {@link #getAsyncExecutor()},
+	 * for as long as the socket is full.
+	 * 
+	 * @param message
+	 *            - The message to send.
+	 * @return A future that is completed once the message has been written,
+	 *         or completed exceptionally if it could not be.
+	 */
+	public CompletableFuture<Void> sendAsync(final Serializable message) {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		getSendLane().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					synchronized (Connection.this) {
+						writeMessage(message);
+						flush();
+					}
+					future.complete(null);
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Reads a message with {@link #readMessage()}, without blocking the
+	 * calling thread. Messages received asynchronously are read in the order
+	 * this method is called. This cannot be used once requests have been
+	 * sent with {@link #requestAsync(DataPackage)}, since every message is
+	 * then read as a reply.
+	 * <p>
+	 * The read blocks a thread of {@link #getAsyncExecutor()} until a message
+	 * arrives, so every connection with an outstanding call to this method
+	 * holds one thread.
+	 * 
+	 * @return A future that is completed with the message once it has been
+	 *         read, or completed exceptionally if it could not be.
+	 */
+	public <T extends Serializable> CompletableFuture<T> receiveAsync() {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		synchronized (helperLock) {
+			if (multiplexer != null) {
+				future.completeExceptionally(
+						new IllegalStateException("Connection is multiplexed; every message is read as a reply"));
+				return future;
+			}
+		}
+
+		getReceiveLane().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(Connection.this.<T> readMessage());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Sends a request and returns a future for its reply, without blocking
+	 * the calling thread. Many requests can be in flight at once; see
+	 * {@link MultiplexedConnection}. The server must answer them with a
+	 * {@link MultiplexedConnectionCallback}.
+	 * <p>
+	 * The request is written on a thread of {@link #getAsyncExecutor()}, but
+	 * the replies are read by the {@link MultiplexedConnection}'s own reader
+	 * thread, so each multiplexed connection holds one platform thread however
+	 * many requests are in flight.
+	 * 
+	 * @param request
+	 *            - The request.
+	 * @return A future that is completed with the reply, or completed
+	 *         exceptionally if the request fails.
+	 */
+	public CompletableFuture<DataPackage> requestAsync(final DataPackage request) {
+		final MultiplexedConnection multiplexer = getMultiplexedConnection();
+		final CompletableFuture<DataPackage> future = new CompletableFuture<>();
+		getSendLane().execute(new Runnable() {
+			@Override
+			public void run() {
+				multiplexer.request(request).whenComplete((reply, e) -> {
+					if (e == null) {
+						future.complete(reply);
+					} else {
+						future.completeExceptionally(e);
+					}
+				});
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Gets the {@link MultiplexedConnection} that sends this connection's
+	 * requests, creating it if it does not exist yet. Once it exists, it reads
+	 * every message received on this connection.
+	 * 
+	 * @return The multiplexed connection.
+	 */
+	public MultiplexedConnection getMultiplexedConnection() {
+		synchronized (helperLock) {
+			if (multiplexer == null) {
+				multiplexer = new MultiplexedConnection(this);
+			}
+			return multiplexer;
+		}
+	}
+
+	private SerialExecutor getSendLane() {
+		synchronized (helperLock) {
+			if (sendLane == null) {
+				sendLane = new SerialExecutor(getAsyncExecutor());
+			}
+			return sendLane;
+		}
+	}
+
+	private SerialExecutor getReceiveLane() {
+		synchronized (helperLock) {
+			if (receiveLane == null) {
+				receiveLane = new SerialExecutor(getAsyncExecutor());
+			}
+			return receiveLane;
+		}
+	}
+
+	/**
+	 * Gets the <code>Executor</code> that runs the blocking I/O behind
+	 * {@link #sendAsync(Serializable)}, {@link #receiveAsync()} and
+	 * {@link #requestAsync(DataPackage)} for every connection. By default,
+	 * this runs each task on a virtual thread if the JVM supports them, or on
+	 * a shared pool of at most {@link #DEFAULT_ASYNC_THREADS} daemon threads
+	 * otherwise.
+	 * <p>
+	 * Each outstanding asynchronous call occupies a thread while its I/O
+	 * blocks; a connection waiting in {@link #receiveAsync()} holds one until
+	 * a message arrives. With virtual threads this is cheap, but a pool of
+	 * platform threads is used up by that many idle receivers, and further
+	 * calls on every connection then wait in its queue. Applications with
+	 * many idle receivers on such a JVM should size the pool with
+	 * {@link #setAsyncExecutor(Executor)}, or read on a server's event loop
+	 * instead.
+	 * 
+	 * @return The executor.
+	 */
+	public static synchronized Executor getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			if (ClientExecutors.isVirtualThreadSupported()) {
+				asyncExecutor = ClientExecutors.newVirtualThreadExecutor();
+			} else {
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS, 60,
+						TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+							@Override
+							public Thread newThread(Runnable r) {
+								Thread thread = new Thread(r, "JNetwork-Async-I/O");
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+				// idle threads exit, so the bound only costs threads while they are busy
+				pool.allowCoreThreadTimeOut(true);
+				asyncExecutor = pool;
+			}
+		}
+		return asyncExecutor;
+	}
+
+	/**
+	 * Sets the <code>Executor</code> that runs the blocking I/O behind the
+	 * asynchronous methods of every connection. Connections that have
+	 * already used an asynchronous method keep the executor they started
+	 * with.
+	 * 
+	 * @param executor
+	 *            - The executor.
+	 */
+	public static synchronized void setAsyncExecutor(Executor executor) {
+		if (executor == null) {
+			throw new NullPointerException("executor");
+		}
+		asyncExecutor = executor;
+	}
+
+	/**
+	 * @return The codec used by {@link #writeMessage(Serializable)} and
+	 *         {@link #readMessage()}.
+	 */
+	public MessageCodec getMessageCodec() {
+		return codec;
+	}
+
+	/**
+	 * Sets the codec used by {@link #writeMessage(Serializable)} and
+	 * {@link #readMessage()}. Both ends of the connection must use the same
+	 * codec. By default, a {@link SerializationCodec} is used.
+	 * 
+	 * @param codec
+	 *            - The codec.
+	 */
+	public void setMessageCodec(MessageCodec codec) {
+		if (codec == null) {
+			throw new NullPointerException("codec");
+		}
+		this.codec = codec;
+	}
+
+	/**
+	 * Hands off any buffered data to the socket. See
+	 * {@link java.io.OutputStream#flush()}.
+	 * 
+	 * @throws IOException
+	 *             If an error occurs while writing the buffered data.
+	 */
+	public void flush() throws IOException {
+		getOutputStream().flush();
+	}
+
+	/**
+	 * Sets when data written to this connection is handed off to the socket.
+	 * 
+	 * @param policy
+	 *            - The policy.
+	 * @throws UnsupportedOperationException
+	 *             If this type of connection does not buffer writes.
+	 */
+	public void setFlushPolicy(FlushPolicy policy) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not buffer writes");
+	}
+
+	/**
+	 * @return When data written to this connection is handed off to the
+	 *         socket.
+	 */
+	public FlushPolicy getFlushPolicy() {
+		return FlushPolicy.IMMEDIATE;
+	}
+
+	/**
+	 * @return How many writes made to this connection were handed off to the
+	 *         socket, or all zeros if this type of connection does not buffer
+	 *         writes.
+	 */
+	public WriteStatistics getWriteStatistics() {
+		return new WriteStatistics(0, 0, 0);
+	}
+
 	/**
 	 * Closes the <code>Socket</code>.
 	 * 
@@ -136,11 +927,53 @@ public abstract class Connection implements Closeable {
 	 */
 	@Override
 	public void close() throws IOException {
+		FrameCompressor compressor = this.compressor;
+		if (compressor != null) {
+			compressor.end();
+		}
+
+		for (Runnable listener : closeListeners) {
+			if (closeListeners.remove(listener)) {
+				listener.run();
+			}
+		}
+
 		synchronized (closeWaiter) {
 			closeWaiter.notifyAll();
 		}
 	}
 
+	/**
+	 * Closes this connection without handing off any buffered data first, so
+	 * that it does not wait on a peer that has stopped reading.
+	 * 
+	 * @throws IOException
+	 *             If there is an error closing the connection.
+	 */
+	void abort() throws IOException {
+		close();
+	}
+
+	/**
+	 * Adds a listener to be run once when this connection is closed.
+	 * 
+	 * @param listener
+	 *            - The listener.
+	 */
+	void addCloseListener(Runnable listener) {
+		closeListeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener added with {@link #addCloseListener(Runnable)}.
+	 * 
+	 * @param listener
+	 *            - The listener.
+	 */
+	void removeCloseListener(Runnable listener) {
+		closeListeners.remove(listener);
+	}
+
 	/**
 	 * Returns the <code>Socket</code>'s remote socket address.
 	 */
@@ -163,6 +996,72 @@ public abstract class Connection implements Closeable {
 		}
 	}
 
+	/**
+	 * Records that data was just read from this connection. Subclasses that do
+	 * not read through a stream created by this library should call this
+	 * whenever they read data.
+	 * 
+	 * @param bytes
+	 *            - The number of bytes read.
+	 */
+	protected void markRead(int bytes) {
+		lastReadTime = System.nanoTime();
+		ServerMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.markRead(bytes);
+		}
+	}
+
+	/**
+	 * Records that data was just written to this connection. Subclasses that
+	 * do not write through a stream created by this library should call this
+	 * whenever they write data.
+	 * 
+	 * @param bytes
+	 *            - The number of bytes written.
+	 */
+	protected void markWritten(int bytes) {
+		lastWriteTime = System.nanoTime();
+		ServerMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.markWritten(bytes);
+		}
+	}
+
+	/**
+	 * Sets the metrics of the server this connection's client is connected
+	 * to, which count the bytes read and written through it.
+	 */
+	void setMetrics(ServerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return The {@link System#nanoTime()} at which data was last read from
+	 *         this connection, or at which it was created if nothing has been
+	 *         read.
+	 */
+	public long getLastReadTime() {
+		return lastReadTime;
+	}
+
+	/**
+	 * @return The {@link System#nanoTime()} at which data was last written to
+	 *         this connection, or at which it was created if nothing has been
+	 *         written.
+	 */
+	public long getLastWriteTime() {
+		return lastWriteTime;
+	}
+
+	/**
+	 * @return The {@link System#nanoTime()} at which data was last read from
+	 *         or written to this connection.
+	 */
+	public long getLastActivityTime() {
+		return Math.max(lastReadTime, lastWriteTime);
+	}
+
 	/**
 	 * @return The address of the host.
 	 */
@@ -1,5 +1,41 @@
 package org.jnetwork;
 
+/**
+ * Decides whether a server admits each new client, before the client is
+ * handed to the server's callback. A <code>TCPServer</code>,
+ * <code>SSLServer</code> or <code>NIOTCPServer</code> passes each accepted
+ * <code>Socket</code>, a <code>UnixServer</code> passes each accepted
+ * <code>SocketChannel</code>, and an <code>HTTPServer</code> passes each
+ * <code>HttpExchange</code>.
+ * 
+ * @see Server#setConnectionHandler(ConnectionHandler)
+ * @see AdmissionController
+ * 
+ * @author Lucas Baizer
+ */
 public interface ConnectionHandler<T> {
+	/**
+	 * This method gets called on for every new client.
+	 * 
+	 * @param server
+	 *            - The server the client connected to.
+	 * @param client
+	 *            - The client.
+	 * @return If the client should be admitted. A client that is not is
+	 *         closed, as is a socket or channel if this method throws.
+	 */
 	public boolean handle(Server server, T client);
+
+	/**
+	 * This method gets called on once a client admitted by
+	 * {@link #handle(Server, Object)} is done with the server: when a socket's
+	 * connection is closed, or when an HTTP exchange has been handled.
+	 * 
+	 * @param server
+	 *            - The server the client connected to.
+	 * @param client
+	 *            - The client.
+	 */
+	public default void release(Server server, T client) {
+	}
 }
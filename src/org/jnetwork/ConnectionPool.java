@@ -0,0 +1,493 @@
+package org.jnetwork;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Keeps client connections open so they can be reused, instead of opening a
+ * new socket, and for SSL running a new handshake, for every request.
+ * Connections are pooled separately for each host, port and
+ * {@link Protocol}.
+ *
+ * {@link #lease(String, int, Protocol)} hands out a {@link PooledConnection};
+ * closing it hands the connection back to the pool. Whatever state the
+ * connection was left in, such as its object streams, is kept for the next
+ * lease, so every user of a pool should talk to the server the same way.
+ *
+ * @author Lucas Baizer
+ */
+public class ConnectionPool implements Closeable {
+	private static ScheduledExecutorService evictor;
+
+	private final ConcurrentHashMap<Key, Pool> pools = new ConcurrentHashMap<>();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private volatile int minConnections = 0;
+	private volatile int maxConnections = 8;
+	private volatile long idleTimeout = TimeUnit.MINUTES.toNanos(1);
+	private volatile long leaseTimeout = TimeUnit.SECONDS.toNanos(30);
+	private volatile Predicate<Connection> healthCheck = new Predicate<Connection>() {
+		@Override
+		public boolean test(Connection connection) {
+			return !connection.isClosed();
+		}
+	};
+	private volatile boolean closed;
+	private ScheduledFuture<?> eviction;
+
+	private static synchronized ScheduledExecutorService getEvictor() {
+		if (evictor == null) {
+			evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "JNetwork-Pool-Evictor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return evictor;
+	}
+
+	static final class Key {
+		private final String host;
+		private final int port;
+		private final Protocol protocol;
+
+		Key(String host, int port, Protocol protocol) {
+			this.host = host;
+			this.port = port;
+			this.protocol = protocol;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return port == key.port && protocol == key.protocol && host.equals(key.host);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(host, port, protocol);
+		}
+
+		@Override
+		public String toString() {
+			return protocol + "://" + host + ":" + port;
+		}
+	}
+
+	private static final class IdleConnection {
+		private final Connection connection;
+		private final long idleSince = System.nanoTime();
+
+		IdleConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	/**
+	 * The connections to a single host, port and protocol.
+	 */
+	private final class Pool {
+		private final Key key;
+		private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+		private final Semaphore leases = new Semaphore(maxConnections, true);
+		private final AtomicInteger open = new AtomicInteger();
+
+		Pool(Key key) {
+			this.key = key;
+		}
+
+		int getLeased() {
+			return maxConnections - leases.availablePermits();
+		}
+
+		Connection create() throws UnknownHostException, IOException {
+			Connection connection = key.protocol.getNetworkFactory().createConnection(key.host, key.port);
+			open.incrementAndGet();
+			created.incrementAndGet();
+			return connection;
+		}
+
+		void discard(Connection connection) {
+			open.decrementAndGet();
+			try {
+				connection.close();
+			} catch (IOException e) {
+				// the connection is being thrown away anyway
+			}
+		}
+
+		/**
+		 * Opens connections until at least the minimum number are open.
+		 */
+		void fill() {
+			while (!closed && open.get() < minConnections) {
+				try {
+					idle.offerLast(new IdleConnection(create()));
+				} catch (IOException e) {
+					return;
+				}
+			}
+		}
+
+		void evict(long now) {
+			Iterator<IdleConnection> it = idle.descendingIterator();
+			while (it.hasNext()) {
+				IdleConnection candidate = it.next();
+				if (open.get() <= minConnections) {
+					break;
+				}
+				if (now - candidate.idleSince >= idleTimeout && idle.removeLastOccurrence(candidate)) {
+					discard(candidate.connection);
+				}
+			}
+			fill();
+		}
+	}
+
+	/**
+	 * Leases a connection to a host, reusing an idle one if there is one
+	 * that passes the health check, or opening a new one otherwise. If the
+	 * maximum number of connections to the host are already leased, this
+	 * blocks until one is handed back.
+	 *
+	 * @param host
+	 *            - The host to connect to.
+	 * @param port
+	 *            - The port to connect to.
+	 * @param protocol
+	 *            - The protocol to connect with.
+	 * @return The leased connection. Close it to hand it back to the pool.
+	 * @throws SocketTimeoutException
+	 *             If no connection could be leased within the lease timeout.
+	 * @throws UnknownHostException
+	 *             If the host does not exist.
+	 * @throws IOException
+	 *             If the pool is closed, or an error occurs while opening a
+	 *             new connection.
+	 */
+	public PooledConnection lease(String host, int port, Protocol protocol) throws UnknownHostException, IOException {
+		if (closed) {
+			throw new IOException("Connection pool closed");
+		}
+
+		Key key = new Key(host, port, protocol);
+		Pool pool = pools.get(key);
+		if (pool == null) {
+			Pool newPool = new Pool(key);
+			pool = pools.putIfAbsent(key, newPool);
+			if (pool == null) {
+				pool = newPool;
+				scheduleEviction(false);
+				pool.fill();
+			}
+		}
+
+		try {
+			if (!pool.leases.tryAcquire(leaseTimeout, TimeUnit.NANOSECONDS)) {
+				throw new SocketTimeoutException("Timed out waiting for a connection to " + key);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a connection to " + key);
+		}
+
+		try {
+			IdleConnection candidate;
+			while ((candidate = pool.idle.pollFirst()) != null) {
+				if (healthCheck.test(candidate.connection)) {
+					reused.incrementAndGet();
+					return new PooledConnection(this, key, candidate.connection);
+				}
+				pool.discard(candidate.connection);
+			}
+			return new PooledConnection(this, key, pool.create());
+		} catch (IOException | RuntimeException e) {
+			pool.leases.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Hands a connection back to its pool, or closes it.
+	 */
+	void release(Key key, Connection connection, boolean broken) {
+		Pool pool = pools.get(key);
+		if (pool == null) {
+			try {
+				connection.close();
+			} catch (IOException e) {
+				// the pool is closed, so the connection is no longer wanted
+			}
+			return;
+		}
+
+		try {
+			if (!broken && !closed && !connection.isClosed()) {
+				try {
+					connection.flush();
+					pool.idle.offerFirst(new IdleConnection(connection));
+					return;
+				} catch (IOException e) {
+					// a connection that cannot be flushed is not fit to reuse
+				}
+			}
+			pool.discard(connection);
+		} finally {
+			pool.leases.release();
+		}
+	}
+
+	/**
+	 * Starts evicting idle connections in the background, if a connection has
+	 * been leased.
+	 * 
+	 * @param reschedule
+	 *            - If eviction that has already started should be restarted,
+	 *            because the idle timeout changed.
+	 */
+	private synchronized void scheduleEviction(boolean reschedule) {
+		if (eviction != null) {
+			if (!reschedule) {
+				return;
+			}
+			eviction.cancel(false);
+			eviction = null;
+		}
+		if (closed || idleTimeout <= 0 || pools.isEmpty()) {
+			return;
+		}
+
+		long period = Math.max(idleTimeout / 2, TimeUnit.MILLISECONDS.toNanos(10));
+		eviction = getEvictor().scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				evictIdleConnections();
+			}
+		}, period, period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Closes every connection that has been idle for longer than the idle
+	 * timeout, while keeping the minimum number of connections to each host
+	 * open. This is done periodically in the background.
+	 */
+	public void evictIdleConnections() {
+		long now = System.nanoTime();
+		for (Pool pool : pools.values()) {
+			pool.evict(now);
+		}
+	}
+
+	/**
+	 * Closes every idle connection. Leased connections are closed when they
+	 * are handed back.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		synchronized (this) {
+			if (eviction != null) {
+				eviction.cancel(false);
+				eviction = null;
+			}
+		}
+
+		for (Pool pool : pools.values()) {
+			IdleConnection candidate;
+			while ((candidate = pool.idle.pollFirst()) != null) {
+				pool.discard(candidate.connection);
+			}
+		}
+	}
+
+	/**
+	 * @return If the pool has been closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return The number of connections to each host that are kept open,
+	 *         even when idle.
+	 */
+	public int getMinConnections() {
+		return minConnections;
+	}
+
+	/**
+	 * Sets the number of connections to each host that are kept open, even
+	 * when idle. They are opened on the first lease to the host.
+	 *
+	 * @param minConnections
+	 *            - The number of connections.
+	 * @throws IllegalStateException
+	 *             If a connection has already been leased.
+	 */
+	public void setMinConnections(int minConnections) {
+		checkUnused();
+		if (minConnections < 0 || minConnections > maxConnections) {
+			throw new IllegalArgumentException("The minimum must be between 0 and the maximum");
+		}
+		this.minConnections = minConnections;
+	}
+
+	/**
+	 * @return The largest number of connections to each host that can be
+	 *         leased at once.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Sets the largest number of connections to each host that can be leased
+	 * at once. By default, this is 8.
+	 *
+	 * @param maxConnections
+	 *            - The number of connections.
+	 * @throws IllegalStateException
+	 *             If a connection has already been leased.
+	 */
+	public void setMaxConnections(int maxConnections) {
+		checkUnused();
+		if (maxConnections < 1 || maxConnections < minConnections) {
+			throw new IllegalArgumentException("The maximum must be at least 1 and at least the minimum");
+		}
+		this.maxConnections = maxConnections;
+	}
+
+	private void checkUnused() {
+		if (!pools.isEmpty()) {
+			throw new IllegalStateException("Connection pool already in use");
+		}
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the timeout in.
+	 * @return How long a connection can be idle before it is closed.
+	 */
+	public long getIdleTimeout(TimeUnit unit) {
+		return unit.convert(idleTimeout, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Sets how long a connection can be idle before it is closed. By
+	 * default, this is one minute.
+	 *
+	 * @param timeout
+	 *            - The timeout, or <code>0</code> to never close idle
+	 *            connections.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 */
+	public void setIdleTimeout(long timeout, TimeUnit unit) {
+		this.idleTimeout = unit.toNanos(Math.max(timeout, 0));
+		scheduleEviction(true);
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the timeout in.
+	 * @return How long {@link #lease(String, int, Protocol)} waits for a
+	 *         connection to be handed back.
+	 */
+	public long getLeaseTimeout(TimeUnit unit) {
+		return unit.convert(leaseTimeout, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Sets how long {@link #lease(String, int, Protocol)} waits for a
+	 * connection to be handed back when the maximum number are leased. By
+	 * default, this is 30 seconds.
+	 *
+	 * @param timeout
+	 *            - The timeout.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 */
+	public void setLeaseTimeout(long timeout, TimeUnit unit) {
+		this.leaseTimeout = unit.toNanos(Math.max(timeout, 0));
+	}
+
+	/**
+	 * @return The check an idle connection must pass to be leased again.
+	 */
+	public Predicate<Connection> getHealthCheck() {
+		return healthCheck;
+	}
+
+	/**
+	 * Sets the check an idle connection must pass to be leased again.
+	 * Connections that fail it are closed. By default, a connection passes if
+	 * it is not closed.
+	 *
+	 * @param healthCheck
+	 *            - The check.
+	 */
+	public void setHealthCheck(Predicate<Connection> healthCheck) {
+		if (healthCheck == null) {
+			throw new NullPointerException("healthCheck");
+		}
+		this.healthCheck = healthCheck;
+	}
+
+	/**
+	 * @return The number of connections that are idle in the pool.
+	 */
+	public int getIdleConnections() {
+		int count = 0;
+		for (Pool pool : pools.values()) {
+			count += pool.idle.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return The number of connections that are leased.
+	 */
+	public int getLeasedConnections() {
+		int count = 0;
+		for (Pool pool : pools.values()) {
+			count += pool.getLeased();
+		}
+		return count;
+	}
+
+	/**
+	 * @return The number of connections the pool has opened.
+	 */
+	public long getCreatedConnections() {
+		return created.get();
+	}
+
+	/**
+	 * @return The number of leases that reused an idle connection instead of
+	 *         opening a new one.
+	 */
+	public long getReusedConnections() {
+		return reused.get();
+	}
+}
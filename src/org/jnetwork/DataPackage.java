@@ -1,10 +1,11 @@
 package org.jnetwork;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.math.BigInteger;
-import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Used to package {@link java.io.Serializable} objects together into a single
@@ -13,13 +14,22 @@ import java.util.Objects;
  * <code>DataPackage</code> object so the receiver can logically work with any
  * received <code>DataPackage</code> in a simple, easy-to-use manner.
  * 
+ * A <code>DataPackage</code> can be reused for many messages with
+ * {@link #recycle(Serializable...)}, so a tight loop does not have to create
+ * one for every message it sends.
+ * 
  * @author Lucas Baizer
  */
 public class DataPackage implements Serializable {
 	private static final long serialVersionUID = -4084673611320301450L;
 	private String message = null;
 	private Serializable[] objects;
-	private String id = new BigInteger(130, new SecureRandom()).toString(32);
+	private volatile String id;
+	private String correlationID;
+
+	private static final AtomicReferenceFieldUpdater<DataPackage, String> ID_UPDATER = AtomicReferenceFieldUpdater
+			.newUpdater(DataPackage.class, String.class, "id");
+	private static volatile IDGenerator idGenerator = IDGenerator.sequential();
 
 	/**
 	 * Constructs a new DataPackage with all the needed data.
@@ -31,6 +41,14 @@ public class DataPackage implements Serializable {
 		this.objects = objects;
 	}
 
+	/**
+	 * Recreates a decoded DataPackage with the ID it was sent with.
+	 */
+	DataPackage(String id, Serializable[] objects) {
+		this.objects = objects;
+		this.id = id;
+	}
+
 	/**
 	 * Adds a message to the <code>DataPackage</code> object to be saved in the
 	 * <b> <code>message</code></b> variable so a client or server can read what
@@ -74,19 +92,120 @@ public class DataPackage implements Serializable {
 	}
 
 	/**
-	 * @return A random alphanumeric ID created at the time of this
-	 *         DataPackage's instantiation.
+	 * Gets the ID of this DataPackage. The ID is created by the
+	 * {@link IDGenerator} the first time it is needed, which is at the latest
+	 * when the DataPackage is sent, and is kept from then on.
+	 * 
+	 * @return The ID.
 	 */
 	public String getID() {
+		String id = this.id;
+		if (id == null) {
+			ID_UPDATER.compareAndSet(this, null, idGenerator.nextID());
+			id = this.id;
+		}
 		return id;
 	}
 
+	/**
+	 * Gets the ID of the DataPackage this one is a reply to.
+	 * 
+	 * @return The correlation ID, or <code>null</code> if this DataPackage is
+	 *         not a reply.
+	 * 
+	 * @see MultiplexedConnection
+	 */
+	public String getCorrelationID() {
+		return correlationID;
+	}
+
+	/**
+	 * Marks this DataPackage as a reply to the DataPackage with the given ID.
+	 * 
+	 * @param correlationID
+	 *            - The ID of the DataPackage being replied to.
+	 * @return DataPackage - An instance of <code><b>this</b><code>.
+	 */
+	public DataPackage setCorrelationID(String correlationID) {
+		this.correlationID = correlationID;
+		return this;
+	}
+
+	/**
+	 * Creates a reply to this DataPackage, whose correlation ID is this
+	 * DataPackage's ID.
+	 * 
+	 * @param objects
+	 *            - The objects of the reply.
+	 * @return The reply.
+	 */
+	public DataPackage createReply(Serializable... objects) {
+		return new DataPackage(objects).setCorrelationID(getID());
+	}
+
+	/**
+	 * Clears this DataPackage so it can be sent again as a new message: the
+	 * message is removed, the objects are replaced, and a new ID will be
+	 * created the next time it is needed. Reusing a DataPackage this way
+	 * avoids creating one for every message sent in a tight loop.
+	 * 
+	 * Only recycle a DataPackage once it has been written. When sending
+	 * through the object streams of a {@link Connection}, the same object is
+	 * only written in full the first time; use
+	 * {@link Connection#writeMessage(Serializable)} or
+	 * {@link ObjectOutputStream#writeUnshared(Object)} instead.
+	 * 
+	 * @param objects
+	 *            - The new objects. If none are given, the existing array is
+	 *            kept, so its elements can be replaced through
+	 *            {@link #getObjects()}.
+	 * @return DataPackage - An instance of <code><b>this</b><code>.
+	 */
+	public DataPackage recycle(Serializable... objects) {
+		if (objects.length > 0) {
+			this.objects = objects;
+		}
+		this.message = null;
+		this.id = null;
+		this.correlationID = null;
+		return this;
+	}
+
+	/**
+	 * Sets the generator that creates the IDs of DataPackages. By default,
+	 * {@link IDGenerator#sequential()} is used.
+	 * 
+	 * @param generator
+	 *            - The generator.
+	 */
+	public static void setIDGenerator(IDGenerator generator) {
+		if (generator == null) {
+			throw new NullPointerException("generator");
+		}
+		idGenerator = generator;
+	}
+
+	/**
+	 * @return The generator that creates the IDs of DataPackages.
+	 */
+	public static IDGenerator getIDGenerator() {
+		return idGenerator;
+	}
+
+	/**
+	 * Makes sure the ID exists before it is serialized.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		getID();
+		out.defaultWriteObject();
+	}
+
 	/**
 	 * Gets a String representation of the class in the form of the message.
 	 */
 	@Override
 	public String toString() {
-		return "DataPackage:[message=" + message + ",id=" + id + ",objects=" + Arrays.asList(objects) + "]";
+		return "DataPackage:[message=" + message + ",id=" + getID() + ",objects=" + Arrays.asList(objects) + "]";
 	}
 
 	/**
@@ -0,0 +1,39 @@
+package org.jnetwork;
+
+/**
+ * An enumeration of the reasons a client can be removed from a
+ * {@link Server}, available from {@link ClientData#getDisconnectReason()} once
+ * the client's {@link ClientDisconnectionCallback}s are called.
+ * 
+ * @author Lucas Baizer
+ */
+public enum DisconnectReason {
+	/**
+	 * The client's connection was closed, or its callback finished.
+	 */
+	CLOSED,
+	/**
+	 * The client was removed with {@link Server#removeClient(ClientData)}.
+	 */
+	REMOVED,
+	/**
+	 * Nothing was read from or written to the client within the server's idle
+	 * timeout.
+	 */
+	IDLE_TIMEOUT,
+	/**
+	 * Nothing was read from the client within the server's read timeout.
+	 */
+	READ_TIMEOUT,
+	/**
+	 * More data was queued for the client than its {@link OutboundQueue}
+	 * allows, and the queue's {@link OverflowPolicy} is
+	 * {@link OverflowPolicy#DISCONNECT}.
+	 */
+	OUTBOUND_OVERFLOW,
+	/**
+	 * The server was shut down with {@link Server#shutdown(long,
+	 * java.util.concurrent.TimeUnit)} while the client was still connected.
+	 */
+	SHUTDOWN;
+}
@@ -0,0 +1,229 @@
+package org.jnetwork;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single thread that runs tasks one at a time, in the order they were
+ * submitted. Every client of a server with an {@link EventLoopGroup} is
+ * pinned to one loop for as long as it is connected, available from
+ * {@link ClientData#getEventLoop()}, so state touched only from tasks on that
+ * loop never crosses threads and needs no locking.
+ *
+ * A task that blocks holds up every other client on the same loop, so tasks
+ * should hand blocking work, such as writing to a slow client, to
+ * {@link OutboundQueue} or another thread.
+ *
+ * The loop's thread is a daemon thread, so it does not keep the JVM running.
+ * Shut its group down with {@link EventLoopGroup#shutdown(long, TimeUnit)} to
+ * let the tasks already submitted finish first.
+ *
+ * @see EventLoopGroup
+ *
+ * @author Lucas Baizer
+ */
+public final class EventLoop implements Executor {
+	private static final Runnable STOP = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	private static final class Task {
+		private final Runnable runnable;
+		private final long submitted;
+
+		private Task(Runnable runnable, long submitted) {
+			this.runnable = runnable;
+			this.submitted = submitted;
+		}
+	}
+
+	private final int index;
+	private final Thread thread;
+	private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+	private final LongAdder completedTasks = new LongAdder();
+	private final LongAdder failedTasks = new LongAdder();
+	private final LongAdder busyNanos = new LongAdder();
+	private final LatencyHistogram queueLatency = new LatencyHistogram();
+	private final AtomicInteger clients = new AtomicInteger();
+	private final long startTime = System.nanoTime();
+	// keeps a task from being queued after the STOP task
+	private final Object shutdownLock = new Object();
+	private volatile boolean shutdown;
+
+	EventLoop(String name, int index) {
+		this.index = index;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	private void loop() {
+		while (true) {
+			Task task;
+			try {
+				task = tasks.take();
+			} catch (InterruptedException e) {
+				// only stopped by the STOP task, so every queued task still runs
+				continue;
+			}
+			if (task.runnable == STOP) {
+				return;
+			}
+
+			long start = System.nanoTime();
+			queueLatency.record(start - task.submitted);
+			try {
+				task.runnable.run();
+			} catch (Throwable e) {
+				failedTasks.increment();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			} finally {
+				busyNanos.add(System.nanoTime() - start);
+				completedTasks.increment();
+				// don't leak an interrupt into the next task
+				Thread.interrupted();
+			}
+		}
+	}
+
+	/**
+	 * Runs a task on this loop.
+	 *
+	 * @param command
+	 *            - The task.
+	 * @throws RejectedExecutionException
+	 *             If the loop has been shut down.
+	 */
+	@Override
+	public void execute(Runnable command) {
+		if (command == null) {
+			throw new NullPointerException("command");
+		}
+		synchronized (shutdownLock) {
+			if (shutdown) {
+				throw new RejectedExecutionException("Event loop has been shut down");
+			}
+			tasks.add(new Task(command, System.nanoTime()));
+		}
+	}
+
+	/**
+	 * @return If the calling thread is this loop's thread.
+	 */
+	public boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Stops accepting tasks, and stops the thread once every task already
+	 * submitted has run.
+	 */
+	void shutdown() {
+		synchronized (shutdownLock) {
+			if (!shutdown) {
+				shutdown = true;
+				tasks.add(new Task(STOP, System.nanoTime()));
+			}
+		}
+	}
+
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		thread.join(Math.max(unit.toMillis(timeout), 1));
+		return !thread.isAlive();
+	}
+
+	void clientAdded() {
+		clients.incrementAndGet();
+	}
+
+	void clientRemoved() {
+		clients.decrementAndGet();
+	}
+
+	/**
+	 * @return The index of this loop in its group.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return The number of connected clients pinned to this loop.
+	 */
+	public int getClientCount() {
+		return clients.get();
+	}
+
+	/**
+	 * @return The number of tasks waiting to run.
+	 */
+	public int getPendingTasks() {
+		return tasks.size();
+	}
+
+	/**
+	 * @return The number of tasks that have run, including those that threw.
+	 */
+	public long getCompletedTasks() {
+		return completedTasks.sum();
+	}
+
+	/**
+	 * @return The number of tasks that threw.
+	 */
+	public long getFailedTasks() {
+		return failedTasks.sum();
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the time in.
+	 * @return The total time spent running tasks.
+	 */
+	public long getBusyTime(TimeUnit unit) {
+		return unit.convert(busyNanos.sum(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return The fraction of time since the loop started that it spent
+	 *         running tasks, from <code>0</code> to <code>1</code>. A loop near
+	 *         <code>1</code> is saturated.
+	 */
+	public double getUtilization() {
+		long elapsed = System.nanoTime() - startTime;
+		return elapsed <= 0 ? 0 : Math.min((double) busyNanos.sum() / elapsed, 1);
+	}
+
+	/**
+	 * @return How long tasks waited between being submitted and starting to
+	 *         run.
+	 */
+	public LatencyHistogram getQueueLatency() {
+		return queueLatency;
+	}
+
+	/**
+	 * @return If the loop has been shut down.
+	 */
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public String toString() {
+		return "EventLoop:[index=" + index + ",clients=" + getClientCount() + ",pendingTasks=" + getPendingTasks()
+				+ ",completedTasks=" + getCompletedTasks() + ",utilization=" + getUtilization() + "]";
+	}
+}
@@ -0,0 +1,140 @@
+package org.jnetwork;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of {@link EventLoop}s that the clients of a server are spread
+ * across. Give a group to a server with
+ * {@link Server#setEventLoopGroup(EventLoopGroup)}, and each client it
+ * accepts is pinned to one of the loops, in turn, for as long as it is
+ * connected. A datagram server pins each remote address instead, so every
+ * datagram from the same address is handled on the same loop. Stream servers
+ * do not run their callbacks on the loops; see
+ * {@link Server#setEventLoopGroup(EventLoopGroup)}.
+ *
+ * One group can be shared by several servers. Closing a server does not close
+ * its group. The loops run on daemon threads, so an open group does not keep
+ * the JVM running.
+ *
+ * @author Lucas Baizer
+ */
+public final class EventLoopGroup implements Closeable {
+	private static final AtomicInteger GROUP_IDS = new AtomicInteger();
+
+	private final EventLoop[] loops;
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Creates a group with one loop for each available processor.
+	 */
+	public EventLoopGroup() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a group with the given number of loops.
+	 *
+	 * @param loopCount
+	 *            - The number of loops.
+	 * @throws IllegalArgumentException
+	 *             If <code>loopCount</code> is less than 1.
+	 */
+	public EventLoopGroup(int loopCount) {
+		if (loopCount < 1) {
+			throw new IllegalArgumentException("There must be at least one event loop");
+		}
+
+		int id = GROUP_IDS.incrementAndGet();
+		loops = new EventLoop[loopCount];
+		for (int i = 0; i < loopCount; i++) {
+			loops[i] = new EventLoop("JNetwork-EventLoop-" + id + "-" + i, i);
+		}
+	}
+
+	/**
+	 * @return The next loop, in turn.
+	 */
+	public EventLoop next() {
+		return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+	}
+
+	/**
+	 * Gets the loop a key is pinned to. The same key always gives the same
+	 * loop.
+	 *
+	 * @param key
+	 *            - The key, such as a client's address.
+	 * @return The loop.
+	 */
+	public EventLoop loopFor(Object key) {
+		// spread the hash so keys that differ only in their high bits still differ
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return loops[Math.floorMod(hash, loops.length)];
+	}
+
+	/**
+	 * @return Every loop in the group.
+	 */
+	public EventLoop[] getLoops() {
+		return loops.clone();
+	}
+
+	/**
+	 * @return The number of loops in the group.
+	 */
+	public int getLoopCount() {
+		return loops.length;
+	}
+
+	/**
+	 * Stops the loops once every task already submitted to them has run, and
+	 * waits for them to finish.
+	 *
+	 * @param timeout
+	 *            - The most time to wait.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 * @return If every loop finished in time.
+	 * @throws InterruptedException
+	 *             If the thread is interrupted while waiting.
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		for (EventLoop loop : loops) {
+			loop.shutdown();
+		}
+
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (EventLoop loop : loops) {
+			if (!loop.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the loops once every task already submitted to them has run,
+	 * without waiting for them.
+	 */
+	@Override
+	public void close() {
+		for (EventLoop loop : loops) {
+			loop.shutdown();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("EventLoopGroup:[");
+		for (int i = 0; i < loops.length; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append(loops[i]);
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -3,7 +3,8 @@ package org.jnetwork;
 import java.io.Serializable;
 
 /**
- * A class used to represent the contents of a file.
+ * A class used to represent the contents of a file. The whole file is held in
+ * memory; use a {@link ChunkedTransfer} to send large files.
  * 
  * @author Lucas Baizer
  */
@@ -0,0 +1,109 @@
+package org.jnetwork;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when data written to a {@link Connection} is handed off to the
+ * socket. Writing every small write straight to the socket costs a system
+ * call, and usually a TCP segment, each; buffering writes and flushing them
+ * together trades a little latency for throughput.
+ * 
+ * This class is immutable.
+ * 
+ * @see Connection#setFlushPolicy(FlushPolicy)
+ * 
+ * @author Lucas Baizer
+ */
+public final class FlushPolicy {
+	/**
+	 * Every write is handed off to the socket straight away. This is the
+	 * default.
+	 */
+	public static final FlushPolicy IMMEDIATE = new FlushPolicy(0, 0);
+
+	/**
+	 * Writes are buffered until {@link Connection#flush()} is called, or the
+	 * buffer is full.
+	 */
+	public static final FlushPolicy EXPLICIT = new FlushPolicy(Integer.MAX_VALUE, 0);
+
+	private final int threshold;
+	private final long interval;
+
+	private FlushPolicy(int threshold, long interval) {
+		this.threshold = threshold;
+		this.interval = interval;
+	}
+
+	/**
+	 * Creates a policy that buffers writes until at least <code>bytes</code>
+	 * bytes are buffered, or {@link Connection#flush()} is called.
+	 * 
+	 * @param bytes
+	 *            - The number of buffered bytes that causes a flush.
+	 * @return The policy.
+	 */
+	public static FlushPolicy sizeThreshold(int bytes) {
+		if (bytes < 1) {
+			throw new IllegalArgumentException("The threshold must be at least 1 byte");
+		}
+		return new FlushPolicy(bytes, 0);
+	}
+
+	/**
+	 * Creates a policy that buffers writes for at most <code>interval</code>
+	 * after the first buffered write, then flushes everything written in the
+	 * meantime as one batch. The buffer is also flushed when it is full, or
+	 * when {@link Connection#flush()} is called.
+	 * 
+	 * @param interval
+	 *            - The longest time a write is buffered for.
+	 * @param unit
+	 *            - The unit of <code>interval</code>.
+	 * @return The policy.
+	 */
+	public static FlushPolicy interval(long interval, TimeUnit unit) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("The interval must be positive");
+		}
+		return new FlushPolicy(Integer.MAX_VALUE, unit.toNanos(interval));
+	}
+
+	/**
+	 * @return The number of buffered bytes that causes a flush,
+	 *         <code>0</code> if writes are not buffered, or
+	 *         {@link Integer#MAX_VALUE} if only a full buffer causes a flush.
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the interval in.
+	 * @return The longest time a write is buffered for, or <code>0</code> if
+	 *         writes are not flushed on a timer.
+	 */
+	public long getInterval(TimeUnit unit) {
+		return unit.convert(interval, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return If writes are buffered at all.
+	 */
+	public boolean isBuffered() {
+		return threshold > 0;
+	}
+
+	@Override
+	public String toString() {
+		if (threshold == 0) {
+			return "FlushPolicy:[immediate]";
+		} else if (interval > 0) {
+			return "FlushPolicy:[interval=" + interval + "ns]";
+		} else if (threshold == Integer.MAX_VALUE) {
+			return "FlushPolicy:[explicit]";
+		}
+		return "FlushPolicy:[threshold=" + threshold + "]";
+	}
+}
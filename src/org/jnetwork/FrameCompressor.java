@@ -0,0 +1,165 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the frames of one {@link Connection}. Each frame is compressed on
+ * its own, so frames can be read independently of each other, but the native
+ * <code>Deflater</code> and <code>Inflater</code> are reset and reused rather
+ * than created for every frame.
+ *
+ * Every frame starts with a flag byte: {@link #RAW} if the rest of the frame
+ * is sent as-is, or {@link #DEFLATED} if it is followed by the 4-byte length of
+ * the original frame and its compressed contents.
+ *
+ * @author Lucas Baizer
+ */
+class FrameCompressor {
+	static final byte RAW = 0;
+	static final byte DEFLATED = 1;
+
+	private final Deflater deflater;
+	private final Inflater inflater = new Inflater();
+	private final int threshold;
+	private byte[] deflateBuffer = new byte[0];
+	private boolean ended;
+
+	private long rawFrames;
+	private long compressedFrames;
+	private long bytesWritten;
+	private long compressedBytesWritten;
+	private long bytesRead;
+	private long compressedBytesRead;
+
+	FrameCompressor(int level, int threshold) {
+		this.deflater = new Deflater(level);
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @return The frame to write in place of <code>frame</code>.
+	 */
+	ByteBuffer compress(ByteBuffer frame) throws IOException {
+		int length = frame.remaining();
+		if (length >= threshold && length > 5) {
+			synchronized (deflater) {
+				checkEnded();
+				if (deflateBuffer.length < 5 + length) {
+					deflateBuffer = new byte[5 + length];
+				}
+
+				deflater.reset();
+				deflater.setInput(frame.duplicate());
+				deflater.finish();
+				// anything that does not fit in the original length is not worth sending compressed
+				int compressed = deflater.deflate(deflateBuffer, 5, length - 5);
+				if (deflater.finished()) {
+					deflateBuffer[0] = DEFLATED;
+					ByteBuffer.wrap(deflateBuffer, 1, 4).putInt(length);
+					compressedFrames++;
+					bytesWritten += length;
+					compressedBytesWritten += 5 + compressed;
+					return ByteBuffer.wrap(Arrays.copyOf(deflateBuffer, 5 + compressed));
+				}
+			}
+		}
+
+		ByteBuffer raw = ByteBuffer.allocate(1 + length);
+		raw.put(RAW).put(frame.duplicate()).flip();
+		synchronized (deflater) {
+			rawFrames++;
+			bytesWritten += length;
+			compressedBytesWritten += 1 + length;
+		}
+		return raw;
+	}
+
+	/**
+	 * @return The original contents of a frame written with
+	 *         {@link #compress(ByteBuffer)}.
+	 * @throws ProtocolException
+	 *             If the frame is malformed, or its original contents are
+	 *             longer than <code>maxLength</code>.
+	 */
+	ByteBuffer decompress(ByteBuffer frame, int maxLength) throws IOException {
+		int wireLength = frame.remaining();
+		if (wireLength < 1) {
+			throw new ProtocolException("Compressed frame is missing its flag");
+		}
+
+		byte flag = frame.get();
+		if (flag == RAW) {
+			if (wireLength - 1 > maxLength) {
+				throw new ProtocolException(
+						"Frame length " + (wireLength - 1) + " is not between 0 and the maximum of " + maxLength);
+			}
+			synchronized (inflater) {
+				bytesRead += wireLength - 1;
+				compressedBytesRead += wireLength;
+			}
+			return frame;
+		} else if (flag != DEFLATED || frame.remaining() < 4) {
+			throw new ProtocolException("Malformed compressed frame");
+		}
+
+		int length = frame.getInt();
+		if (length < 0 || length > maxLength) {
+			throw new ProtocolException(
+					"Frame length " + length + " is not between 0 and the maximum of " + maxLength);
+		}
+
+		byte[] bytes = new byte[length];
+		synchronized (inflater) {
+			checkEnded();
+			inflater.reset();
+			inflater.setInput(frame);
+			try {
+				// the whole frame is given as input, so a single call inflates all of it
+				int inflated = inflater.inflate(bytes, 0, length);
+				if (inflated != length || !inflater.finished()) {
+					throw new ProtocolException("Compressed frame does not match its length of " + length);
+				}
+			} catch (DataFormatException e) {
+				throw new ProtocolException("Compressed frame is corrupt: " + e.getMessage());
+			}
+
+			bytesRead += length;
+			compressedBytesRead += wireLength;
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+
+	CompressionStatistics getStatistics() {
+		synchronized (deflater) {
+			synchronized (inflater) {
+				return new CompressionStatistics(compressedFrames, rawFrames, bytesWritten, compressedBytesWritten,
+						bytesRead, compressedBytesRead);
+			}
+		}
+	}
+
+	/**
+	 * Frees the native memory held by this compressor.
+	 */
+	void end() {
+		synchronized (deflater) {
+			synchronized (inflater) {
+				ended = true;
+				deflater.end();
+				inflater.end();
+			}
+		}
+	}
+
+	private void checkEnded() throws IOException {
+		if (ended) {
+			throw new IOException("Connection has been closed");
+		}
+	}
+}
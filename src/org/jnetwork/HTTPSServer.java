@@ -25,7 +25,6 @@ public class HTTPSServer extends HTTPServer {
 	public HTTPSServer(int port, Keystore keystore) {
 		super(port);
 
-		SSLServer.ensureProvider();
 		SSLServer.setStaticKeystore(keystore);
 		this.keystore = keystore;
 	}
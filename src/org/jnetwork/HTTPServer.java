@@ -6,12 +6,14 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
 public class HTTPServer extends TCPServer {
 	protected HttpServer server;
+	private boolean stopped;
 
 	public HTTPServer() {
 		this(80);
@@ -27,6 +29,7 @@ public class HTTPServer extends TCPServer {
 				: new InetSocketAddress(boundAddress, getBoundPort()), capacity == -1 ? 0 : capacity);
 		server.setExecutor(null);
 		server.start();
+		registerMetrics();
 	}
 
 	public HTTPServer get(String uri, HTTPConnectionCallback back) throws ServerException {
@@ -37,10 +40,14 @@ public class HTTPServer extends TCPServer {
 		server.createContext(uri, (http) -> {
 			if (connectionHandler != null
 					&& !((ConnectionHandler<HttpExchange>) connectionHandler).handle(this, http)) {
+				getMetrics().markRejected();
 				http.close();
 				return;
 			}
+			getMetrics().markAccepted();
 
+			long start = System.nanoTime();
+			beginTask();
 			try {
 				HTTPRequest req = new HTTPRequest(http);
 				HTTPResponse res = new HTTPResponse(http);
@@ -52,6 +59,10 @@ public class HTTPServer extends TCPServer {
 					exceptionCallback.exceptionThrown(e);
 				}
 				return;
+			} finally {
+				endTask();
+				getMetrics().getHandlerLatency().recordSince(start);
+				release(http);
 			}
 		});
 		return this;
@@ -159,7 +170,36 @@ public class HTTPServer extends TCPServer {
 		// this doesn't matter
 	}
 
+	/**
+	 * Stops accepting requests, and waits for the requests being handled to
+	 * finish. The underlying <code>HttpServer</code> only waits in whole
+	 * seconds, so the timeout is rounded up to the next second.
+	 */
+	@Override
+	public boolean shutdown(long timeout, TimeUnit unit) throws IOException {
+		synchronized (this) {
+			if (shuttingDown || closed) {
+				return false;
+			}
+			shuttingDown = true;
+		}
+
+		stopServer((int) ((unit.toMillis(Math.max(timeout, 0)) + 999) / 1000));
+		boolean drained = getActiveTaskCount() == 0;
+		close();
+		return drained;
+	}
+
+	private synchronized void stopServer(int delay) {
+		if (server != null && !stopped) {
+			stopped = true;
+			server.stop(delay);
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
+		stopServer(0);
+		super.close();
 	}
 }
@@ -0,0 +1,195 @@
+package org.jnetwork;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timer that tracks a large number of deadlines cheaply. Deadlines are
+ * hashed into a fixed ring of buckets by the tick they expire on, so
+ * scheduling and cancelling are constant-time, and each tick only looks at
+ * the deadlines in one bucket. Tasks run on the wheel's own thread, in the
+ * order they expire, with a precision of one tick.
+ *
+ * @author Lucas Baizer
+ */
+final class HashedTimingWheel {
+	/**
+	 * A task scheduled on a {@link HashedTimingWheel}.
+	 */
+	static final class Timeout {
+		private final Runnable task;
+		private final long deadline;
+		private long remainingRounds;
+		private volatile boolean cancelled;
+		private Timeout next;
+		private Timeout prev;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the task, if it has not already run.
+		 */
+		void cancel() {
+			cancelled = true;
+		}
+
+		boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			return next;
+		}
+	}
+
+	private final Bucket[] wheel;
+	private final int mask;
+	private final long tickDuration;
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+	private final Thread worker;
+	private final long startTime;
+	private long tick;
+	private volatile boolean stopped;
+
+	/**
+	 * Creates and starts a new timing wheel.
+	 *
+	 * @param name
+	 *            - The name of the wheel's thread.
+	 * @param tickDuration
+	 *            - The duration of a single tick.
+	 * @param unit
+	 *            - The unit of <code>tickDuration</code>.
+	 * @param ticksPerWheel
+	 *            - The number of buckets, rounded up to a power of two.
+	 */
+	HashedTimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		int size = Integer.highestOneBit(Math.max(ticksPerWheel, 1) - 1) << 1;
+		this.wheel = new Bucket[Math.max(size, 1)];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = wheel.length - 1;
+		this.tickDuration = Math.max(unit.toNanos(tickDuration), 1);
+		this.startTime = System.nanoTime();
+
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		}, name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Schedules a task to run after a delay.
+	 *
+	 * @param task
+	 *            - The task to run.
+	 * @param delay
+	 *            - The delay.
+	 * @param unit
+	 *            - The unit of <code>delay</code>.
+	 * @return The scheduled <code>Timeout</code>, which can be cancelled.
+	 */
+	Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(delay, 0)));
+		pending.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stops the wheel. Tasks that have not yet run never will.
+	 */
+	void stop() {
+		stopped = true;
+		LockSupport.unpark(worker);
+	}
+
+	private void work() {
+		while (!stopped) {
+			long deadline = startTime + (tick + 1) * tickDuration;
+			long now;
+			while ((now = System.nanoTime()) < deadline && !stopped) {
+				LockSupport.parkNanos(this, deadline - now);
+			}
+			if (stopped) {
+				return;
+			}
+
+			transferPending();
+			expire(wheel[(int) (tick & mask)]);
+			tick++;
+		}
+	}
+
+	private void transferPending() {
+		Timeout timeout;
+		while ((timeout = pending.poll()) != null) {
+			if (timeout.cancelled) {
+				continue;
+			}
+
+			long expiryTick = Math.max((timeout.deadline - startTime) / tickDuration, tick);
+			timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+			wheel[(int) (expiryTick & mask)].add(timeout);
+		}
+	}
+
+	private void expire(Bucket bucket) {
+		Timeout timeout = bucket.head;
+		while (timeout != null) {
+			if (timeout.cancelled) {
+				timeout = bucket.remove(timeout);
+			} else if (timeout.remainingRounds <= 0) {
+				Timeout next = bucket.remove(timeout);
+				try {
+					timeout.task.run();
+				} catch (Throwable e) {
+					Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+				}
+				timeout = next;
+			} else {
+				timeout.remainingRounds--;
+				timeout = timeout.next;
+			}
+		}
+	}
+}
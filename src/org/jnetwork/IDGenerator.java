@@ -0,0 +1,72 @@
+package org.jnetwork;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the IDs given to each {@link DataPackage}. Implementations must be
+ * thread-safe.
+ *
+ * @see DataPackage#setIDGenerator(IDGenerator)
+ *
+ * @author Lucas Baizer
+ */
+public interface IDGenerator {
+	/**
+	 * @return A new ID, different from every other ID this generator has
+	 *         returned.
+	 */
+	public String nextID();
+
+	/**
+	 * Creates a generator that gives out a random node prefix, picked once,
+	 * followed by a counter. Creating an ID only increments the counter, so
+	 * it never blocks and creates almost no garbage. IDs are unique within the
+	 * process, and the 64-bit node prefix makes collisions between processes
+	 * unlikely. This is the default generator.
+	 *
+	 * @return The generator.
+	 */
+	public static IDGenerator sequential() {
+		return sequential(ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Creates a generator that gives out a fixed node prefix followed by a
+	 * counter. Give each process its own node to make IDs unique across them.
+	 *
+	 * @param node
+	 *            - The node prefix.
+	 * @return The generator.
+	 */
+	public static IDGenerator sequential(long node) {
+		final String prefix = Long.toUnsignedString(node, 32) + '-';
+		final AtomicLong counter = new AtomicLong();
+		return new IDGenerator() {
+			@Override
+			public String nextID() {
+				return prefix.concat(Long.toUnsignedString(counter.incrementAndGet(), 32));
+			}
+		};
+	}
+
+	/**
+	 * Creates a generator that gives out random 130-bit IDs, as every
+	 * <code>DataPackage</code> used to have. The IDs cannot be guessed, but
+	 * each one costs a <code>BigInteger</code> and may block while the
+	 * <code>SecureRandom</code> waits for entropy.
+	 *
+	 * @return The generator.
+	 */
+	public static IDGenerator secureRandom() {
+		final SecureRandom random = new SecureRandom();
+		return new IDGenerator() {
+			@Override
+			public String nextID() {
+				return new BigInteger(130, random).toString(32);
+			}
+		};
+	}
+}
@@ -0,0 +1,190 @@
+package org.jnetwork;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies that can be recorded from any number of threads
+ * without locking. Values are counted in log-linear buckets: each power of two
+ * is split into 16 buckets, so every percentile is reported to within 1/16th
+ * (about 6%) of the true value, while the whole histogram stays under 8 KiB.
+ *
+ * @author Lucas Baizer
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1);
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos
+	 *            - The latency, in nanoseconds. Negative values are recorded
+	 *            as <code>0</code>.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// another thread raised the maximum first, so try again
+		}
+	}
+
+	/**
+	 * Records the time elapsed since a {@link System#nanoTime()}.
+	 *
+	 * @param startNanos
+	 *            - The time the measured operation started.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records a latency measured by a caller that waits for each operation
+	 * before starting the next, correcting for coordinated omission. While one
+	 * operation stalls, the operations that should have started every
+	 * <code>expectedIntervalNanos</code> behind it are never sent, so their
+	 * waits would otherwise go unrecorded. This records them as well, with
+	 * latencies falling from <code>nanos</code> by the interval down to the
+	 * interval itself.
+	 *
+	 * @param nanos
+	 *            - The latency, in nanoseconds.
+	 * @param expectedIntervalNanos
+	 *            - The time between operations the caller means to keep, in
+	 *            nanoseconds, or <code>0</code> to record <code>nanos</code>
+	 *            alone.
+	 */
+	public void recordCorrected(long nanos, long expectedIntervalNanos) {
+		record(nanos);
+		if (expectedIntervalNanos <= 0) {
+			return;
+		}
+
+		for (long missing = nanos - expectedIntervalNanos; missing >= expectedIntervalNanos;
+				missing -= expectedIntervalNanos) {
+			record(missing);
+		}
+	}
+
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+	}
+
+	/**
+	 * @return The largest value counted in a bucket.
+	 */
+	private static long highestValueOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * @return The number of latencies recorded.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the latency in.
+	 * @return The largest latency recorded.
+	 */
+	public double getMax(TimeUnit unit) {
+		return toUnit(max.get(), unit);
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the latency in.
+	 * @return The mean of the latencies recorded, or <code>0</code> if none
+	 *         have been.
+	 */
+	public double getMean(TimeUnit unit) {
+		long n = count.sum();
+		return n == 0 ? 0 : toUnit(sum.sum(), unit) / n;
+	}
+
+	/**
+	 * Gets the latency that the given percentage of recorded latencies are at
+	 * or below, such as <code>99.9</code> for the 99.9th percentile.
+	 *
+	 * @param percentile
+	 *            - The percentile, from <code>0</code> to <code>100</code>.
+	 * @param unit
+	 *            - The unit to return the latency in.
+	 * @return The latency, or <code>0</code> if none have been recorded.
+	 */
+	public double getPercentile(double percentile, TimeUnit unit) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("The percentile must be between 0 and 100");
+		}
+
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max((long) Math.ceil(total * percentile / 100), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= target) {
+				return toUnit(Math.min(highestValueOf(i), max.get()), unit);
+			}
+		}
+		return toUnit(max.get(), unit);
+	}
+
+	/**
+	 * Clears every recorded latency. Latencies recorded while this runs may or
+	 * may not be kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	private static double toUnit(long nanos, TimeUnit unit) {
+		return (double) nanos / unit.toNanos(1);
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram:[count=" + getCount() + ",meanMicros=" + getMean(TimeUnit.MICROSECONDS)
+				+ ",p50Micros=" + getPercentile(50, TimeUnit.MICROSECONDS) + ",p99Micros="
+				+ getPercentile(99, TimeUnit.MICROSECONDS) + ",maxMicros=" + getMax(TimeUnit.MICROSECONDS) + "]";
+	}
+}
@@ -0,0 +1,44 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Turns objects into bytes and back, so they can be sent as frames with
+ * {@link Connection#writeMessage(Serializable)} or as datagrams with
+ * {@link UDPUtils}. Both ends of a connection must use the same codec.
+ * Implementations must be thread-safe.
+ *
+ * @see SerializationCodec
+ * @see CompactCodec
+ *
+ * @author Lucas Baizer
+ */
+public interface MessageCodec {
+	/**
+	 * Encodes an object.
+	 *
+	 * @param obj
+	 *            - The object to encode.
+	 * @return A buffer holding the encoded object, from its position to its
+	 *         limit.
+	 * @throws IOException
+	 *             If the object cannot be encoded.
+	 */
+	public ByteBuffer encode(Serializable obj) throws IOException;
+
+	/**
+	 * Decodes an object encoded with {@link #encode(Serializable)}.
+	 *
+	 * @param data
+	 *            - The encoded object, from the buffer's position to its
+	 *            limit.
+	 * @return The decoded object.
+	 * @throws IOException
+	 *             If the data is not a valid encoding.
+	 * @throws ClassNotFoundException
+	 *             If the class of an encoded object cannot be found.
+	 */
+	public Serializable decode(ByteBuffer data) throws IOException, ClassNotFoundException;
+}
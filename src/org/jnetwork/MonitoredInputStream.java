@@ -0,0 +1,39 @@
+package org.jnetwork;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An <code>InputStream</code> that records on its <code>Connection</code> when
+ * data was last read.
+ *
+ * @author Lucas Baizer
+ */
+class MonitoredInputStream extends FilterInputStream {
+	private final Connection connection;
+
+	MonitoredInputStream(InputStream in, Connection connection) {
+		super(in);
+
+		this.connection = connection;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b != -1) {
+			connection.markRead(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = in.read(b, off, len);
+		if (read > 0) {
+			connection.markRead(read);
+		}
+		return read;
+	}
+}
@@ -0,0 +1,33 @@
+package org.jnetwork;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An <code>OutputStream</code> that records on its <code>Connection</code> when
+ * data was last written.
+ *
+ * @author Lucas Baizer
+ */
+class MonitoredOutputStream extends FilterOutputStream {
+	private final Connection connection;
+
+	MonitoredOutputStream(OutputStream out, Connection connection) {
+		super(out);
+
+		this.connection = connection;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		connection.markWritten(1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		connection.markWritten(len);
+	}
+}
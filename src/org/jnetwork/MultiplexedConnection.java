@@ -0,0 +1,233 @@
+package org.jnetwork;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Lets many requests be in flight on a single {@link Connection} at once.
+ * Each request is a {@link DataPackage}, sent as a message with
+ * {@link Connection#writeMessage(Serializable)}; the server answers it with a
+ * reply whose correlation ID is the request's ID, in whatever order it
+ * likes. A reader thread receives the replies and completes the matching
+ * request, so callers never wait for each other's round trips.
+ *
+ * The server must answer requests with a
+ * {@link MultiplexedConnectionCallback}, and both ends must use the same
+ * {@link MessageCodec}. Once a connection is multiplexed, nothing else should
+ * read from it. Requests are written while holding the connection's monitor,
+ * so other threads may still write to it in the same way.
+ *
+ * @author Lucas Baizer
+ */
+public class MultiplexedConnection implements Closeable {
+	/**
+	 * The message of a reply that carries the exception a request failed
+	 * with.
+	 */
+	public static final String ERROR_MESSAGE = "JNETWORK_REQUEST_ERROR";
+
+	private final Connection connection;
+	private final ConcurrentHashMap<String, CompletableFuture<DataPackage>> pending = new ConcurrentHashMap<>();
+	private final Thread reader;
+	private volatile Consumer<DataPackage> unsolicitedMessageListener;
+	private volatile IOException failure;
+
+	/**
+	 * Multiplexes a connection, starting its reader thread.
+	 *
+	 * @param connection
+	 *            - The connection.
+	 */
+	public MultiplexedConnection(Connection connection) {
+		this.connection = connection;
+
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readReplies();
+			}
+		}, "JNetwork-Multiplexer-" + connection.getHostAddress() + ":" + connection.getHostPort());
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * @return The connection requests are sent over.
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Sends a request without waiting for its reply.
+	 *
+	 * @param request
+	 *            - The request.
+	 * @return A future that is completed with the reply, or completed
+	 *         exceptionally if the request fails or the connection is lost.
+	 */
+	public CompletableFuture<DataPackage> request(DataPackage request) {
+		final String id = request.getID();
+		CompletableFuture<DataPackage> future = new CompletableFuture<>();
+
+		IOException failure = this.failure;
+		if (failure != null) {
+			future.completeExceptionally(failure);
+			return future;
+		}
+		if (pending.putIfAbsent(id, future) != null) {
+			future.completeExceptionally(new IllegalStateException("A request with the ID " + id + " is already in flight"));
+			return future;
+		}
+		future.whenComplete((reply, e) -> pending.remove(id, future));
+
+		try {
+			synchronized (connection) {
+				connection.writeMessage(request);
+				connection.flush();
+			}
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+
+		// the reader may have failed after the check above, and missed this request
+		failure = this.failure;
+		if (failure != null) {
+			future.completeExceptionally(failure);
+		}
+		return future;
+	}
+
+	/**
+	 * Sends a request and waits for its reply.
+	 *
+	 * @param request
+	 *            - The request.
+	 * @param timeout
+	 *            - The longest time to wait for the reply.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 * @return The reply.
+	 * @throws IOException
+	 *             If the request cannot be sent, the connection is lost, or
+	 *             the server fails the request with an exception that is not
+	 *             unchecked.
+	 * @throws TimeoutException
+	 *             If the reply does not arrive in time.
+	 * @throws InterruptedException
+	 *             If the thread is interrupted while waiting.
+	 */
+	public DataPackage request(DataPackage request, long timeout, TimeUnit unit)
+			throws IOException, TimeoutException, InterruptedException {
+		CompletableFuture<DataPackage> future = request(request);
+		try {
+			return future.get(timeout, unit);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Request failed", cause);
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends a message that expects no reply.
+	 *
+	 * @param message
+	 *            - The message.
+	 * @throws IOException
+	 *             If an error occurs while sending the message.
+	 */
+	public void send(DataPackage message) throws IOException {
+		synchronized (connection) {
+			connection.writeMessage(message);
+			connection.flush();
+		}
+	}
+
+	/**
+	 * Sets the listener that receives every message that is not a reply to a
+	 * request in flight, such as messages the server pushes on its own.
+	 * Without a listener, they are dropped. The listener is called on the
+	 * reader thread, so it must not block. An exception thrown by the
+	 * listener is passed to the reader thread's uncaught exception handler,
+	 * and the reader keeps reading.
+	 *
+	 * @param listener
+	 *            - The listener.
+	 */
+	public void setUnsolicitedMessageListener(Consumer<DataPackage> listener) {
+		this.unsolicitedMessageListener = listener;
+	}
+
+	/**
+	 * @return The number of requests waiting for their reply.
+	 */
+	public int getPendingRequests() {
+		return pending.size();
+	}
+
+	private void readReplies() {
+		try {
+			while (true) {
+				DataPackage message = connection.readMessage();
+				String correlationID = message.getCorrelationID();
+				CompletableFuture<DataPackage> future = correlationID == null ? null : pending.remove(correlationID);
+
+				if (future == null) {
+					Consumer<DataPackage> listener = unsolicitedMessageListener;
+					if (listener != null) {
+						try {
+							listener.accept(message);
+						} catch (RuntimeException e) {
+							// a broken listener must not take every request in flight down with it
+							Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(),
+									e);
+						}
+					}
+				} else if (ERROR_MESSAGE.equals(message.getMessage()) && message.getObjects().length > 0
+						&& message.getObjects()[0] instanceof Throwable) {
+					future.completeExceptionally((Throwable) message.getObjects()[0]);
+				} else {
+					future.complete(message);
+				}
+			}
+		} catch (IOException e) {
+			fail(connection.isClosed() || e instanceof EOFException ? new IOException("Connection closed", e) : e);
+		} catch (ClassNotFoundException | RuntimeException e) {
+			fail(new IOException(e));
+		}
+	}
+
+	private void fail(IOException e) {
+		failure = e;
+		for (CompletableFuture<DataPackage> future : new ArrayList<>(pending.values())) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Closes the connection. Every request still in flight fails.
+	 */
+	@Override
+	public void close() throws IOException {
+		connection.close();
+	}
+}
@@ -0,0 +1,111 @@
+package org.jnetwork;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.concurrent.Executor;
+
+/**
+ * Answers the requests of a {@link MultiplexedConnection} on the server side.
+ * Each request read from the client is handed to a {@link RequestCallback},
+ * and whatever it returns is sent back as the reply, carrying the request's
+ * ID as its correlation ID.
+ *
+ * By default, requests from one client are answered one at a time, in the
+ * order they arrive; the client still never waits for a round trip between
+ * requests. Give the callback an <code>Executor</code> to answer a client's
+ * requests concurrently, in which case replies may be sent in any order.
+ *
+ * @author Lucas Baizer
+ */
+public class MultiplexedConnectionCallback implements TCPConnectionCallback {
+	private final RequestCallback callback;
+	private final Executor executor;
+	private final MessageCodec codec;
+
+	/**
+	 * @param callback
+	 *            - The callback that answers each request.
+	 */
+	public MultiplexedConnectionCallback(RequestCallback callback) {
+		this(callback, null, null);
+	}
+
+	/**
+	 * @param callback
+	 *            - The callback that answers each request.
+	 * @param executor
+	 *            - The executor each request is answered on, or
+	 *            <code>null</code> to answer them one at a time on the
+	 *            client's thread.
+	 * @param codec
+	 *            - The codec messages are encoded with, or <code>null</code>
+	 *            to keep the connection's codec.
+	 */
+	public MultiplexedConnectionCallback(RequestCallback callback, Executor executor, MessageCodec codec) {
+		this.callback = callback;
+		this.executor = executor;
+		this.codec = codec;
+	}
+
+	@Override
+	public void clientConnected(final ClientData event) {
+		Connection connection = event.getConnection();
+		if (codec != null) {
+			connection.setMessageCodec(codec);
+		}
+
+		try {
+			while (!connection.isClosed()) {
+				final DataPackage request = connection.readMessage();
+				if (executor == null) {
+					answer(event, request);
+				} else {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							answer(event, request);
+						}
+					});
+				}
+			}
+		} catch (EOFException e) {
+			// the client closed the connection
+		} catch (IOException | ClassNotFoundException e) {
+			if (!connection.isClosed()) {
+				Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+			}
+		}
+	}
+
+	private void answer(ClientData event, DataPackage request) {
+		DataPackage reply;
+		try {
+			reply = callback.requestReceived(event, request);
+			if (reply == null) {
+				reply = new DataPackage();
+			}
+		} catch (Throwable e) {
+			reply = new DataPackage(e).setMessage(MultiplexedConnection.ERROR_MESSAGE);
+		}
+		reply.setCorrelationID(request.getID());
+
+		Connection connection = event.getConnection();
+		try {
+			synchronized (connection) {
+				try {
+					connection.writeMessage(reply);
+				} catch (NotSerializableException e) {
+					// the reply is encoded before anything is written, so the request can still be failed
+					connection.writeMessage(new DataPackage(new IOException("Reply could not be sent", e))
+							.setMessage(MultiplexedConnection.ERROR_MESSAGE).setCorrelationID(request.getID()));
+				}
+				connection.flush();
+			}
+		} catch (IOException e) {
+			if (!connection.isClosed()) {
+				Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+			}
+		}
+	}
+}
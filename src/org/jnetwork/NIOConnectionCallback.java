@@ -0,0 +1,48 @@
+package org.jnetwork;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Used in pair with a {@link NIOTCPServer}. Every method is called on the
+ * server's selector thread, so implementations must never block; any blocking
+ * work should be handed off to another thread.
+ *
+ * @author Lucas Baizer
+ */
+public interface NIOConnectionCallback extends ClientConnectionCallback {
+	/**
+	 * This method gets called on when a client connects to the
+	 * <code>Server</code>.
+	 *
+	 * @param event
+	 *            - All the data required to read and write data with the
+	 *            client.
+	 */
+	public void clientConnected(ClientData event);
+
+	/**
+	 * This method gets called on when data sent by the client is available.
+	 * Any bytes left unconsumed in <code>data</code> are kept and presented
+	 * again, together with newly arrived bytes, the next time this method is
+	 * called.
+	 *
+	 * @param event
+	 *            - All the data required to read and write data with the
+	 *            client.
+	 * @param data
+	 *            - The buffer holding the unconsumed data, ready to be read.
+	 */
+	public void dataReceived(ClientData event, ByteBuffer data);
+
+	/**
+	 * This method gets called on when every pending write to the client has
+	 * been handed off to the socket, and more data can be written without
+	 * being queued.
+	 *
+	 * @param event
+	 *            - All the data required to read and write data with the
+	 *            client.
+	 */
+	public default void clientWritable(ClientData event) {
+	}
+}
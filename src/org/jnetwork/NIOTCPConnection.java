@@ -0,0 +1,406 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A non-blocking TCP representation of the Connection object, created by a
+ * {@link NIOTCPServer} for each connected client. Writes never block: the data
+ * is queued and written out by the server's selector thread once the socket is
+ * writable. Reads never block either: they only return the data that the
+ * selector thread has already received, and throw if there is none. The read
+ * buffer is shared with the selector thread, so every read holds the
+ * connection's read lock.
+ *
+ * @author Lucas Baizer
+ */
+public class NIOTCPConnection extends Connection {
+	/**
+	 * The largest part of a file mapped into memory at once by
+	 * {@link #sendFile(Path)}.
+	 */
+	private static final long FILE_REGION_LENGTH = 64L * 1024 * 1024;
+
+	private final SocketChannel channel;
+	private final NIOTCPServer server;
+	private final Queue<ByteBuffer[]> pendingWrites = new ConcurrentLinkedQueue<>();
+	private final Object readLock = new Object();
+	private ByteBuffer readBuffer;
+	private SelectionKey key;
+	private OutputStream out;
+	private InputStream in;
+
+	NIOTCPConnection(NIOTCPServer server, SocketChannel channel, int bufferSize) {
+		super(channel.socket().getInetAddress().getHostAddress(), channel.socket().getPort());
+
+		this.server = server;
+		this.channel = channel;
+		this.readBuffer = ByteBuffer.allocate(bufferSize);
+		this.readBuffer.flip();
+
+		in = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				return NIOTCPConnection.this.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return NIOTCPConnection.this.read(b, off, len);
+			}
+
+			@Override
+			public int available() {
+				synchronized (readLock) {
+					return readBuffer.remaining();
+				}
+			}
+		};
+		out = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				NIOTCPConnection.this.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				NIOTCPConnection.this.write(b, off, len);
+			}
+		};
+	}
+
+	/**
+	 * @return The channel that the <code>Connection</code> is built off of.
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	void setSelectionKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	SelectionKey getSelectionKey() {
+		return key;
+	}
+
+	/**
+	 * Reads whatever the channel has available into the read buffer, growing it
+	 * if it is full. Only called from the selector thread.
+	 *
+	 * @return The number of bytes read, or <code>-1</code> if the end of the
+	 *         stream has been reached.
+	 */
+	int fill() throws IOException {
+		int read;
+		synchronized (readLock) {
+			readBuffer.compact();
+			if (!readBuffer.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+				readBuffer.flip();
+				larger.put(readBuffer);
+				readBuffer = larger;
+			}
+
+			try {
+				read = channel.read(readBuffer);
+			} finally {
+				readBuffer.flip();
+			}
+		}
+		if (read > 0) {
+			markRead(read);
+		}
+		return read;
+	}
+
+	/**
+	 * The lock held while the read buffer is read from or refilled. The
+	 * selector thread holds it while the buffer is handed to
+	 * {@link NIOConnectionCallback#dataReceived(ClientData, ByteBuffer)}.
+	 */
+	Object getReadLock() {
+		return readLock;
+	}
+
+	ByteBuffer getReadBuffer() {
+		return readBuffer;
+	}
+
+	/**
+	 * Writes as much queued data as the socket will accept. Only called from
+	 * the selector thread.
+	 *
+	 * @return <code>true</code> if every queued write has been written.
+	 */
+	boolean flushPending() throws IOException {
+		ByteBuffer[] buffers;
+		while ((buffers = pendingWrites.peek()) != null) {
+			long written = channel.write(buffers);
+			if (written > 0) {
+				markWritten((int) written);
+			}
+			if (buffers[buffers.length - 1].hasRemaining()) {
+				return false;
+			}
+			pendingWrites.poll();
+		}
+		return true;
+	}
+
+	/**
+	 * Queues a buffer to be written to the client. The buffer is written from
+	 * its position to its limit, and must not be modified afterwards.
+	 *
+	 * @param buffer
+	 *            - The data to write.
+	 * @throws IOException
+	 *             If the connection is closed.
+	 */
+	public void write(ByteBuffer buffer) throws IOException {
+		enqueue(new ByteBuffer[] { buffer });
+	}
+
+	/**
+	 * Queues buffers to be written to the client together, with a single
+	 * gathering write where the socket allows it. Nothing queued by another
+	 * thread can be written between them.
+	 */
+	private void enqueue(ByteBuffer[] buffers) throws IOException {
+		if (isClosed()) {
+			throw new IOException("Connection closed");
+		}
+
+		pendingWrites.add(buffers);
+		server.requestWrite(this);
+	}
+
+	/**
+	 * @return If there is queued data that has not yet been written to the
+	 *         socket.
+	 */
+	public boolean hasPendingWrites() {
+		return !pendingWrites.isEmpty();
+	}
+
+	/**
+	 * Queues a frame to be written to the client, without copying it. The
+	 * header and contents are queued as one entry, so frames queued by
+	 * different threads are never interleaved.
+	 */
+	@Override
+	public void writeFrame(ByteBuffer frame) throws IOException {
+		int length = checkFrameLength(frame.remaining());
+		ByteBuffer header = ByteBuffer.allocate(4).putInt(length);
+		header.flip();
+
+		enqueue(new ByteBuffer[] { header, frame.duplicate() });
+	}
+
+	/**
+	 * Reads a frame that has already been received in full. This never blocks:
+	 * if the whole frame has not arrived yet, nothing is consumed and
+	 * <code>null</code> is returned.
+	 * 
+	 * @return A buffer holding the contents of the frame, or <code>null</code>
+	 *         if no complete frame has been received.
+	 */
+	@Override
+	public ByteBuffer readFrame() throws IOException {
+		synchronized (readLock) {
+			if (readBuffer.remaining() < 4) {
+				return null;
+			}
+
+			int length = checkFrameLength(readBuffer.getInt(readBuffer.position()));
+			if (readBuffer.remaining() < 4 + length) {
+				return null;
+			}
+
+			readBuffer.position(readBuffer.position() + 4);
+			byte[] bytes = new byte[length];
+			readBuffer.get(bytes);
+			return ByteBuffer.wrap(bytes);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(ByteBuffer.wrap(new byte[] { (byte) b }));
+	}
+
+	@Override
+	public void write(byte[] bytes, int off, int len) throws IOException {
+		byte[] copy = new byte[len];
+		System.arraycopy(bytes, off, copy, 0, len);
+		write(ByteBuffer.wrap(copy));
+	}
+
+	/**
+	 * Reads a byte that has already been received.
+	 * 
+	 * @return The byte, or <code>-1</code> if nothing is buffered and the
+	 *         connection is closed.
+	 * @throws IllegalStateException
+	 *             If nothing is buffered and the connection is open, since
+	 *             reading never blocks.
+	 */
+	@Override
+	public int read() throws IOException {
+		synchronized (readLock) {
+			if (!readBuffer.hasRemaining()) {
+				return noDataBuffered();
+			}
+			return readBuffer.get() & 0xFF;
+		}
+	}
+
+	/**
+	 * Reads bytes that have already been received.
+	 * 
+	 * @return The number of bytes read, or <code>-1</code> if nothing is
+	 *         buffered and the connection is closed.
+	 * @throws IllegalStateException
+	 *             If nothing is buffered and the connection is open, since
+	 *             reading never blocks.
+	 */
+	@Override
+	public int read(byte[] arr, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		synchronized (readLock) {
+			if (!readBuffer.hasRemaining()) {
+				return noDataBuffered();
+			}
+
+			int count = Math.min(len, readBuffer.remaining());
+			readBuffer.get(arr, off, count);
+			return count;
+		}
+	}
+
+	private int noDataBuffered() {
+		if (isClosed()) {
+			return -1;
+		}
+		// returning 0 would be taken as a byte by read(), and spin callers of read(byte[], int, int)
+		throw new IllegalStateException("No data buffered");
+	}
+
+	/**
+	 * Queues a file to be written to the client, without blocking or copying
+	 * it into the Java heap. The file is mapped into memory and written out by
+	 * the selector thread like any other queued data, after the same header
+	 * {@link Connection#sendFile(Path)} writes. The file must not be changed
+	 * until {@link #hasPendingWrites()} returns <code>false</code>.
+	 * 
+	 * @return The number of bytes of the file that were queued.
+	 */
+	@Override
+	public long sendFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			ByteBuffer[] buffers = new ByteBuffer[1 + (int) ((length + FILE_REGION_LENGTH - 1) / FILE_REGION_LENGTH)];
+			buffers[0] = ByteBuffer.allocate(12).putInt(FILE_MAGIC).putLong(length);
+			buffers[0].flip();
+
+			// a mapping stays valid once the channel is closed
+			for (int i = 1; i < buffers.length; i++) {
+				long position = (i - 1) * FILE_REGION_LENGTH;
+				buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(FILE_REGION_LENGTH, length - position));
+			}
+			enqueue(buffers);
+			return length;
+		}
+	}
+
+	/**
+	 * Files cannot be received over a <code>NIOTCPConnection</code>, since
+	 * reading never blocks. Read them from the data handed to
+	 * {@link NIOConnectionCallback#dataReceived(ClientData, ByteBuffer)}
+	 * instead, or serve them with a {@link TCPServer}.
+	 * 
+	 * @throws IOException
+	 *             Always.
+	 */
+	@Override
+	public long receiveFile(Path file) throws IOException {
+		throw new IOException("NIOTCPConnection cannot receive files, since reading never blocks");
+	}
+
+	/**
+	 * Compression cannot be negotiated over a <code>NIOTCPConnection</code>,
+	 * since negotiating waits for the other end's answer and reading never
+	 * blocks. Frames written to it are never compressed, so clients of a
+	 * {@link NIOTCPServer} must not negotiate compression either.
+	 * 
+	 * @throws IOException
+	 *             Always.
+	 */
+	@Override
+	public boolean negotiateCompression(boolean enabled) throws IOException {
+		throw new IOException("NIOTCPConnection cannot negotiate compression, since reading never blocks");
+	}
+
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		return channel.socket().getRemoteSocketAddress();
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return channel.socket().getLocalSocketAddress();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+
+		super.close();
+	}
+
+	@Override
+	public void setOutputStream(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void setInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	/**
+	 * Gets a stream over the data that has already been received. The stream
+	 * never blocks: reading past the buffered data throws
+	 * <code>IllegalStateException</code> while the connection is open, so
+	 * only as many bytes as {@link InputStream#available()} reports should be
+	 * read from it.
+	 */
+	@Override
+	public InputStream getInputStream() {
+		return in;
+	}
+}
@@ -0,0 +1,307 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * A non-blocking TCP representation of the Server object. Instead of holding a
+ * thread for every connected client, a single selector thread accepts clients,
+ * reads the data they send and writes out any queued data, and notifies the
+ * server's {@link NIOConnectionCallback} of each event. Clients are ordinary
+ * {@link TCPConnection} objects; on the server side each client is represented
+ * by a {@link NIOTCPConnection}.
+ *
+ * @author Lucas Baizer
+ */
+public class NIOTCPServer extends Server {
+	protected ServerSocketChannel server;
+	protected Selector selector;
+	protected InetAddress boundAddress;
+	protected int bufferSize = 8192;
+	private Thread selectorThread;
+
+	public NIOTCPServer(int port, NIOConnectionCallback clientSocketThread) {
+		super(port, clientSocketThread);
+	}
+
+	@Override
+	public void start() throws IOException {
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(boundAddress == null ? new InetSocketAddress(getBoundPort())
+				: new InetSocketAddress(boundAddress, getBoundPort()), capacity == -1 ? 0 : capacity);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+
+		super.startDispatch();
+	}
+
+	/**
+	 * A <code>NIOTCPServer</code> serves every client from a single selector
+	 * thread, so it only supports one acceptor.
+	 * 
+	 * @throws ServerException
+	 *             If <code>count</code> is not 1, or the server has already
+	 *             been started.
+	 */
+	@Override
+	public void setAcceptorCount(int count) throws ServerException {
+		if (count != 1) {
+			throw new ServerException("NIOTCPServer uses a single selector thread");
+		}
+		super.setAcceptorCount(count);
+	}
+
+	@Override
+	protected void launchNewThread() throws IOException {
+		selectorThread = Thread.currentThread();
+
+		Iterator<SelectionKey> keys;
+		try {
+			selector.select();
+			keys = selector.selectedKeys().iterator();
+		} catch (ClosedSelectorException e) {
+			return;
+		}
+
+		while (keys.hasNext()) {
+			SelectionKey key = keys.next();
+			keys.remove();
+
+			if (!key.isValid()) {
+				continue;
+			}
+			if (key.isAcceptable()) {
+				accept();
+			} else {
+				handleClient(key);
+			}
+		}
+	}
+
+	/**
+	 * Accepts a client. A failure only affects the client being accepted: it
+	 * is reported and the selector thread keeps serving everyone else.
+	 */
+	private void accept() {
+		SocketChannel channel;
+		try {
+			channel = server.accept();
+		} catch (IOException e) {
+			// such as running out of file descriptors; the next select tries again
+			if (server.isOpen()) {
+				acceptFailed(e);
+			}
+			return;
+		}
+		if (channel == null) {
+			return;
+		}
+
+		Socket client = channel.socket();
+		boolean admitted;
+		try {
+			admitted = admit(client);
+		} catch (RuntimeException e) {
+			// admit has already closed the channel
+			acceptFailed(e);
+			return;
+		}
+		if (!admitted) {
+			getMetrics().markRejected();
+			closeQuietly(channel);
+			return;
+		}
+		getMetrics().markAccepted();
+
+		NIOTCPConnection connection;
+		ClientData event;
+		try {
+			channel.configureBlocking(false);
+			connection = new NIOTCPConnection(this, channel, bufferSize);
+			event = new ClientData(connection);
+			connection.setSelectionKey(channel.register(selector, SelectionKey.OP_READ, event));
+		} catch (IOException | RuntimeException e) {
+			release(client);
+			closeQuietly(channel);
+			acceptFailed(e);
+			return;
+		}
+		releaseOnClose(event, client);
+
+		addClient(event);
+
+		try {
+			((NIOConnectionCallback) getClientConnectionListener()).clientConnected(event);
+		} catch (Throwable e) {
+			handleClientException(event, e);
+		}
+	}
+
+	private void handleClient(SelectionKey key) {
+		ClientData event = (ClientData) key.attachment();
+		NIOTCPConnection connection = (NIOTCPConnection) event.getConnection();
+		NIOConnectionCallback callback = (NIOConnectionCallback) getClientConnectionListener();
+
+		try {
+			if (key.isReadable()) {
+				if (connection.fill() == -1) {
+					removeClient(event, DisconnectReason.CLOSED);
+					return;
+				}
+				long start = System.nanoTime();
+				try {
+					synchronized (connection.getReadLock()) {
+						callback.dataReceived(event, connection.getReadBuffer());
+					}
+				} finally {
+					getMetrics().getHandlerLatency().recordSince(start);
+				}
+			}
+			if (key.isValid() && key.isWritable() && connection.flushPending()) {
+				key.interestOpsAnd(~SelectionKey.OP_WRITE);
+				// another thread may have queued a write after the queue was found empty
+				if (connection.hasPendingWrites()) {
+					key.interestOpsOr(SelectionKey.OP_WRITE);
+				} else {
+					callback.clientWritable(event);
+				}
+			}
+		} catch (Throwable e) {
+			handleClientException(event, e);
+		}
+	}
+
+	private void handleClientException(ClientData event, Throwable e) {
+		try {
+			removeClient(event, DisconnectReason.CLOSED);
+		} catch (IOException e1) {
+			e.addSuppressed(e1);
+		}
+
+		reportException(e);
+	}
+
+	private static void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// the client is being dropped anyway
+		}
+	}
+
+	private void acceptFailed(Throwable e) {
+		getMetrics().markDispatcherError();
+		reportException(e);
+	}
+
+	private void reportException(Throwable e) {
+		if (exceptionCallback == null) {
+			Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+		} else {
+			exceptionCallback.exceptionThrown(e);
+		}
+	}
+
+	/**
+	 * Called by a client's connection when it has data queued to be written.
+	 */
+	void requestWrite(NIOTCPConnection connection) {
+		SelectionKey key = connection.getSelectionKey();
+		if (key == null || !key.isValid()) {
+			return;
+		}
+
+		if (Thread.currentThread() == selectorThread) {
+			try {
+				if (connection.flushPending()) {
+					return;
+				}
+			} catch (IOException e) {
+				handleClientException((ClientData) key.attachment(), e);
+				return;
+			}
+		}
+
+		key.interestOpsOr(SelectionKey.OP_WRITE);
+		selector.wakeup();
+	}
+
+	/**
+	 * The selector thread also reads from connected clients, so it keeps
+	 * running while the server shuts down.
+	 */
+	@Override
+	protected boolean isDispatchingClients() {
+		return true;
+	}
+
+	@Override
+	protected void stopAccepting() throws IOException {
+		if (server != null) {
+			server.close();
+		}
+		if (selector != null) {
+			selector.wakeup();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (server != null) {
+			server.close();
+		}
+		if (selector != null) {
+			for (ClientData client : getClients()) {
+				client.getConnection().close();
+			}
+			selector.close();
+		}
+
+		super.close();
+	}
+
+	/**
+	 * Gets the internal <code>ServerSocketChannel</code> the
+	 * <code>Server</code> is built off of.
+	 *
+	 * @return <b>ServerSocketChannel</b> - The internal
+	 *         <code>ServerSocketChannel</code> the <code>Server</code> is built
+	 *         off of.
+	 */
+	public ServerSocketChannel getServerChannel() {
+		return server;
+	}
+
+	public InetAddress getBoundAddress() {
+		return boundAddress;
+	}
+
+	public void setBoundAddress(InetAddress boundAddress) {
+		this.boundAddress = boundAddress;
+	}
+
+	/**
+	 * @return the initial size of each client's read buffer.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Sets the initial size of each client's read buffer. A buffer grows if a
+	 * client sends more data than it can hold before it is consumed.
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+}
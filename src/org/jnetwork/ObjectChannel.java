@@ -0,0 +1,394 @@
+package org.jnetwork;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes and reads objects over a {@link Connection} with Java
+ * serialization, for connections that stay open for a long time.
+ *
+ * An <code>ObjectOutputStream</code> remembers every object it has written,
+ * so that writing the same object again only sends a reference to it. On a
+ * stream that is never reset, that table grows for as long as the connection
+ * is open, and an object that was changed after it was written is never sent
+ * again. An <code>ObjectChannel</code> resets its stream after a number of
+ * objects or bytes, so memory use stays flat. Resetting a plain
+ * <code>ObjectOutputStream</code> also forgets the class descriptors it has
+ * sent, which then have to be sent again in full; an
+ * <code>ObjectChannel</code> keeps them, and only sends a short reference to
+ * a class it has already described.
+ *
+ * Both ends of the connection must use an <code>ObjectChannel</code>, and it
+ * must not be mixed with {@link Connection#getObjectOutputStream()} or
+ * {@link Connection#getObjectInputStream()}. Writing and reading may happen
+ * on different threads.
+ *
+ * @see Connection#getObjectChannel()
+ *
+ * @author Lucas Baizer
+ */
+public class ObjectChannel implements Flushable, Closeable {
+	/**
+	 * The default number of objects written between resets.
+	 */
+	public static final int DEFAULT_RESET_OBJECTS = 1024;
+
+	/**
+	 * The default number of bytes written between resets, 1 MiB.
+	 */
+	public static final long DEFAULT_RESET_BYTES = 1024 * 1024;
+
+	private static final int NEW_DESCRIPTOR = 0;
+
+	private final Connection connection;
+	private final Object writeLock = new Object();
+	private final Object readLock = new Object();
+
+	private volatile int resetObjects = DEFAULT_RESET_OBJECTS;
+	private volatile long resetBytes = DEFAULT_RESET_BYTES;
+
+	private OutputStream rawOut;
+	private CountingOutputStream countingOut;
+	private CachingObjectOutputStream out;
+	private InputStream rawIn;
+	private CountingInputStream countingIn;
+	private CachingObjectInputStream in;
+
+	private volatile long objectsWritten;
+	private volatile long objectsRead;
+	private volatile long resets;
+	private volatile int objectsSinceReset;
+	private volatile long bytesAtReset;
+
+	ObjectChannel(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Writes an object, then resets the stream if enough objects or bytes
+	 * have been written since the last reset.
+	 *
+	 * @param obj
+	 *            - The object to write.
+	 * @throws IOException
+	 *             If an error occurs while writing the object.
+	 */
+	public void writeObject(Object obj) throws IOException {
+		synchronized (writeLock) {
+			CachingObjectOutputStream out = getOutput();
+			out.writeObject(obj);
+			objectsWritten++;
+			objectsSinceReset++;
+
+			if (objectsSinceReset >= resetObjects || countingOut.count - bytesAtReset >= resetBytes) {
+				reset();
+			}
+		}
+	}
+
+	/**
+	 * Reads an object written by the <code>ObjectChannel</code> at the other
+	 * end of the connection.
+	 *
+	 * @return The object.
+	 * @throws IOException
+	 *             If an error occurs while reading the object.
+	 * @throws ClassNotFoundException
+	 *             If the object's class cannot be found.
+	 */
+	public Object readObject() throws IOException, ClassNotFoundException {
+		synchronized (readLock) {
+			Object obj = getInput().readObject();
+			objectsRead++;
+			return obj;
+		}
+	}
+
+	/**
+	 * Resets the stream now, so it forgets every object written so far. The
+	 * class descriptors that have been sent are kept.
+	 *
+	 * @throws IOException
+	 *             If an error occurs while writing the reset to the
+	 *             connection.
+	 */
+	public void reset() throws IOException {
+		synchronized (writeLock) {
+			getOutput().reset();
+			resets++;
+			objectsSinceReset = 0;
+			bytesAtReset = countingOut.count;
+		}
+	}
+
+	private CachingObjectOutputStream getOutput() throws IOException {
+		// after a reconnect, the peer has seen neither a header nor any descriptors
+		if (out == null || rawOut != connection.getOutputStream()) {
+			rawOut = connection.getOutputStream();
+			countingOut = new CountingOutputStream(rawOut);
+			out = new CachingObjectOutputStream(countingOut);
+			objectsSinceReset = 0;
+			bytesAtReset = countingOut.count;
+		}
+		return out;
+	}
+
+	private CachingObjectInputStream getInput() throws IOException {
+		if (in == null || rawIn != connection.getInputStream()) {
+			rawIn = connection.getInputStream();
+			countingIn = new CountingInputStream(rawIn);
+			in = new CachingObjectInputStream(countingIn);
+		}
+		return in;
+	}
+
+	/**
+	 * Hands off any buffered data to the socket.
+	 */
+	@Override
+	public void flush() throws IOException {
+		synchronized (writeLock) {
+			if (out != null) {
+				out.flush();
+			} else {
+				connection.flush();
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	@Override
+	public void close() throws IOException {
+		connection.close();
+	}
+
+	/**
+	 * @return The number of objects written between resets.
+	 */
+	public int getResetObjects() {
+		return resetObjects;
+	}
+
+	/**
+	 * Sets the number of objects written between resets. Fewer objects keep
+	 * memory lower, but a shared object written again after a reset is sent
+	 * in full again.
+	 *
+	 * @param objects
+	 *            - The number of objects, at least 1.
+	 */
+	public void setResetObjects(int objects) {
+		if (objects < 1) {
+			throw new IllegalArgumentException("At least 1 object must be written between resets");
+		}
+		this.resetObjects = objects;
+	}
+
+	/**
+	 * @return The number of bytes written between resets.
+	 */
+	public long getResetBytes() {
+		return resetBytes;
+	}
+
+	/**
+	 * Sets the number of bytes written between resets. The stream is reset
+	 * after the first object that takes it past this many bytes.
+	 *
+	 * @param bytes
+	 *            - The number of bytes, at least 1.
+	 */
+	public void setResetBytes(long bytes) {
+		if (bytes < 1) {
+			throw new IllegalArgumentException("At least 1 byte must be written between resets");
+		}
+		this.resetBytes = bytes;
+	}
+
+	/**
+	 * @return The number of objects written.
+	 */
+	public long getObjectsWritten() {
+		return objectsWritten;
+	}
+
+	/**
+	 * @return The number of objects read.
+	 */
+	public long getObjectsRead() {
+		return objectsRead;
+	}
+
+	/**
+	 * @return The number of bytes written.
+	 */
+	public long getBytesWritten() {
+		CountingOutputStream counter = countingOut;
+		return counter == null ? 0 : counter.count;
+	}
+
+	/**
+	 * @return The number of bytes read.
+	 */
+	public long getBytesRead() {
+		CountingInputStream counter = countingIn;
+		return counter == null ? 0 : counter.count;
+	}
+
+	/**
+	 * @return The number of objects written since the last reset. The
+	 *         stream's memory use grows with this number.
+	 */
+	public int getObjectsSinceReset() {
+		return objectsSinceReset;
+	}
+
+	/**
+	 * @return The number of bytes written since the last reset.
+	 */
+	public long getBytesSinceReset() {
+		return getBytesWritten() - bytesAtReset;
+	}
+
+	/**
+	 * @return The number of times the stream has been reset.
+	 */
+	public long getResets() {
+		return resets;
+	}
+
+	/**
+	 * @return The number of class descriptors that have been sent, and are
+	 *         only referred to from then on.
+	 */
+	public int getCachedClassDescriptors() {
+		synchronized (writeLock) {
+			return out == null ? 0 : out.descriptors.size();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ObjectChannel:[objectsWritten=" + objectsWritten + ",objectsRead=" + objectsRead + ",bytesWritten="
+				+ getBytesWritten() + ",bytesRead=" + getBytesRead() + ",resets=" + resets + "]";
+	}
+
+	/**
+	 * Writes each class descriptor in full once, and from then on as its
+	 * index, even across resets.
+	 */
+	private static class CachingObjectOutputStream extends ObjectOutputStream {
+		private final Map<Class<?>, Integer> descriptors = new HashMap<>();
+		private int nextIndex;
+
+		CachingObjectOutputStream(OutputStream out) throws IOException {
+			super(out);
+		}
+
+		@Override
+		protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+			Integer index = descriptors.get(desc.forClass());
+			if (index != null) {
+				writeInt(index + 1);
+				return;
+			}
+
+			writeInt(NEW_DESCRIPTOR);
+			super.writeClassDescriptor(desc);
+
+			// the reader numbers every new descriptor, so every one takes an index
+			int newIndex = nextIndex++;
+			if (desc.forClass() != null) {
+				descriptors.put(desc.forClass(), newIndex);
+			}
+		}
+	}
+
+	/**
+	 * Reads the class descriptors written by a
+	 * <code>CachingObjectOutputStream</code>.
+	 */
+	private static class CachingObjectInputStream extends ObjectInputStream {
+		private final List<ObjectStreamClass> descriptors = new ArrayList<>();
+
+		CachingObjectInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			int index = readInt();
+			if (index == NEW_DESCRIPTOR) {
+				ObjectStreamClass desc = super.readClassDescriptor();
+				descriptors.add(desc);
+				return desc;
+			}
+
+			if (index < 0 || index > descriptors.size()) {
+				throw new StreamCorruptedException("Unknown class descriptor " + index);
+			}
+			return descriptors.get(index - 1);
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private volatile long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		private volatile long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = in.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+	}
+}
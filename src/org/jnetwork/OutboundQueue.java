@@ -0,0 +1,434 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queues frames to be written to a client, so that the thread offering them
+ * never waits on the client's socket. Queued frames are written in order by a
+ * single drain task on {@link Connection#getAsyncExecutor()}, which flushes
+ * the connection once the queue is empty, so a slow client only holds up its
+ * own queue.
+ *
+ * The bytes a queue holds are bounded. When they rise to the high watermark,
+ * the client becomes unwritable, and becomes writable again once they fall
+ * back to the low watermark; both changes are reported to the queue's
+ * {@link WritabilityCallback}. A frame that would take the queue past its
+ * limit is handled by the queue's {@link OverflowPolicy}. A single frame
+ * larger than the limit is still queued if the queue is empty.
+ *
+ * Frames are written with {@link Connection#writeFrame(ByteBuffer)} while
+ * holding the connection's monitor, which is its write lock, so code must
+ * not offer frames while holding it. If a frame cannot be written, the
+ * connection is closed and every queued frame is dropped.
+ *
+ * @see ClientData#getOutboundQueue()
+ *
+ * @author Lucas Baizer
+ */
+public class OutboundQueue {
+	/**
+	 * The default low watermark, 32 KiB.
+	 */
+	public static final long DEFAULT_LOW_WATERMARK = 32 * 1024;
+
+	/**
+	 * The default high watermark, 64 KiB.
+	 */
+	public static final long DEFAULT_HIGH_WATERMARK = 64 * 1024;
+
+	/**
+	 * The default limit, 16 MiB.
+	 */
+	public static final long DEFAULT_LIMIT = 16 * 1024 * 1024;
+
+	private final ClientData client;
+	private final Connection connection;
+	private final Queue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final AtomicLong queuedBytes = new AtomicLong();
+	private final AtomicBoolean writable = new AtomicBoolean(true);
+	private final LongAdder droppedFrames = new LongAdder();
+	private final Object spaceLock = new Object();
+	private volatile int blockedOffers;
+
+	private volatile long lowWatermark = DEFAULT_LOW_WATERMARK;
+	private volatile long highWatermark = DEFAULT_HIGH_WATERMARK;
+	private volatile long limit = DEFAULT_LIMIT;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DISCONNECT;
+	private volatile WritabilityCallback writabilityCallback;
+
+	OutboundQueue(ClientData client) {
+		this.client = client;
+		this.connection = client.getConnection();
+	}
+
+	/**
+	 * Queues a frame to be written. The frame is written from its position to
+	 * its limit, and may be shared with other queues, but must not be
+	 * modified afterwards.
+	 *
+	 * @param frame
+	 *            - The frame.
+	 * @return <code>false</code> if the frame was not queued, because the
+	 *         connection is closed, the client was disconnected for
+	 *         overflowing the queue, or the thread was interrupted while
+	 *         waiting for space.
+	 */
+	public boolean offer(ByteBuffer frame) {
+		return offer(frame, true);
+	}
+
+	/**
+	 * Queues a frame to be written, in the same way as
+	 * {@link #offer(ByteBuffer)}, but never waits for space. Where the
+	 * overflow policy would make the offering thread wait, the frame is not
+	 * queued instead.
+	 *
+	 * @param frame
+	 *            - The frame.
+	 * @return <code>false</code> if the frame was not queued, because the
+	 *         connection is closed, the client was disconnected for
+	 *         overflowing the queue, or there was no room for it.
+	 */
+	public boolean tryOffer(ByteBuffer frame) {
+		return offer(frame, false);
+	}
+
+	private boolean offer(ByteBuffer frame, boolean wait) {
+		if (connection.isClosed()) {
+			return false;
+		}
+
+		int size = frame.remaining();
+		if (!reserve(size, wait)) {
+			return false;
+		}
+
+		frames.add(frame.duplicate());
+		schedule();
+		return true;
+	}
+
+	/**
+	 * Encodes a message with the connection's {@link MessageCodec} and queues
+	 * it to be written, in the same way as {@link #offer(ByteBuffer)}.
+	 *
+	 * @param message
+	 *            - The message.
+	 * @return If the message was queued.
+	 * @throws IOException
+	 *             If the message cannot be encoded.
+	 */
+	public boolean offer(Serializable message) throws IOException {
+		return offer(connection.getMessageCodec().encode(message));
+	}
+
+	/**
+	 * Makes room for a frame of the given size, as the overflow policy says.
+	 *
+	 * @param wait
+	 *            - If the offering thread may wait for space.
+	 * @return If the frame can be queued.
+	 */
+	private boolean reserve(int size, boolean wait) {
+		while (true) {
+			long current = queuedBytes.get();
+			if (current + size <= limit || current == 0) {
+				if (queuedBytes.compareAndSet(current, current + size)) {
+					if (current + size >= highWatermark && writable.compareAndSet(true, false)) {
+						fireWritabilityChanged(false);
+					}
+					return true;
+				}
+				continue;
+			}
+
+			switch (overflowPolicy) {
+			case BLOCK:
+				if (!wait || !awaitSpace(size)) {
+					return false;
+				}
+				break;
+			case DROP_OLDEST:
+				ByteBuffer oldest = frames.poll();
+				if (oldest != null) {
+					droppedFrames.increment();
+					release(oldest.remaining());
+				} else if (!wait || !awaitSpace(size)) {
+					// every queued frame is already being written
+					return false;
+				}
+				break;
+			default:
+				disconnect();
+				return false;
+			}
+		}
+	}
+
+	private boolean awaitSpace(int size) {
+		synchronized (spaceLock) {
+			blockedOffers++;
+			try {
+				while (queuedBytes.get() + size > limit && queuedBytes.get() > 0) {
+					if (connection.isClosed()) {
+						return false;
+					}
+					// wake up now and then in case the connection was closed
+					spaceLock.wait(100);
+				}
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				blockedOffers--;
+			}
+		}
+	}
+
+	private void release(int size) {
+		long current = queuedBytes.addAndGet(-size);
+		if (current <= lowWatermark && writable.compareAndSet(false, true)) {
+			fireWritabilityChanged(true);
+		}
+		if (blockedOffers > 0) {
+			synchronized (spaceLock) {
+				spaceLock.notifyAll();
+			}
+		}
+	}
+
+	private void fireWritabilityChanged(boolean writable) {
+		WritabilityCallback callback = writabilityCallback;
+		if (callback != null) {
+			callback.writabilityChanged(client, writable);
+		}
+	}
+
+	private void disconnect() {
+		try {
+			Server server = client.getServer();
+			if (server != null) {
+				server.removeClient(client, DisconnectReason.OUTBOUND_OVERFLOW);
+			} else {
+				connection.close();
+			}
+		} catch (IOException e) {
+			// the connection is already broken
+		}
+	}
+
+	private void schedule() {
+		if (!frames.isEmpty() && draining.compareAndSet(false, true)) {
+			Connection.getAsyncExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					drain();
+				}
+			});
+		}
+	}
+
+	private void drain() {
+		try {
+			synchronized (connection) {
+				ByteBuffer frame;
+				while ((frame = frames.poll()) != null) {
+					int size = frame.remaining();
+					try {
+						connection.writeFrame(frame);
+					} finally {
+						release(size);
+					}
+				}
+				connection.flush();
+			}
+		} catch (IOException e) {
+			ByteBuffer frame;
+			while ((frame = frames.poll()) != null) {
+				release(frame.remaining());
+			}
+			try {
+				connection.close();
+			} catch (IOException e1) {
+				// the connection is already broken
+			}
+		} finally {
+			draining.set(false);
+		}
+
+		// a frame may have been offered after the queue was found empty
+		schedule();
+	}
+
+	/**
+	 * Waits until every frame offered so far has been written, or the
+	 * connection is closed.
+	 * 
+	 * @param timeout
+	 *            - The most time to wait.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 * @return If every frame was written in time.
+	 */
+	public boolean awaitFlush(long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (spaceLock) {
+			blockedOffers++;
+			try {
+				long remaining;
+				while (queuedBytes.get() > 0 && !connection.isClosed()
+						&& (remaining = deadline - System.nanoTime()) > 0) {
+					// wake up now and then in case the connection was closed
+					spaceLock.wait(Math.max(Math.min(TimeUnit.NANOSECONDS.toMillis(remaining), 100), 1));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				blockedOffers--;
+			}
+		}
+		return queuedBytes.get() == 0;
+	}
+
+	/**
+	 * @return The number of frames waiting to be written.
+	 */
+	public int size() {
+		return frames.size();
+	}
+
+	/**
+	 * @return If every queued frame has been written.
+	 */
+	public boolean isEmpty() {
+		return frames.isEmpty();
+	}
+
+	/**
+	 * @return The number of bytes offered that have not yet been written.
+	 */
+	public long getQueuedBytes() {
+		return queuedBytes.get();
+	}
+
+	/**
+	 * @return The number of frames dropped to make room for newer ones.
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames.sum();
+	}
+
+	/**
+	 * @return <code>false</code> if the queued bytes have risen to the high
+	 *         watermark and not yet fallen back to the low watermark.
+	 */
+	public boolean isWritable() {
+		return writable.get();
+	}
+
+	/**
+	 * @return The number of queued bytes at which the client becomes writable
+	 *         again.
+	 */
+	public long getLowWatermark() {
+		return lowWatermark;
+	}
+
+	/**
+	 * @return The number of queued bytes at which the client becomes
+	 *         unwritable.
+	 */
+	public long getHighWatermark() {
+		return highWatermark;
+	}
+
+	/**
+	 * Sets the watermarks between which the client stays unwritable once it
+	 * falls behind.
+	 *
+	 * @param low
+	 *            - The number of queued bytes at which the client becomes
+	 *            writable again.
+	 * @param high
+	 *            - The number of queued bytes at which the client becomes
+	 *            unwritable.
+	 * @throws IllegalArgumentException
+	 *             If <code>low</code> is negative or greater than
+	 *             <code>high</code>.
+	 */
+	public void setWatermarks(long low, long high) {
+		checkWatermarks(low, high);
+		this.lowWatermark = low;
+		this.highWatermark = high;
+	}
+
+	static void checkWatermarks(long low, long high) {
+		if (low < 0 || low > high) {
+			throw new IllegalArgumentException("The watermarks must satisfy 0 <= low <= high");
+		}
+	}
+
+	/**
+	 * @return The most bytes the queue holds before its overflow policy is
+	 *         applied.
+	 */
+	public long getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return What happens when a frame would take the queue past its limit.
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Sets the most bytes the queue holds, and what happens when a frame would
+	 * take it past that.
+	 *
+	 * @param limit
+	 *            - The limit, in bytes.
+	 * @param policy
+	 *            - The overflow policy.
+	 */
+	public void setLimit(long limit, OverflowPolicy policy) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("The limit must be at least 1 byte");
+		}
+		if (policy == null) {
+			throw new NullPointerException("policy");
+		}
+		this.limit = limit;
+		this.overflowPolicy = policy;
+	}
+
+	/**
+	 * @return The callback told when the client's writability changes, or
+	 *         <code>null</code> if there is none.
+	 */
+	public WritabilityCallback getWritabilityCallback() {
+		return writabilityCallback;
+	}
+
+	/**
+	 * Sets the callback told when the client's writability changes. It is
+	 * called on whichever thread crosses a watermark.
+	 *
+	 * @param callback
+	 *            - The callback, or <code>null</code> for none.
+	 */
+	public void setWritabilityCallback(WritabilityCallback callback) {
+		this.writabilityCallback = callback;
+	}
+}
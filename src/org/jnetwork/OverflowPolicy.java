@@ -0,0 +1,30 @@
+package org.jnetwork;
+
+/**
+ * An enumeration of what an {@link OutboundQueue} does when a frame is offered
+ * that would take it past its byte limit.
+ * 
+ * @see OutboundQueue#setLimit(long, OverflowPolicy)
+ * 
+ * @author Lucas Baizer
+ */
+public enum OverflowPolicy {
+	/**
+	 * The offering thread waits until enough queued frames have been written
+	 * for the new frame to fit. A frame offered with
+	 * {@link OutboundQueue#tryOffer(java.nio.ByteBuffer)}, as
+	 * {@link Server#broadcast(java.io.Serializable)} does, is not queued
+	 * instead.
+	 */
+	BLOCK,
+	/**
+	 * The oldest queued frames are dropped until the new frame fits.
+	 */
+	DROP_OLDEST,
+	/**
+	 * The client is disconnected, with the reason
+	 * {@link DisconnectReason#OUTBOUND_OVERFLOW}, and the frame is not queued.
+	 * This is the default.
+	 */
+	DISCONNECT;
+}
@@ -0,0 +1,362 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Connection} leased from a {@link ConnectionPool}. Every method is
+ * passed on to the pooled connection, except {@link #close()}, which hands the
+ * connection back to the pool instead of closing it. Once closed, a
+ * <code>PooledConnection</code> cannot be used again; lease another one from
+ * the pool instead.
+ * <p>
+ * The asynchronous methods run on the pooled connection as well. Since their
+ * reads and writes can outlive the lease, a connection is closed instead of
+ * handed back to the pool if a reader was ever started on it, through
+ * {@link #receiveAsync()}, {@link #requestAsync(DataPackage)} or
+ * {@link #getMultiplexedConnection()}, or if an asynchronous send is still
+ * pending when it is released.
+ *
+ * @author Lucas Baizer
+ */
+public class PooledConnection extends Connection {
+	private final ConnectionPool pool;
+	private final ConnectionPool.Key key;
+	private final Connection connection;
+	private volatile boolean released;
+	private volatile boolean broken;
+	private volatile boolean asyncReader;
+	private final AtomicInteger pendingSends = new AtomicInteger();
+
+	PooledConnection(ConnectionPool pool, ConnectionPool.Key key, Connection connection) {
+		super(connection.getHostAddress(), connection.getHostPort());
+
+		this.pool = pool;
+		this.key = key;
+		this.connection = connection;
+	}
+
+	/**
+	 * @return The pooled connection that this <code>Connection</code> passes
+	 *         every method on to.
+	 */
+	public Connection getPooledConnection() {
+		return connection;
+	}
+
+	private Connection get() throws IOException {
+		if (released) {
+			throw new IOException("Connection has been returned to its pool");
+		}
+		return connection;
+	}
+
+	/**
+	 * Marks the connection as broken, so that it is closed instead of handed
+	 * back to the pool when this <code>Connection</code> is closed. Call this
+	 * when the connection is left in a state the next user cannot recover
+	 * from, such as after a partial write.
+	 */
+	public void invalidate() {
+		broken = true;
+	}
+
+	/**
+	 * @return If the connection will be closed instead of handed back to the
+	 *         pool.
+	 */
+	public boolean isInvalidated() {
+		return broken;
+	}
+
+	/**
+	 * Hands the connection back to its pool, or closes it if it has been
+	 * invalidated or the pool has been closed. Closing a
+	 * <code>PooledConnection</code> more than once has no effect.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (released) {
+			return;
+		}
+		released = true;
+
+		if (asyncReader || pendingSends.get() > 0) {
+			// a read or write still queued on the connection would reach the
+			// next lessee's stream
+			broken = true;
+		}
+		pool.release(key, connection, broken);
+		super.close();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return released || connection.isClosed();
+	}
+
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		return connection.getRemoteSocketAddress();
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return connection.getLocalSocketAddress();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		get().write(b);
+	}
+
+	@Override
+	public void write(byte[] bytes) throws IOException {
+		get().write(bytes);
+	}
+
+	@Override
+	public void write(byte[] bytes, int off, int len) throws IOException {
+		get().write(bytes, off, len);
+	}
+
+	@Override
+	public int read() throws IOException {
+		return get().read();
+	}
+
+	@Override
+	public int read(byte[] arr) throws IOException {
+		return get().read(arr);
+	}
+
+	@Override
+	public int read(byte[] arr, int off, int len) throws IOException {
+		return get().read(arr, off, len);
+	}
+
+	@Override
+	public void setOutputStream(OutputStream out) {
+		connection.setOutputStream(out);
+	}
+
+	@Override
+	public void setInputStream(InputStream in) {
+		connection.setInputStream(in);
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return connection.getOutputStream();
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return connection.getInputStream();
+	}
+
+	@Override
+	public ObjectOutputStream getObjectOutputStream() throws IOException {
+		return get().getObjectOutputStream();
+	}
+
+	@Override
+	public ObjectInputStream getObjectInputStream() throws IOException {
+		return get().getObjectInputStream();
+	}
+
+	@Override
+	public ObjectChannel getObjectChannel() {
+		return connection.getObjectChannel();
+	}
+
+	@Override
+	public void writeFrame(ByteBuffer frame) throws IOException {
+		get().writeFrame(frame);
+	}
+
+	@Override
+	public ByteBuffer readFrame() throws IOException {
+		return get().readFrame();
+	}
+
+	@Override
+	public long sendFile(Path file) throws IOException {
+		return get().sendFile(file);
+	}
+
+	@Override
+	public long receiveFile(Path file) throws IOException {
+		return get().receiveFile(file);
+	}
+
+	@Override
+	public CompletableFuture<Void> sendAsync(Serializable message) {
+		pendingSends.incrementAndGet();
+		if (released) {
+			pendingSends.decrementAndGet();
+			return failedLease();
+		}
+
+		CompletableFuture<Void> future = connection.sendAsync(message);
+		future.whenComplete((result, e) -> pendingSends.decrementAndGet());
+		return future;
+	}
+
+	@Override
+	public <T extends Serializable> CompletableFuture<T> receiveAsync() {
+		asyncReader = true;
+		if (released) {
+			return failedLease();
+		}
+		return connection.receiveAsync();
+	}
+
+	@Override
+	public CompletableFuture<DataPackage> requestAsync(DataPackage request) {
+		asyncReader = true;
+		if (released) {
+			return failedLease();
+		}
+		return connection.requestAsync(request);
+	}
+
+	/**
+	 * Gets the {@link MultiplexedConnection} of the pooled connection. Since
+	 * it keeps reading the connection, the connection is closed instead of
+	 * handed back to the pool once this <code>PooledConnection</code> is
+	 * closed.
+	 * 
+	 * @return The multiplexed connection.
+	 * @throws IllegalStateException
+	 *             If this connection has already been returned to its pool.
+	 */
+	@Override
+	public MultiplexedConnection getMultiplexedConnection() {
+		asyncReader = true;
+		if (released) {
+			throw new IllegalStateException("Connection has been returned to its pool");
+		}
+		return connection.getMultiplexedConnection();
+	}
+
+	private static <T> CompletableFuture<T> failedLease() {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(new IOException("Connection has been returned to its pool"));
+		return future;
+	}
+
+	@Override
+	public int getMaxFrameLength() {
+		return connection.getMaxFrameLength();
+	}
+
+	@Override
+	public void setMaxFrameLength(int maxFrameLength) {
+		connection.setMaxFrameLength(maxFrameLength);
+	}
+
+	@Override
+	public void writeMessage(Serializable message) throws IOException {
+		get().writeMessage(message);
+	}
+
+	@Override
+	public <T extends Serializable> T readMessage() throws IOException, ClassNotFoundException {
+		return get().readMessage();
+	}
+
+	@Override
+	public MessageCodec getMessageCodec() {
+		return connection.getMessageCodec();
+	}
+
+	@Override
+	public void setMessageCodec(MessageCodec codec) {
+		connection.setMessageCodec(codec);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		get().flush();
+	}
+
+	@Override
+	public void setFlushPolicy(FlushPolicy policy) {
+		connection.setFlushPolicy(policy);
+	}
+
+	@Override
+	public FlushPolicy getFlushPolicy() {
+		return connection.getFlushPolicy();
+	}
+
+	@Override
+	public WriteStatistics getWriteStatistics() {
+		return connection.getWriteStatistics();
+	}
+
+	@Override
+	public boolean negotiateCompression(boolean enabled) throws IOException {
+		return get().negotiateCompression(enabled);
+	}
+
+	@Override
+	public boolean isCompressionEnabled() {
+		return connection.isCompressionEnabled();
+	}
+
+	@Override
+	public CompressionStatistics getCompressionStatistics() {
+		return connection.getCompressionStatistics();
+	}
+
+	@Override
+	public int getCompressionLevel() {
+		return connection.getCompressionLevel();
+	}
+
+	@Override
+	public void setCompressionLevel(int compressionLevel) {
+		connection.setCompressionLevel(compressionLevel);
+	}
+
+	@Override
+	public int getCompressionThreshold() {
+		return connection.getCompressionThreshold();
+	}
+
+	@Override
+	public void setCompressionThreshold(int compressionThreshold) {
+		connection.setCompressionThreshold(compressionThreshold);
+	}
+
+	@Override
+	public long getLastReadTime() {
+		return connection.getLastReadTime();
+	}
+
+	@Override
+	public long getLastWriteTime() {
+		return connection.getLastWriteTime();
+	}
+
+	@Override
+	public long getLastActivityTime() {
+		return connection.getLastActivityTime();
+	}
+
+	@Override
+	public String toString() {
+		return connection.toString();
+	}
+}
@@ -8,7 +8,8 @@ package org.jnetwork;
  */
 public enum Protocol {
 	TCP(new TCPNetworkFactory(), "Transmission Control Protocol"), UDP(new UDPNetworkFactory(),
-			"User Datagram Protocol"), SSL(new SSLNetworkFactory(), "Secure Socket Layer");
+			"User Datagram Protocol"), SSL(new SSLNetworkFactory(), "Secure Socket Layer"), UNIX(
+					new UnixNetworkFactory(), "Unix Domain Socket");
 
 	private NetworkFactory factory;
 	private String protocolName;
@@ -0,0 +1,37 @@
+package org.jnetwork;
+
+/**
+ * An enumeration of the reasons an {@link AdmissionController} can turn a
+ * client away.
+ * 
+ * @see AdmissionController#getRejections(RejectionReason)
+ * 
+ * @author Lucas Baizer
+ */
+public enum RejectionReason {
+	/**
+	 * The client's address already had as many connections or requests in
+	 * flight as it is allowed.
+	 */
+	ADDRESS_CONNECTION_LIMIT,
+	/**
+	 * The client's address was accepted more often than its accept rate
+	 * allows.
+	 */
+	ADDRESS_ACCEPT_RATE,
+	/**
+	 * Connections were accepted from all addresses more often than the accept
+	 * rate allows.
+	 */
+	ACCEPT_RATE,
+	/**
+	 * The client's address made more HTTP requests than its request rate
+	 * allows.
+	 */
+	ADDRESS_REQUEST_RATE,
+	/**
+	 * HTTP requests were made from all addresses more often than the request
+	 * rate allows.
+	 */
+	REQUEST_RATE;
+}
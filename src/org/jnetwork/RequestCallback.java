@@ -0,0 +1,25 @@
+package org.jnetwork;
+
+/**
+ * Used in pair with a {@link MultiplexedConnectionCallback} to answer the
+ * requests sent by a {@link MultiplexedConnection}.
+ *
+ * @author Lucas Baizer
+ */
+public interface RequestCallback {
+	/**
+	 * This method gets called on when a client sends a request.
+	 *
+	 * @param event
+	 *            - The client that sent the request.
+	 * @param request
+	 *            - The request.
+	 * @return The response, which is sent back to the client as the reply to
+	 *         <code>request</code>, or <code>null</code> to send an empty
+	 *         reply.
+	 * @throws Exception
+	 *             If the request fails. The exception is sent back to the
+	 *             client, and fails its request.
+	 */
+	public DataPackage requestReceived(ClientData event, DataPackage request) throws Exception;
+}
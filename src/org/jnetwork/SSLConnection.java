@@ -3,14 +3,11 @@ package org.jnetwork;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.security.Security;
 import java.util.Objects;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
-import com.sun.net.ssl.internal.ssl.Provider;
-
 /**
  * An SSL representation of the Connection object. Used for writing and reading
  * data with an SSLServer.
@@ -18,10 +15,6 @@ import com.sun.net.ssl.internal.ssl.Provider;
  * @author Lucas Baizer
  */
 public class SSLConnection extends TCPConnection {
-	static {
-		Security.addProvider(new Provider());
-	}
-
 	SSLConnection() {
 	}
 
@@ -39,8 +32,7 @@ public class SSLConnection extends TCPConnection {
 
 		if (connectNow) {
 			this.connection = SSLSocketFactory.getDefault().createSocket(host, port);
-			this.out = connection.getOutputStream();
-			this.in = connection.getInputStream();
+			setupStreams();
 		} else {
 			this.address = new InetSocketAddress(host, port);
 		}
@@ -49,7 +41,6 @@ public class SSLConnection extends TCPConnection {
 	@Override
 	public void connect() throws UnknownHostException, IOException {
 		this.connection = SSLSocketFactory.getDefault().createSocket(address.getHostString(), address.getPort());
-		this.out = connection.getOutputStream();
-		this.in = connection.getInputStream();
+		setupStreams();
 	}
 }
@@ -1,16 +1,12 @@
 package org.jnetwork;
 
 import java.io.IOException;
+import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketException;
-import java.security.Security;
 
-import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSocket;
 
-import com.sun.net.ssl.internal.ssl.Provider;
-
 /**
  * An SSL representation of the Server object. Used for sending and receiving
  * data with SSLConnection objects.
@@ -20,19 +16,12 @@ import com.sun.net.ssl.internal.ssl.Provider;
 public class SSLServer extends TCPServer implements SecureServer {
 	protected Keystore keystore;
 
-	static void ensureProvider() {
-	}
-
 	static void setStaticKeystore(Keystore keystore) {
 		System.setProperty("javax.net.ssl.keyStore", keystore.getKeystoreFile().getAbsolutePath());
 		System.setProperty("javax.net.ssl.trustStore", keystore.getKeystoreFile().getAbsolutePath());
 		System.setProperty("javax.net.ssl.keyStorePassword", keystore.getPassword());
 	}
 
-	static {
-		Security.addProvider(new Provider());
-	}
-
 	public SSLServer(int port, TCPConnectionCallback clientSocketThread, Keystore keystore) {
 		super(port, clientSocketThread);
 
@@ -50,37 +39,48 @@ public class SSLServer extends TCPServer implements SecureServer {
 		return this.keystore;
 	}
 
+	/**
+	 * SSL sockets have no channel, so an <code>SSLServer</code> cannot accept
+	 * clients through a <code>ServerSocketChannel</code>.
+	 * 
+	 * @throws ServerException
+	 *             If <code>socketChannels</code> is <code>true</code>, or the
+	 *             server has already been started.
+	 */
 	@Override
-	public void start() throws IOException {
-		if (boundAddress == null) {
-			server = SSLServerSocketFactory.getDefault().createServerSocket(getBoundPort(),
-					capacity == -1 ? 0 : capacity);
-		} else {
-			server = SSLServerSocketFactory.getDefault().createServerSocket(getBoundPort(),
-					capacity == -1 ? 0 : capacity, boundAddress);
+	public void setSocketChannels(boolean socketChannels) throws ServerException {
+		if (socketChannels) {
+			throw new ServerException("SSLServer cannot accept clients through a ServerSocketChannel");
 		}
+		super.setSocketChannels(socketChannels);
+	}
 
-		super.startDispatch();
+	@Override
+	protected ServerSocket createServerSocket() throws IOException {
+		return SSLServerSocketFactory.getDefault().createServerSocket();
 	}
 
 	@Override
-	protected void launchNewThread() throws IOException {
-		SSLSocket client;
-		ClientData event;
-		try {
-			client = (SSLSocket) ((SSLServerSocket) server).accept();
-			if (connectionHandler != null && !((ConnectionHandler<Socket>) connectionHandler).handle(this, client)) {
-				client.close();
-				launchNewThread();
-			} else {
+	protected void launchNewThread(int acceptor) throws IOException {
+		SSLSocket client = (SSLSocket) accept(acceptor);
+		if (client == null) {
+			return;
+		}
+		if (!admit(client)) {
+			getMetrics().markRejected();
+			client.close();
+		} else {
+			getMetrics().markAccepted();
+			ClientData event;
+			try {
 				event = new ClientData(new SSLConnection(client));
-				super.launchThreadForConnectedClient(event, "SSLServer");
-			}
-		} catch (SocketException e) {
-			if (e.getMessage().equals("socket closed")) {
-				return;
+			} catch (IOException e) {
+				release(client);
+				client.close();
+				throw e;
 			}
-			throw e;
+			releaseOnClose(event, client);
+			super.launchThreadForConnectedClient(event, "SSLServer");
 		}
 	}
 
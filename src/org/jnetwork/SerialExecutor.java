@@ -0,0 +1,57 @@
+package org.jnetwork;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on a shared
+ * <code>Executor</code>. No thread is held while there is nothing to run.
+ *
+ * @author Lucas Baizer
+ */
+class SerialExecutor implements Executor {
+	private final Executor executor;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		tasks.add(command);
+		schedule();
+	}
+
+	private void schedule() {
+		if (!tasks.isEmpty() && running.compareAndSet(false, true)) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					drain();
+				}
+			});
+		}
+	}
+
+	private void drain() {
+		try {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (Throwable e) {
+					Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+				}
+			}
+		} finally {
+			running.set(false);
+		}
+
+		// a task may have been added after the queue was found empty
+		schedule();
+	}
+}
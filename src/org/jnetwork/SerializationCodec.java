@@ -0,0 +1,55 @@
+package org.jnetwork;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link MessageCodec} that uses Java serialization, the same format as the
+ * object streams of a {@link Connection}. It can encode any
+ * <code>Serializable</code> object, at the cost of size and speed. This is the
+ * default codec.
+ *
+ * @author Lucas Baizer
+ */
+public class SerializationCodec implements MessageCodec {
+	@Override
+	public ByteBuffer encode(Serializable obj) throws IOException {
+		ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream();
+		try (ObjectOutputStream w = new ObjectOutputStream(out)) {
+			w.writeObject(obj);
+		}
+		return out.toByteBuffer();
+	}
+
+	@Override
+	public Serializable decode(ByteBuffer data) throws IOException, ClassNotFoundException {
+		byte[] bytes;
+		int off;
+		if (data.hasArray()) {
+			bytes = data.array();
+			off = data.arrayOffset() + data.position();
+		} else {
+			bytes = new byte[data.remaining()];
+			data.duplicate().get(bytes);
+			off = 0;
+		}
+
+		try (ObjectInputStream r = new ObjectInputStream(new ByteArrayInputStream(bytes, off, data.remaining()))) {
+			return (Serializable) r.readObject();
+		}
+	}
+
+	/**
+	 * Hands out its buffer without copying it.
+	 */
+	private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+}
@@ -2,8 +2,22 @@ package org.jnetwork;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
 import java.net.SocketAddress;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * A server-side utility used for easily handling an infinite amount of
@@ -16,13 +30,9 @@ import java.util.ArrayList;
  * <code>ClientConnectionCallback.clientConnected</code> will be called and
  * parameterized with the <code>ClientData</code>. <br>
  * <br>
- * Whenever the <code>Server</code> is asked to run any function that deals with
- * the connected clients, it will call {@link Server#refresh()}. For each closed
- * client that that is still in the <code>Server</code>'s {@code List
- * <ClientData>}, the client will be removed, and every
- * <code>RefreshListener.clientDisconnect</code> added with
- * {@link Server#addRefreshListener(RefreshListener)} will be called and
- * parameterized with the client's <code>ClientData</code>. <br>
+ * The connected clients are kept in a {@link ClientRegistry}. When a client's
+ * <code>Connection</code> is closed, the client is removed from the registry
+ * straight away with {@link Server#removeClient(ClientData)}. <br>
  * <br>
  * When {@link Server#removeClient(ClientData)} is called, every
  * <code>ClientDisconnectionCallback</code> added with
@@ -30,6 +40,9 @@ import java.util.ArrayList;
  * will be called and parameterized with the client's <code>ClientData</code> .
  * <br>
  * <br>
+ * {@link #close()} stops the server straight away. To let connected clients
+ * finish first, such as during a rolling restart, use
+ * {@link #shutdown(long, TimeUnit)}.
  * 
  * @see java.net.ServerSocket
  * @see org.jnetwork.ClientData
@@ -45,12 +58,28 @@ public abstract class Server implements Closeable {
 	private ClientConnectionCallback thread;
 	private int port;
 	protected int capacity = -1;
-	protected ArrayList<ClientData> clients = new ArrayList<ClientData>();
-	private ArrayList<ClientDisconnectionCallback> removers = new ArrayList<ClientDisconnectionCallback>();
+	protected final ClientRegistry clients = new ClientRegistry();
+	private List<ClientDisconnectionCallback> removers = new CopyOnWriteArrayList<ClientDisconnectionCallback>();
 	protected ConnectionHandler<?> connectionHandler;
 	private boolean started;
 	private Object closeWaiter = new Object();
 	protected ExceptionCallback exceptionCallback;
+	private Executor clientExecutor;
+	private EventLoopGroup eventLoopGroup;
+	private long idleTimeout;
+	private long readTimeout;
+	private HashedTimingWheel idleWheel;
+	private volatile MessageCodec messageCodec = new SerializationCodec();
+	private long outboundLowWatermark = OutboundQueue.DEFAULT_LOW_WATERMARK;
+	private long outboundHighWatermark = OutboundQueue.DEFAULT_HIGH_WATERMARK;
+	private long outboundLimit = OutboundQueue.DEFAULT_LIMIT;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DISCONNECT;
+	private WritabilityCallback writabilityCallback;
+	private final ServerMetrics metrics = new ServerMetrics(this);
+	private boolean jmxEnabled = true;
+	private ObjectName mbeanName;
+
+	private static final AtomicInteger SERVER_IDS = new AtomicInteger();
 
 	/**
 	 * Constructs a new <code>Server</code> and starts a new
@@ -73,50 +102,194 @@ public abstract class Server implements Closeable {
 		return this;
 	}
 
+	private Thread[] dispatchers;
+	private int acceptorCount = 1;
+	protected volatile boolean closed;
+	protected volatile boolean shuttingDown;
+	private final AtomicInteger activeTasks = new AtomicInteger();
+	private final Object taskLock = new Object();
+
 	/**
-	 * Starts the dispatch thread.
+	 * Starts the dispatch threads, one for each acceptor.
 	 * 
 	 * @throws ServerException
 	 *             If the server has already been started.
 	 */
-	private Thread dispatcher;
-
 	protected void startDispatch() throws ServerException {
 		if (started)
 			throw new ServerException("Server already started");
 
 		started = true;
+		registerMetrics();
 
-		dispatcher = new Thread(getDispatcher(), "JNetwork-Server-Accept-Dispatcher");
-		dispatcher.start();
+		dispatchers = new Thread[acceptorCount];
+		for (int i = 0; i < acceptorCount; i++) {
+			dispatchers[i] = new Thread(getDispatcher(i), acceptorCount == 1 ? "JNetwork-Server-Accept-Dispatcher"
+					: "JNetwork-Server-Accept-Dispatcher-" + i);
+			dispatchers[i].start();
+		}
 	}
 
-	private Runnable getDispatcher() {
+	private Runnable getDispatcher(int acceptor) {
 		return new Runnable() {
 			@Override
 			public void run() {
-				try {
-					launchNewThread();
-				} catch (Exception e) {
-					if (exceptionCallback != null) {
-						exceptionCallback.exceptionThrown(e);
-						dispatcher = new Thread(getDispatcher());
-						dispatcher.start();
-					} else {
-						Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(),
-								e);
+				while (!closed) {
+					if (shuttingDown && !isDispatchingClients()) {
+						return;
+					}
+					try {
+						launchNewThread(acceptor);
+					} catch (Exception e) {
+						// shutdown closes the listening socket under an acceptor that is waiting on it
+						if (closed || (shuttingDown && !isDispatchingClients())) {
+							return;
+						}
+						metrics.markDispatcherError();
+
+						if (exceptionCallback != null) {
+							exceptionCallback.exceptionThrown(e);
+						} else {
+							Thread.currentThread().getUncaughtExceptionHandler()
+									.uncaughtException(Thread.currentThread(), e);
+							return;
+						}
 					}
 				}
 			}
 		};
 	}
 
+	/**
+	 * @return If the dispatch threads also serve connected clients, so they
+	 *         keep running while the server shuts down. By default, they only
+	 *         accept new clients, and stop once the server starts shutting
+	 *         down.
+	 */
+	protected boolean isDispatchingClients() {
+		return false;
+	}
+
+	/**
+	 * Sets the number of threads that accept new clients concurrently. Servers
+	 * that support it give each acceptor its own listening socket, so accepting
+	 * scales across cores when many clients connect at once.
+	 * 
+	 * @param count
+	 *            - The number of acceptor threads.
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 * @throws IllegalArgumentException
+	 *             If <code>count</code> is less than 1.
+	 */
+	public void setAcceptorCount(int count) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+		if (count < 1) {
+			throw new IllegalArgumentException("There must be at least one acceptor");
+		}
+
+		this.acceptorCount = count;
+	}
+
+	/**
+	 * @return The number of threads that accept new clients concurrently.
+	 */
+	public int getAcceptorCount() {
+		return acceptorCount;
+	}
+
+	/**
+	 * @return The server's metrics.
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets if the server's metrics should be registered with the platform
+	 * MBean server when it starts, under a name like
+	 * <code>org.jnetwork:type=TCPServer,port=8080,id=1</code>. They are
+	 * unregistered when the server is closed. This is enabled by default.
+	 * 
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setJMXEnabled(boolean enabled) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+
+		this.jmxEnabled = enabled;
+	}
+
+	/**
+	 * @return If the server's metrics are registered with the platform MBean
+	 *         server when it starts.
+	 */
+	public boolean isJMXEnabled() {
+		return jmxEnabled;
+	}
+
+	/**
+	 * Registers the server's metrics with the platform MBean server, if that
+	 * is enabled. Called when the server starts.
+	 */
+	protected synchronized void registerMetrics() {
+		if (!jmxEnabled || mbeanName != null) {
+			return;
+		}
+
+		String type = getClass().getSimpleName().isEmpty() ? "Server" : getClass().getSimpleName();
+		try {
+			ObjectName name = new ObjectName(
+					"org.jnetwork:type=" + type + ",port=" + port + ",id=" + SERVER_IDS.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+			mbeanName = name;
+		} catch (JMException e) {
+			if (exceptionCallback == null) {
+				Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+			} else {
+				exceptionCallback.exceptionThrown(e);
+			}
+		}
+	}
+
+	private synchronized void unregisterMetrics() {
+		if (mbeanName == null) {
+			return;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+		} catch (JMException e) {
+			// already unregistered
+		}
+		mbeanName = null;
+	}
+
+	/**
+	 * @return If the server has been closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return If {@link #shutdown(long, TimeUnit)} has been called. Client
+	 *         callbacks that run for as long as their client is connected can
+	 *         check this to finish early.
+	 */
+	public boolean isShuttingDown() {
+		return shuttingDown;
+	}
+
 	public void setCapacity(int cap) throws ServerException {
 		if (started) {
 			throw new ServerException("Server already started");
 		}
 
-		clients.ensureCapacity(cap);
 		this.capacity = cap;
 	}
 
@@ -124,6 +297,371 @@ public abstract class Server implements Closeable {
 		return this.capacity;
 	}
 
+	/**
+	 * Sets the <code>Executor</code> used to run the callback of each
+	 * connected client. If no executor is set, a new platform thread is
+	 * started for every client. See {@link ClientExecutors} for the built-in
+	 * executors, including one that uses virtual threads.
+	 * 
+	 * @param executor
+	 *            - The executor, or <code>null</code> to start a new thread for
+	 *            every client.
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setClientExecutor(Executor executor) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+
+		this.clientExecutor = executor;
+	}
+
+	/**
+	 * @return The <code>Executor</code> used to run the callback of each
+	 *         connected client, or <code>null</code> if a new thread is started
+	 *         for every client.
+	 */
+	public Executor getClientExecutor() {
+		return clientExecutor;
+	}
+
+	/**
+	 * Sets the group of event loops the server's clients are pinned to. Each
+	 * client is given one of the group's loops when it connects, available
+	 * from {@link ClientData#getEventLoop()}, and keeps it until it is
+	 * removed, so state that is only touched from tasks run on that loop
+	 * needs no locking. Only a <code>UDPServer</code> runs its callback on
+	 * the loop, that of the address each datagram came from. A
+	 * <code>TCPServer</code>, <code>SSLServer</code> or
+	 * <code>UnixServer</code> still runs each client's callback on its own
+	 * thread, or on the client executor, and a <code>NIOTCPServer</code> on its selector thread, so only
+	 * the tasks the application runs on the loop itself are serialized with
+	 * each other. The group is not closed when the server is.
+	 * 
+	 * @param group
+	 *            - The group, or <code>null</code> to not pin clients to event
+	 *            loops.
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setEventLoopGroup(EventLoopGroup group) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+
+		this.eventLoopGroup = group;
+	}
+
+	/**
+	 * @return The group of event loops the server's clients are pinned to, or
+	 *         <code>null</code> if there is none.
+	 */
+	public EventLoopGroup getEventLoopGroup() {
+		return eventLoopGroup;
+	}
+
+	/**
+	 * Sets how long a client may go without reading or writing any data before
+	 * it is removed from the server. A removed client's
+	 * {@link ClientData#getDisconnectReason()} is
+	 * {@link DisconnectReason#IDLE_TIMEOUT}. Clients that are kept alive are
+	 * never removed.
+	 * 
+	 * @param timeout
+	 *            - The timeout, or <code>0</code> to never time out.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setIdleTimeout(long timeout, TimeUnit unit) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+
+		this.idleTimeout = unit.toNanos(Math.max(timeout, 0));
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the timeout in.
+	 * @return The idle timeout, or <code>0</code> if clients never time out.
+	 */
+	public long getIdleTimeout(TimeUnit unit) {
+		return unit.convert(idleTimeout, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Sets how long a client may go without the server reading any data from
+	 * it before it is removed from the server. A removed client's
+	 * {@link ClientData#getDisconnectReason()} is
+	 * {@link DisconnectReason#READ_TIMEOUT}. Clients that are kept alive are
+	 * never removed.
+	 * 
+	 * @param timeout
+	 *            - The timeout, or <code>0</code> to never time out.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setReadTimeout(long timeout, TimeUnit unit) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+
+		this.readTimeout = unit.toNanos(Math.max(timeout, 0));
+	}
+
+	/**
+	 * @param unit
+	 *            - The unit to return the timeout in.
+	 * @return The read timeout, or <code>0</code> if clients never time out.
+	 */
+	public long getReadTimeout(TimeUnit unit) {
+		return unit.convert(readTimeout, TimeUnit.NANOSECONDS);
+	}
+
+	private synchronized HashedTimingWheel getIdleWheel() {
+		if (idleWheel == null) {
+			long shortest = idleTimeout == 0 ? readTimeout
+					: readTimeout == 0 ? idleTimeout : Math.min(idleTimeout, readTimeout);
+			if (shortest == 0) {
+				// only handshake deadlines are scheduled, which need no precision
+				shortest = TimeUnit.SECONDS.toNanos(16);
+			}
+			// a tick of a sixteenth of the timeout keeps clients from lingering
+			// much past it, without waking up more often than needed
+			long tick = Math.min(Math.max(shortest / 16, TimeUnit.MILLISECONDS.toNanos(1)),
+					TimeUnit.SECONDS.toNanos(1));
+			idleWheel = new HashedTimingWheel("JNetwork-Server-Idle-Reaper-" + port, tick, TimeUnit.NANOSECONDS,
+					512);
+		}
+		return idleWheel;
+	}
+
+	/**
+	 * Removes a client with {@link DisconnectReason#READ_TIMEOUT} once a
+	 * timeout expires, unless the returned timeout is cancelled first. This
+	 * bounds a handshake that reads from a client before it is handed to the
+	 * callback.
+	 * 
+	 * @param client
+	 *            - The client.
+	 * @param timeout
+	 *            - The timeout, in nanoseconds.
+	 * @return The timeout, to cancel once the handshake is done.
+	 */
+	HashedTimingWheel.Timeout scheduleReadDeadline(ClientData client, long timeout) {
+		return getIdleWheel().schedule(new Runnable() {
+			@Override
+			public void run() {
+				expire(client, DisconnectReason.READ_TIMEOUT);
+			}
+		}, timeout, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Removes a client that has timed out. The timing wheel's single thread
+	 * serves every client of the server, so the removal, which closes the
+	 * connection and runs the disconnection listeners, is handed to
+	 * {@link Connection#getAsyncExecutor()}. The connection is aborted rather
+	 * than closed, since a peer that has gone quiet may not take any data
+	 * still buffered for it.
+	 */
+	private void expire(ClientData client, DisconnectReason reason) {
+		Runnable removal = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					removeClient(client, reason, true);
+				} catch (IOException e) {
+					if (exceptionCallback == null) {
+						Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(),
+								e);
+					} else {
+						exceptionCallback.exceptionThrown(e);
+					}
+				}
+			}
+		};
+
+		try {
+			Connection.getAsyncExecutor().execute(removal);
+		} catch (RejectedExecutionException e) {
+			removal.run();
+		}
+	}
+
+	private void scheduleIdleCheck(ClientData client, long delay) {
+		client.setIdleTimeout(getIdleWheel().schedule(new Runnable() {
+			@Override
+			public void run() {
+				checkIdle(client);
+			}
+		}, delay, TimeUnit.NANOSECONDS));
+	}
+
+	/**
+	 * Removes a client if it has timed out, or otherwise checks it again at its
+	 * next deadline. Activity on a connection only updates its timestamps, so
+	 * a client is rescheduled at most once per timeout.
+	 */
+	private void checkIdle(ClientData client) {
+		if (!clients.contains(client)) {
+			return;
+		}
+
+		Connection connection = client.getConnection();
+		long now = System.nanoTime();
+		long next = Long.MAX_VALUE;
+		DisconnectReason reason = null;
+
+		if (idleTimeout > 0) {
+			long remaining = connection.getLastActivityTime() + idleTimeout - now;
+			if (remaining <= 0) {
+				reason = DisconnectReason.IDLE_TIMEOUT;
+			} else {
+				next = remaining;
+			}
+		}
+		if (reason == null && readTimeout > 0) {
+			long remaining = connection.getLastReadTime() + readTimeout - now;
+			if (remaining <= 0) {
+				reason = DisconnectReason.READ_TIMEOUT;
+			} else {
+				next = Math.min(next, remaining);
+			}
+		}
+
+		if (reason == null) {
+			scheduleIdleCheck(client, next);
+		} else if (client.isKeepAlive()) {
+			scheduleIdleCheck(client, reason == DisconnectReason.IDLE_TIMEOUT ? idleTimeout : readTimeout);
+		} else {
+			expire(client, reason);
+		}
+	}
+
+	/**
+	 * Runs a task on behalf of a connected client, either on a new thread or on
+	 * the executor set with {@link #setClientExecutor(Executor)}. While the
+	 * task runs, the thread running it is the client's holding thread.
+	 * 
+	 * @param event
+	 *            - The client the task is run for.
+	 * @param name
+	 *            - The name of the thread running the task.
+	 * @param task
+	 *            - The task.
+	 */
+	protected void executeClientTask(ClientData event, String name, Runnable task) {
+		beginTask();
+		if (clientExecutor == null) {
+			Thread thr = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						endTask();
+					}
+				}
+			}, name);
+			event.setHoldingThread(thr);
+			thr.start();
+			return;
+		}
+
+		clientExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Thread current = Thread.currentThread();
+				String oldName = current.getName();
+				current.setName(name);
+				event.setHoldingThread(current);
+				try {
+					task.run();
+				} finally {
+					endTask();
+					event.setHoldingThread(null);
+					current.setName(oldName);
+					// don't leak an interrupt into the executor's next task
+					Thread.interrupted();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Runs a task on behalf of a connected client on the client's event loop,
+	 * after every task submitted to that loop before it. The loop's thread is
+	 * shared with other clients, so it is never made the client's holding
+	 * thread, and removing the client does not interrupt it. If the client has
+	 * no event loop, the task is run with
+	 * {@link #executeClientTask(ClientData, String, Runnable)} instead.
+	 * 
+	 * @param event
+	 *            - The client the task is run for.
+	 * @param name
+	 *            - The name of the thread running the task, if it is not run
+	 *            on an event loop.
+	 * @param task
+	 *            - The task.
+	 */
+	protected void executeEventTask(ClientData event, String name, Runnable task) {
+		EventLoop loop = event.getEventLoop();
+		if (loop == null) {
+			executeClientTask(event, name, task);
+			return;
+		}
+
+		beginTask();
+		try {
+			loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						endTask();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			endTask();
+			throw e;
+		}
+	}
+
+	/**
+	 * Counts a client task as in flight, so that
+	 * {@link #shutdown(long, TimeUnit)} waits for it. Every call must be
+	 * followed by a call to {@link #endTask()} once the task finishes.
+	 */
+	protected void beginTask() {
+		activeTasks.incrementAndGet();
+	}
+
+	/**
+	 * Counts a client task started with {@link #beginTask()} as finished.
+	 */
+	protected void endTask() {
+		if (activeTasks.decrementAndGet() == 0 && shuttingDown) {
+			synchronized (taskLock) {
+				taskLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of client tasks that have not yet finished.
+	 */
+	public int getActiveTaskCount() {
+		return activeTasks.get();
+	}
+
 	/**
 	 * Starts the server, so that clients can connect to it.
 	 * 
@@ -177,10 +715,10 @@ public abstract class Server implements Closeable {
 	 * @return SocketAddress[] - The array containing the client's addresses.
 	 */
 	public SocketAddress[] getClientsAddresses() {
-		refresh();
-		SocketAddress[] addresses = new SocketAddress[clients.size()];
-		for (int i = 0; i < clients.size(); i++) {
-			addresses[i] = clients.get(i).getConnection().getRemoteSocketAddress();
+		ClientData[] connected = clients.toArray();
+		SocketAddress[] addresses = new SocketAddress[connected.length];
+		for (int i = 0; i < connected.length; i++) {
+			addresses[i] = connected[i].getConnection().getRemoteSocketAddress();
 		}
 
 		return addresses;
@@ -212,20 +750,104 @@ public abstract class Server implements Closeable {
 	 *             closed.
 	 */
 	public void removeClient(ClientData client) throws IOException {
-		if (!client.isKeepAlive() && clients.contains(client)) {
-			clients.remove(client);
+		removeClient(client, DisconnectReason.REMOVED);
+	}
+
+	/**
+	 * Removes the client from the server's list of clients and closes it if it
+	 * was not already closed.
+	 * 
+	 * @param client
+	 *            - The ClientData of the client.
+	 * @param reason
+	 *            - Why the client is being removed.
+	 * 
+	 * @throws IOException
+	 *             If there is an error closing the client if it is not already
+	 *             closed.
+	 */
+	protected void removeClient(ClientData client, DisconnectReason reason) throws IOException {
+		// a client that has fallen this far behind would only hold up the close
+		removeClient(client, reason, reason == DisconnectReason.OUTBOUND_OVERFLOW);
+	}
 
-			refresh();
-			if (!client.getConnection().isClosed())
-				client.getConnection().close();
-			if (client.getHoldingThread().isAlive())
-				client.getHoldingThread().interrupt();
+	private void removeClient(ClientData client, DisconnectReason reason, boolean abort) throws IOException {
+		if (!client.isKeepAlive() && clients.remove(client)) {
+			client.setDisconnectReason(reason);
+			releaseEventLoop(client);
+			if (client.getIdleTimeout() != null)
+				client.getIdleTimeout().cancel();
+			if (!client.getConnection().isClosed()) {
+				if (abort)
+					client.getConnection().abort();
+				else
+					client.getConnection().close();
+			}
+			Thread holder = client.getHoldingThread();
+			if (holder != null && holder != Thread.currentThread() && holder.isAlive())
+				holder.interrupt();
 
 			for (ClientDisconnectionCallback listener : removers) {
 				listener.clientDisconnected(client);
 			}
+		}
+	}
 
-			refresh();
+	private static void releaseEventLoop(ClientData client) {
+		// the loop stays set, so tasks already submitted for the client still run on it
+		if (client.getEventLoop() != null) {
+			client.getEventLoop().clientRemoved();
+		}
+	}
+
+	/**
+	 * Adds a newly connected client to the server's clients. When the client's
+	 * <code>Connection</code> is closed, the client is removed with
+	 * {@link #removeClient(ClientData)}, or, if it is kept alive, silently
+	 * dropped from the server's clients.
+	 * 
+	 * @param client
+	 *            - The ClientData of the client.
+	 */
+	protected void addClient(ClientData client) {
+		if (!clients.add(client)) {
+			return;
+		}
+		client.setServer(this);
+		client.getConnection().setMetrics(metrics);
+		if (eventLoopGroup != null && client.getEventLoop() == null) {
+			client.setEventLoop(eventLoopGroup.next());
+		}
+		if (client.getEventLoop() != null) {
+			client.getEventLoop().clientAdded();
+		}
+
+		client.getConnection().addCloseListener(new Runnable() {
+			@Override
+			public void run() {
+				if (client.isKeepAlive()) {
+					if (clients.remove(client)) {
+						releaseEventLoop(client);
+					}
+					return;
+				}
+
+				try {
+					removeClient(client, DisconnectReason.CLOSED);
+				} catch (IOException e) {
+					if (exceptionCallback == null) {
+						Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(),
+								e);
+					} else {
+						exceptionCallback.exceptionThrown(e);
+					}
+				}
+			}
+		});
+
+		if (idleTimeout > 0 || readTimeout > 0) {
+			scheduleIdleCheck(client, idleTimeout == 0 ? readTimeout
+					: readTimeout == 0 ? idleTimeout : Math.min(idleTimeout, readTimeout));
 		}
 	}
 
@@ -244,7 +866,10 @@ public abstract class Server implements Closeable {
 	 *             closed.
 	 */
 	public void removeClient(SocketAddress addr) throws IOException {
-		removeClient(getClient(addr));
+		ClientData client = getClient(addr);
+		if (client != null) {
+			removeClient(client);
+		}
 	}
 
 	/**
@@ -259,11 +884,7 @@ public abstract class Server implements Closeable {
 	 *         <code>SocketAddress</code> as the <code>addr</code> parameter.
 	 */
 	public ClientData getClient(SocketAddress addr) {
-		for (ClientData evt : clients) {
-			if (evt.getConnection().getRemoteSocketAddress().toString().equals(addr.toString()))
-				return evt;
-		}
-		return null;
+		return clients.get(addr);
 	}
 
 	/**
@@ -280,31 +901,21 @@ public abstract class Server implements Closeable {
 	 * @see org.jnetwork.ClientData
 	 */
 	public ClientData getClient(Connection socket) {
-		for (ClientData evt : clients) {
-			if (evt.getConnection().equals(socket))
-				return evt;
-		}
-		return null;
+		return clients.get(socket);
 	}
 
 	/**
-	 * Removes all of the closed clients that are still in the server's internal
-	 * {@code List<ClientData>}.
+	 * Removes all of the closed clients that are still in the server's
+	 * clients. Clients are removed as soon as their <code>Connection</code> is
+	 * closed, so this is only needed for connections whose underlying socket
+	 * was closed without going through {@link Connection#close()}.
 	 **/
 	public void refresh() {
-		ArrayList<ClientData> closedClients = new ArrayList<>();
-
-		for (ClientData ce : clients) {
-			Connection client = ce.getConnection();
-			if (client.isClosed()) {
-				closedClients.add(ce);
+		for (ClientData client : clients) {
+			if (client.getConnection().isClosed() && clients.remove(client)) {
+				releaseEventLoop(client);
 			}
 		}
-
-		// prevent CME
-		for (ClientData closedClient : closedClients) {
-			clients.remove(closedClient);
-		}
 	}
 
 	/**
@@ -316,7 +927,207 @@ public abstract class Server implements Closeable {
 	 * @see java.net.Socket
 	 */
 	public ClientData[] getClients() {
-		return clients.toArray(new ClientData[clients.size()]);
+		return clients.toArray();
+	}
+
+	/**
+	 * Gets an unmodifiable, live view of every connected client. Unlike
+	 * {@link #getClients()}, this does not copy the server's clients, so it is
+	 * cheap to call and iterate over often.
+	 * 
+	 * @return The view of the connected clients.
+	 */
+	public Collection<ClientData> getClientView() {
+		return clients.view();
+	}
+
+	/**
+	 * @return The number of connected clients.
+	 */
+	public int getClientCount() {
+		return clients.size();
+	}
+
+	/**
+	 * Sends a message to every connected client. The message is encoded once
+	 * with the server's {@link MessageCodec}, and the same frame is queued on
+	 * each client's {@link OutboundQueue}, so this never waits on a client's
+	 * socket and a slow client does not hold up the others. A client whose
+	 * queue is full is handled by its {@link OverflowPolicy}, except that a
+	 * queue that would block skips the message instead, as with
+	 * {@link OutboundQueue#tryOffer(ByteBuffer)}. Clients read the message
+	 * with {@link Connection#readMessage()}.
+	 * 
+	 * @param message
+	 *            - The message to send.
+	 * @return The number of clients the message was queued for.
+	 * @throws IOException
+	 *             If the message cannot be encoded.
+	 * 
+	 * @see #setMessageCodec(MessageCodec)
+	 */
+	public int broadcast(Serializable message) throws IOException {
+		return multicast(message, clients.view());
+	}
+
+	/**
+	 * Sends a message to every connected client that matches a filter, in the
+	 * same way as {@link #broadcast(Serializable)}.
+	 * 
+	 * @param message
+	 *            - The message to send.
+	 * @param filter
+	 *            - The filter clients must match.
+	 * @return The number of clients the message was queued for.
+	 * @throws IOException
+	 *             If the message cannot be encoded.
+	 */
+	public int multicast(Serializable message, Predicate<? super ClientData> filter) throws IOException {
+		ByteBuffer frame = null;
+		int sent = 0;
+		for (ClientData client : clients.view()) {
+			if (filter.test(client)) {
+				if (frame == null) {
+					frame = messageCodec.encode(message);
+				}
+				if (client.getOutboundQueue().tryOffer(frame)) {
+					sent++;
+				}
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Sends a message to each of the given clients, in the same way as
+	 * {@link #broadcast(Serializable)}. The clients do not need to be
+	 * connected to this server.
+	 * 
+	 * @param message
+	 *            - The message to send.
+	 * @param recipients
+	 *            - The clients to send the message to.
+	 * @return The number of clients the message was queued for.
+	 * @throws IOException
+	 *             If the message cannot be encoded.
+	 */
+	public int multicast(Serializable message, Collection<ClientData> recipients) throws IOException {
+		if (recipients.isEmpty()) {
+			return 0;
+		}
+
+		ByteBuffer frame = messageCodec.encode(message);
+		int sent = 0;
+		for (ClientData client : recipients) {
+			if (client.getOutboundQueue().tryOffer(frame)) {
+				sent++;
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * @return The codec messages sent with {@link #broadcast(Serializable)}
+	 *         are encoded with.
+	 */
+	public MessageCodec getMessageCodec() {
+		return messageCodec;
+	}
+
+	/**
+	 * Sets the codec messages sent with {@link #broadcast(Serializable)} are
+	 * encoded with. Clients must read them with the same codec. By default, a
+	 * {@link SerializationCodec} is used.
+	 * 
+	 * @param codec
+	 *            - The codec.
+	 */
+	public void setMessageCodec(MessageCodec codec) {
+		if (codec == null) {
+			throw new NullPointerException("codec");
+		}
+		this.messageCodec = codec;
+	}
+
+	/**
+	 * Sets the watermarks of each client's {@link OutboundQueue}. See
+	 * {@link OutboundQueue#setWatermarks(long, long)}.
+	 * 
+	 * @param low
+	 *            - The number of queued bytes at which a client becomes
+	 *            writable again.
+	 * @param high
+	 *            - The number of queued bytes at which a client becomes
+	 *            unwritable.
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setOutboundWatermarks(long low, long high) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+		OutboundQueue.checkWatermarks(low, high);
+
+		this.outboundLowWatermark = low;
+		this.outboundHighWatermark = high;
+	}
+
+	/**
+	 * Sets the limit of each client's {@link OutboundQueue}, and what happens
+	 * when it is reached. See
+	 * {@link OutboundQueue#setLimit(long, OverflowPolicy)}.
+	 * 
+	 * @param limit
+	 *            - The most bytes queued for a client.
+	 * @param policy
+	 *            - The overflow policy.
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setOutboundLimit(long limit, OverflowPolicy policy) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+		if (limit < 1) {
+			throw new IllegalArgumentException("The limit must be at least 1 byte");
+		}
+		if (policy == null) {
+			throw new NullPointerException("policy");
+		}
+
+		this.outboundLimit = limit;
+		this.overflowPolicy = policy;
+	}
+
+	/**
+	 * Sets the callback told when a client's {@link OutboundQueue} crosses one
+	 * of its watermarks.
+	 * 
+	 * @param callback
+	 *            - The callback, or <code>null</code> for none.
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setWritabilityCallback(WritabilityCallback callback) throws ServerException {
+		if (started) {
+			throw new ServerException("Server already started");
+		}
+
+		this.writabilityCallback = callback;
+	}
+
+	/**
+	 * @return The callback told when a client's {@link OutboundQueue} crosses
+	 *         one of its watermarks, or <code>null</code> if there is none.
+	 */
+	public WritabilityCallback getWritabilityCallback() {
+		return writabilityCallback;
+	}
+
+	void configureOutboundQueue(OutboundQueue queue) {
+		queue.setWatermarks(outboundLowWatermark, outboundHighWatermark);
+		queue.setLimit(outboundLimit, overflowPolicy);
+		queue.setWritabilityCallback(writabilityCallback);
 	}
 
 	/**
@@ -334,12 +1145,148 @@ public abstract class Server implements Closeable {
 	}
 
 	/**
-	 * Closes the <code>ServerSocket</code>.
+	 * Shuts the server down gracefully:
+	 * <ol>
+	 * <li>New clients stop being accepted, and {@link #isShuttingDown()}
+	 * becomes <code>true</code>.</li>
+	 * <li>Client tasks already running, such as the callbacks of connected
+	 * clients, are given until the deadline to finish.</li>
+	 * <li>Frames left in clients' {@link OutboundQueue}s are given until the
+	 * deadline to be written.</li>
+	 * <li>Every remaining client is closed, all at once, with the reason
+	 * {@link DisconnectReason#SHUTDOWN}. A client that has not closed by the
+	 * deadline is dropped without flushing.</li>
+	 * <li>The server is closed with {@link #close()}.</li>
+	 * </ol>
+	 * 
+	 * @param timeout
+	 *            - How long to wait for clients before closing them.
+	 * @param unit
+	 *            - The unit of <code>timeout</code>.
+	 * @return <code>true</code> if every client task finished and every queued
+	 *         frame was written before the deadline, or <code>false</code> if
+	 *         some had to be cut short.
+	 * @throws IOException
+	 *             If an error occurs while closing the server.
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws IOException {
+		long deadline = System.nanoTime() + unit.toNanos(Math.max(timeout, 0));
+
+		synchronized (this) {
+			if (shuttingDown || closed) {
+				return false;
+			}
+			shuttingDown = true;
+		}
+		stopAccepting();
+
+		boolean drained = awaitTasks(deadline);
+		drained &= awaitOutboundQueues(deadline);
+		closeClients(deadline);
+		close();
+
+		return drained;
+	}
+
+	/**
+	 * Stops accepting new clients, while leaving connected clients open.
+	 * Called when the server starts shutting down; by default, nothing more is
+	 * needed than the dispatch threads seeing {@link #isShuttingDown()}.
+	 * 
+	 * @throws IOException
+	 *             If an error occurs while closing the listening socket.
+	 */
+	protected void stopAccepting() throws IOException {
+	}
+
+	private boolean awaitTasks(long deadline) {
+		synchronized (taskLock) {
+			long remaining;
+			while (activeTasks.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(taskLock, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return activeTasks.get() == 0;
+	}
+
+	private boolean awaitOutboundQueues(long deadline) {
+		boolean flushed = true;
+		for (ClientData client : clients.toArray()) {
+			OutboundQueue queue = client.peekOutboundQueue();
+			if (queue != null && !queue.awaitFlush(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				flushed = false;
+			}
+		}
+		return flushed;
+	}
+
+	/**
+	 * Closes every client concurrently, so one slow client does not hold up
+	 * the rest. Clients are dropped without flushing once the deadline has
+	 * passed, including those whose close is still waiting on their peer.
+	 */
+	private void closeClients(long deadline) {
+		ClientData[] remaining = clients.toArray();
+		if (remaining.length == 0) {
+			return;
+		}
+
+		CountDownLatch closing = new CountDownLatch(remaining.length);
+		for (ClientData client : remaining) {
+			Connection.getAsyncExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						removeClient(client, DisconnectReason.SHUTDOWN, deadline - System.nanoTime() <= 0);
+					} catch (IOException e) {
+						// the client is gone either way
+					} finally {
+						closing.countDown();
+					}
+				}
+			});
+		}
+
+		try {
+			if (closing.await(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (ClientData client : remaining) {
+			try {
+				client.getConnection().abort();
+			} catch (IOException e) {
+				// the client is gone either way
+			}
+		}
+	}
+
+	/**
+	 * Closes the <code>ServerSocket</code>. Connected clients are not waited
+	 * for; see {@link #shutdown(long, TimeUnit)}.
 	 * 
 	 * @see java.io.Closeable#close()
 	 */
 	@Override
 	public void close() throws IOException {
+		closed = true;
+		synchronized (taskLock) {
+			taskLock.notifyAll();
+		}
+		synchronized (this) {
+			if (idleWheel != null) {
+				idleWheel.stop();
+			}
+		}
+		unregisterMetrics();
+
 		synchronized (closeWaiter) {
 			closeWaiter.notifyAll();
 		}
@@ -355,13 +1302,28 @@ public abstract class Server implements Closeable {
 	}
 
 	/**
-	 * Launches a new thread so a new client can connect.
+	 * Waits for a single client to connect and hands it off to its own thread.
+	 * Called repeatedly by each dispatch thread until the server is closed.
 	 * 
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
 	protected abstract void launchNewThread() throws IOException, InterruptedException;
 
+	/**
+	 * Waits for a single client to connect on the given acceptor. By default,
+	 * every acceptor shares {@link #launchNewThread()}.
+	 * 
+	 * @param acceptor
+	 *            - The index of the acceptor, from <code>0</code> to
+	 *            <code>getAcceptorCount() - 1</code>.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected void launchNewThread(int acceptor) throws IOException, InterruptedException {
+		launchNewThread();
+	}
+
 	/**
 	 * @return the ClientConnectionCallback specified at instantiation.
 	 */
@@ -376,4 +1338,73 @@ public abstract class Server implements Closeable {
 	public void setConnectionHandler(ConnectionHandler<?> connectionHandler) {
 		this.connectionHandler = connectionHandler;
 	}
+
+	/**
+	 * Asks the server's connection handler whether to admit a client. Every
+	 * client is admitted if there is no handler. If the handler throws, the
+	 * client is closed before the exception is passed on.
+	 * 
+	 * @param client
+	 *            - The client, which is passed to the connection handler.
+	 * @return If the client should be admitted.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T extends Closeable> boolean admit(T client) {
+		ConnectionHandler<T> handler = (ConnectionHandler<T>) connectionHandler;
+		if (handler == null) {
+			return true;
+		}
+
+		try {
+			return handler.handle(this, client);
+		} catch (RuntimeException | Error e) {
+			try {
+				client.close();
+			} catch (IOException e1) {
+				e.addSuppressed(e1);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Calls {@link ConnectionHandler#release(Server, Object)} for a client
+	 * admitted by the server's connection handler once the client's
+	 * <code>Connection</code> is closed.
+	 * 
+	 * @param event
+	 *            - The client.
+	 * @param client
+	 *            - What was passed to the connection handler for the client.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> void releaseOnClose(ClientData event, T client) {
+		ConnectionHandler<T> handler = (ConnectionHandler<T>) connectionHandler;
+		if (handler == null) {
+			return;
+		}
+
+		event.getConnection().addCloseListener(new Runnable() {
+			@Override
+			public void run() {
+				handler.release(Server.this, client);
+			}
+		});
+	}
+
+	/**
+	 * Calls {@link ConnectionHandler#release(Server, Object)} for a client the
+	 * server's connection handler admitted but the server could not go on to
+	 * serve.
+	 * 
+	 * @param client
+	 *            - What was passed to the connection handler for the client.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> void release(T client) {
+		ConnectionHandler<T> handler = (ConnectionHandler<T>) connectionHandler;
+		if (handler != null) {
+			handler.release(this, client);
+		}
+	}
 }
\ No newline at end of file
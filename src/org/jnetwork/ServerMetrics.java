@@ -0,0 +1,135 @@
+package org.jnetwork;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a {@link Server} does, without locking: the connections it
+ * accepts and rejects, the bytes it reads and writes, the errors its dispatch
+ * threads run into, and how long its client callbacks take. For a
+ * {@link TCPServer}, a callback runs for as long as its client is connected;
+ * for a {@link UDPServer} or {@link NIOTCPServer}, once for every datagram or
+ * read; and for an {@link HTTPServer}, once for every request.
+ * 
+ * @see Server#getMetrics()
+ * 
+ * @author Lucas Baizer
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+	private final Server server;
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder dispatcherErrors = new LongAdder();
+	private final LatencyHistogram handlerLatency = new LatencyHistogram();
+
+	ServerMetrics(Server server) {
+		this.server = server;
+	}
+
+	void markAccepted() {
+		accepted.increment();
+	}
+
+	void markRejected() {
+		rejected.increment();
+	}
+
+	void markRead(int bytes) {
+		bytesRead.add(bytes);
+	}
+
+	void markWritten(int bytes) {
+		bytesWritten.add(bytes);
+	}
+
+	void markDispatcherError() {
+		dispatcherErrors.increment();
+	}
+
+	@Override
+	public long getAcceptedConnections() {
+		return accepted.sum();
+	}
+
+	@Override
+	public long getRejectedConnections() {
+		return rejected.sum();
+	}
+
+	@Override
+	public int getActiveClients() {
+		return server.getClientCount();
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	@Override
+	public long getDispatcherErrors() {
+		return dispatcherErrors.sum();
+	}
+
+	/**
+	 * @return The histogram of how long each client callback took.
+	 */
+	public LatencyHistogram getHandlerLatency() {
+		return handlerLatency;
+	}
+
+	@Override
+	public long getHandlerInvocations() {
+		return handlerLatency.getCount();
+	}
+
+	@Override
+	public double getHandlerLatencyMeanMicros() {
+		return handlerLatency.getMean(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public double getHandlerLatencyP50Micros() {
+		return handlerLatency.getPercentile(50, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public double getHandlerLatencyP99Micros() {
+		return handlerLatency.getPercentile(99, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public double getHandlerLatencyP999Micros() {
+		return handlerLatency.getPercentile(99.9, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public double getHandlerLatencyMaxMicros() {
+		return handlerLatency.getMax(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public void reset() {
+		accepted.reset();
+		rejected.reset();
+		bytesRead.reset();
+		bytesWritten.reset();
+		dispatcherErrors.reset();
+		handlerLatency.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "ServerMetrics:[accepted=" + getAcceptedConnections() + ",rejected=" + getRejectedConnections()
+				+ ",activeClients=" + getActiveClients() + ",bytesRead=" + getBytesRead() + ",bytesWritten="
+				+ getBytesWritten() + ",dispatcherErrors=" + getDispatcherErrors() + ",handlerLatency="
+				+ handlerLatency + "]";
+	}
+}
@@ -0,0 +1,79 @@
+package org.jnetwork;
+
+/**
+ * The management interface of {@link ServerMetrics}, through which every
+ * started {@link Server} is registered with the platform MBean server under
+ * the domain <code>org.jnetwork</code>.
+ * 
+ * @author Lucas Baizer
+ */
+public interface ServerMetricsMBean {
+	/**
+	 * @return The number of connections accepted.
+	 */
+	public long getAcceptedConnections();
+
+	/**
+	 * @return The number of connections rejected by the server's
+	 *         {@link ConnectionHandler}.
+	 */
+	public long getRejectedConnections();
+
+	/**
+	 * @return The number of connected clients.
+	 */
+	public int getActiveClients();
+
+	/**
+	 * @return The number of bytes read from clients.
+	 */
+	public long getBytesRead();
+
+	/**
+	 * @return The number of bytes written to clients.
+	 */
+	public long getBytesWritten();
+
+	/**
+	 * @return The number of errors that interrupted a dispatch thread.
+	 */
+	public long getDispatcherErrors();
+
+	/**
+	 * @return The number of times a client callback has been run.
+	 */
+	public long getHandlerInvocations();
+
+	/**
+	 * @return The mean time a client callback took, in microseconds.
+	 */
+	public double getHandlerLatencyMeanMicros();
+
+	/**
+	 * @return The median time a client callback took, in microseconds.
+	 */
+	public double getHandlerLatencyP50Micros();
+
+	/**
+	 * @return The 99th percentile of the time a client callback took, in
+	 *         microseconds.
+	 */
+	public double getHandlerLatencyP99Micros();
+
+	/**
+	 * @return The 99.9th percentile of the time a client callback took, in
+	 *         microseconds.
+	 */
+	public double getHandlerLatencyP999Micros();
+
+	/**
+	 * @return The longest time a client callback took, in microseconds.
+	 */
+	public double getHandlerLatencyMaxMicros();
+
+	/**
+	 * Clears every counter and the handler latencies. The number of connected
+	 * clients is not affected.
+	 */
+	public void reset();
+}
@@ -1,5 +1,6 @@
 package org.jnetwork;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -7,6 +8,10 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 
 /**
@@ -20,6 +25,8 @@ public class TCPConnection extends Connection {
 	protected OutputStream out;
 	protected InputStream in;
 	protected InetSocketAddress address;
+	private CoalescingOutputStream coalescer;
+	private FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
 
 	protected TCPConnection() {
 		super();
@@ -50,8 +57,22 @@ public class TCPConnection extends Connection {
 		super(socket.getInetAddress().getHostAddress(), socket.getPort());
 
 		this.connection = socket;
-		this.out = socket.getOutputStream();
-		this.in = socket.getInputStream();
+		setupStreams();
+	}
+
+	/**
+	 * Constructs a new Connection object built off of a connected, blocking
+	 * <code>SocketChannel</code>. Unlike a plain <code>Socket</code>, a socket
+	 * with a channel can have files sent through it without copying them
+	 * through the Java heap; see {@link #sendFile(Path)}.
+	 * 
+	 * @param channel
+	 *            - The channel.
+	 * @throws IOException
+	 *             If an error occurs during instantiating the streams.
+	 */
+	public TCPConnection(SocketChannel channel) throws IOException {
+		this(channel.socket());
 	}
 
 	/**
@@ -109,8 +130,7 @@ public class TCPConnection extends Connection {
 
 		if (connectNow) {
 			this.connection = new Socket(host, port);
-			this.out = connection.getOutputStream();
-			this.in = connection.getInputStream();
+			setupStreams();
 		} else {
 			this.address = new InetSocketAddress(host, port);
 		}
@@ -130,8 +150,52 @@ public class TCPConnection extends Connection {
 	 */
 	public void connect() throws UnknownHostException, IOException {
 		this.connection = new Socket(address.getHostString(), address.getPort());
-		this.out = connection.getOutputStream();
-		this.in = connection.getInputStream();
+		setupStreams();
+	}
+
+	/**
+	 * Creates the input and output streams of the <code>Connection</code> from
+	 * its internal <code>Socket</code>.
+	 * 
+	 * @throws IOException
+	 *             If an error occurs while getting the socket's streams.
+	 */
+	protected void setupStreams() throws IOException {
+		this.coalescer = new CoalescingOutputStream(connection.getOutputStream(), flushPolicy);
+		this.out = new MonitoredOutputStream(coalescer, this);
+		this.in = new MonitoredInputStream(connection.getInputStream(), this);
+	}
+
+	/**
+	 * Sends a file. If the socket has a channel, the file is handed straight
+	 * from the file system to the socket with
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * which on most platforms never copies it into the Java heap.
+	 */
+	@Override
+	public long sendFile(Path file) throws IOException {
+		SocketChannel socketChannel = connection.getChannel();
+		if (socketChannel == null) {
+			return super.sendFile(file);
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			writeFileHeader(length);
+			// the header and anything written before it must reach the socket first
+			flush();
+
+			long sent = 0;
+			while (sent < length) {
+				long transferred = channel.transferTo(sent, length - sent, socketChannel);
+				if (transferred <= 0 && sent + transferred >= channel.size()) {
+					throw new EOFException("File shrank while it was being sent");
+				}
+				sent += transferred;
+				markWritten((int) Math.min(transferred, Integer.MAX_VALUE));
+			}
+			return sent;
+		}
 	}
 
 	@Override
@@ -161,11 +225,51 @@ public class TCPConnection extends Connection {
 
 	@Override
 	public void close() throws IOException {
+		if (coalescer != null && !connection.isClosed()) {
+			try {
+				coalescer.flushBuffer();
+			} catch (IOException e) {
+				// the socket is being closed anyway
+			}
+		}
 		connection.close();
 
 		super.close();
 	}
 
+	@Override
+	void abort() throws IOException {
+		connection.close();
+
+		super.close();
+	}
+
+	/**
+	 * Sets when data written to this connection is handed off to the socket.
+	 * With any policy other than {@link FlushPolicy#IMMEDIATE}, small writes
+	 * are buffered and written to the socket together.
+	 * 
+	 * @param policy
+	 *            - The policy.
+	 */
+	@Override
+	public void setFlushPolicy(FlushPolicy policy) {
+		this.flushPolicy = Objects.requireNonNull(policy);
+		if (coalescer != null) {
+			coalescer.setPolicy(policy);
+		}
+	}
+
+	@Override
+	public FlushPolicy getFlushPolicy() {
+		return flushPolicy;
+	}
+
+	@Override
+	public WriteStatistics getWriteStatistics() {
+		return coalescer == null ? super.getWriteStatistics() : coalescer.getStatistics();
+	}
+
 	@Override
 	public void write(int b) throws IOException {
 		out.write(b);
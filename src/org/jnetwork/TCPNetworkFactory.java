@@ -17,8 +17,16 @@ public class TCPNetworkFactory extends NetworkFactory {
 		return new TCPConnection(host, port);
 	}
 
+	/**
+	 * Creates a new TCP server. If <code>l</code> is a
+	 * {@link NIOConnectionCallback}, a non-blocking {@link NIOTCPServer} is
+	 * created; otherwise, a {@link TCPServer} is created.
+	 */
 	@Override
 	public Server createServer(int port, ClientConnectionCallback l) throws ServerException {
+		if (l instanceof NIOConnectionCallback) {
+			return new NIOTCPServer(port, (NIOConnectionCallback) l);
+		}
 		return new TCPServer(port, (TCPConnectionCallback) l);
 	}
 }
@@ -2,9 +2,13 @@ package org.jnetwork;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A TCP representation of the Server object. Used for sending and receiving
@@ -13,8 +17,18 @@ import java.net.SocketException;
  * @author Lucas Baizer
  */
 public class TCPServer extends Server {
+	/**
+	 * How long a client has to negotiate compression if the server has no
+	 * read timeout, 10 seconds.
+	 */
+	public static final long DEFAULT_NEGOTIATION_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
 	protected ServerSocket server;
+	protected ServerSocket[] acceptSockets;
 	protected InetAddress boundAddress;
+	protected boolean reusePort = true;
+	protected boolean socketChannels = false;
+	protected boolean compression = false;
 
 	public TCPServer(int port, TCPConnectionCallback clientSocketThread) {
 		super(port, clientSocketThread);
@@ -22,66 +36,182 @@ public class TCPServer extends Server {
 
 	@Override
 	public void start() throws IOException {
-		if (boundAddress == null) {
-			this.server = new ServerSocket(getBoundPort(), capacity == -1 ? 0 : capacity);
-		} else {
-			this.server = new ServerSocket(getBoundPort(), capacity == -1 ? 0 : capacity, boundAddress);
+		int backlog = capacity == -1 ? 0 : capacity;
+
+		server = createServerSocket();
+		boolean reuse = reusePort && getAcceptorCount() > 1
+				&& server.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+		acceptSockets = new ServerSocket[reuse ? getAcceptorCount() : 1];
+		acceptSockets[0] = server;
+
+		if (reuse) {
+			server.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+		}
+		server.bind(new InetSocketAddress(boundAddress, getBoundPort()), backlog);
+
+		// every acceptor binds its own socket to the same port, and the kernel
+		// balances incoming connections between them
+		for (int i = 1; i < acceptSockets.length; i++) {
+			acceptSockets[i] = createServerSocket();
+			acceptSockets[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+			acceptSockets[i].bind(new InetSocketAddress(boundAddress, server.getLocalPort()), backlog);
 		}
 
 		super.startDispatch();
 	}
 
-	@Override
-	protected void launchNewThread() throws IOException {
-		Socket client;
+	/**
+	 * Creates an unbound <code>ServerSocket</code> for an acceptor to listen
+	 * on.
+	 * 
+	 * @return The <code>ServerSocket</code>.
+	 * @throws IOException
+	 *             If an error occurs while creating the socket.
+	 */
+	protected ServerSocket createServerSocket() throws IOException {
+		if (socketChannels) {
+			return ServerSocketChannel.open().socket();
+		}
+		return new ServerSocket();
+	}
+
+	/**
+	 * Waits for a client to connect to the given acceptor's socket.
+	 * 
+	 * @param acceptor
+	 *            - The index of the acceptor.
+	 * @return The client's <code>Socket</code>, or <code>null</code> if the
+	 *         server was closed while waiting.
+	 * @throws IOException
+	 *             If an error occurs while accepting the client.
+	 */
+	protected Socket accept(int acceptor) throws IOException {
+		ServerSocket socket = acceptSockets[acceptor % acceptSockets.length];
 		try {
-			client = server.accept();
+			return socket.accept();
 		} catch (SocketException e) {
-			if (e.getMessage().equals("socket closed")) {
-				return;
+			if (socket.isClosed()) {
+				return null;
 			}
 			throw e;
 		}
-		if (connectionHandler != null && !((ConnectionHandler<Socket>) connectionHandler).handle(this, client)) {
+	}
+
+	@Override
+	protected void launchNewThread() throws IOException {
+		launchNewThread(0);
+	}
+
+	@Override
+	protected void launchNewThread(int acceptor) throws IOException {
+		Socket client = accept(acceptor);
+		if (client == null) {
+			return;
+		}
+		if (!admit(client)) {
+			getMetrics().markRejected();
 			client.close();
-			launchNewThread();
 		} else {
-			ClientData event = new ClientData(new TCPConnection(client));
+			getMetrics().markAccepted();
+			ClientData event;
+			try {
+				event = new ClientData(new TCPConnection(client));
+			} catch (IOException e) {
+				release(client);
+				client.close();
+				throw e;
+			}
+			releaseOnClose(event, client);
 			launchThreadForConnectedClient(event, "TCPServer");
 		}
 	}
 
 	protected void launchThreadForConnectedClient(ClientData event, String name) throws IOException {
-		refresh();
-		clients.add(event);
-		refresh();
-
-		Thread thr = new Thread(new Runnable() {
-			@Override
-			public void run() {
-				((TCPConnectionCallback) getClientConnectionListener()).clientConnected(event);
-				try {
-					removeClient(event);
-				} catch (IOException e) {
-					if (exceptionCallback == null) {
-						Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(),
-								e);
-					} else {
-						exceptionCallback.exceptionThrown(e);
+		addClient(event);
+
+		executeClientTask(event, "JNetwork-" + name + "-Thread-" + event.getConnection().getRemoteSocketAddress(),
+				new Runnable() {
+					@Override
+					public void run() {
+						try {
+							if (negotiate(event)) {
+								long start = System.nanoTime();
+								try {
+									((TCPConnectionCallback) getClientConnectionListener()).clientConnected(event);
+								} finally {
+									getMetrics().getHandlerLatency().recordSince(start);
+								}
+							}
+						} finally {
+							// a callback that throws must not leave the socket or its admission open
+							try {
+								removeClient(event, DisconnectReason.CLOSED);
+							} catch (IOException e) {
+								if (exceptionCallback == null) {
+									Thread.currentThread().getUncaughtExceptionHandler()
+											.uncaughtException(Thread.currentThread(), e);
+								} else {
+									exceptionCallback.exceptionThrown(e);
+								}
+							}
+						}
 					}
+				});
+	}
+
+	/**
+	 * Negotiates compression with a client that just connected, if the server
+	 * compresses. A client that does not negotiate within the read timeout, or
+	 * {@link #DEFAULT_NEGOTIATION_TIMEOUT} if there is none, is removed.
+	 * 
+	 * @return If the client should be handed to the callback.
+	 */
+	private boolean negotiate(ClientData event) {
+		if (!compression) {
+			return true;
+		}
+
+		long timeout = getReadTimeout(TimeUnit.NANOSECONDS);
+		HashedTimingWheel.Timeout deadline = scheduleReadDeadline(event,
+				timeout == 0 ? DEFAULT_NEGOTIATION_TIMEOUT : timeout);
+		try {
+			event.getConnection().negotiateCompression(true);
+			return true;
+		} catch (IOException e) {
+			// a client removed for taking too long is not an error
+			if (event.getDisconnectReason() != DisconnectReason.READ_TIMEOUT) {
+				if (exceptionCallback == null) {
+					Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+				} else {
+					exceptionCallback.exceptionThrown(e);
 				}
 			}
-		});
-		event.setHoldingThread(thr);
-		thr.setName("JNetwork-" + name + "-Thread-" + event.getConnection().getRemoteSocketAddress());
-		thr.start();
+			return false;
+		} finally {
+			deadline.cancel();
+		}
+	}
 
-		launchNewThread();
+	/**
+	 * Closes every acceptor's listening socket.
+	 */
+	@Override
+	protected void stopAccepting() throws IOException {
+		if (acceptSockets != null) {
+			for (ServerSocket socket : acceptSockets) {
+				socket.close();
+			}
+		}
 	}
 
 	@Override
 	public void close() throws IOException {
-		server.close();
+		closed = true;
+		if (acceptSockets != null) {
+			for (ServerSocket socket : acceptSockets) {
+				socket.close();
+			}
+		}
 		super.close();
 	}
 
@@ -105,4 +235,80 @@ public class TCPServer extends Server {
 	public void setBoundAddress(InetAddress boundAddress) {
 		this.boundAddress = boundAddress;
 	}
+
+	/**
+	 * @return If each acceptor binds its own socket with
+	 *         <code>SO_REUSEPORT</code> when there is more than one acceptor.
+	 */
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	/**
+	 * Sets if each acceptor should bind its own socket with
+	 * <code>SO_REUSEPORT</code> when there is more than one acceptor. If this
+	 * is disabled, or the platform does not support <code>SO_REUSEPORT</code>,
+	 * every acceptor shares a single socket.
+	 */
+	public void setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+	}
+
+	/**
+	 * @return If clients are accepted through a
+	 *         <code>ServerSocketChannel</code>, so that every client's socket
+	 *         has a channel.
+	 */
+	public boolean isSocketChannels() {
+		return socketChannels;
+	}
+
+	/**
+	 * Sets if clients should be accepted through a
+	 * <code>ServerSocketChannel</code>, so that every client's socket has a
+	 * channel and files can be sent to it without copying them through the
+	 * Java heap; see {@link Connection#sendFile(java.nio.file.Path)}. A
+	 * socket with a channel is closed if a thread blocked on it is
+	 * interrupted.
+	 * 
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setSocketChannels(boolean socketChannels) throws ServerException {
+		if (server != null) {
+			throw new ServerException("Server already started");
+		}
+		this.socketChannels = socketChannels;
+	}
+
+	/**
+	 * @return If compression is negotiated with every client as soon as it
+	 *         connects.
+	 */
+	public boolean isCompression() {
+		return compression;
+	}
+
+	/**
+	 * Sets if compression should be negotiated with every client as soon as it
+	 * connects, before it is handed to the {@link TCPConnectionCallback}. Each
+	 * client must call {@link Connection#negotiateCompression(boolean)} right
+	 * after connecting, and its frames are compressed if it asks for it. A
+	 * client that does not negotiate within the server's read timeout, or
+	 * {@link #DEFAULT_NEGOTIATION_TIMEOUT} if there is none, is removed.
+	 * <p>
+	 * A {@link NIOTCPServer} cannot negotiate compression, since its
+	 * connections never block on a read;
+	 * {@link NIOTCPConnection#negotiateCompression(boolean)} throws an
+	 * <code>IOException</code>.
+	 * 
+	 * @throws ServerException
+	 *             If the server has already been started.
+	 */
+	public void setCompression(boolean compression) throws ServerException {
+		if (server != null) {
+			throw new ServerException("Server already started");
+		}
+		this.compression = compression;
+	}
 }
@@ -0,0 +1,65 @@
+package org.jnetwork;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that can be taken from by any number of threads without
+ * locking. Rather than counting tokens, the bucket keeps the time at which it
+ * will next be full: taking a token pushes that time back by one refill
+ * interval, and is refused if it would leave the bucket more than
+ * <code>burst</code> tokens in debt. This is the same limit as a counted
+ * bucket, but needs only one compare-and-set per token.
+ *
+ * @author Lucas Baizer
+ */
+final class TokenBucket {
+	private final long intervalNanos;
+	private final long burstNanos;
+	private final AtomicLong fullAt;
+
+	/**
+	 * @param ratePerSecond
+	 *            - The number of tokens added every second.
+	 * @param burst
+	 *            - The most tokens the bucket holds.
+	 */
+	TokenBucket(double ratePerSecond, int burst) {
+		if (ratePerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("The rate must be positive and the burst at least 1");
+		}
+
+		this.intervalNanos = Math.max((long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond), 1);
+		this.burstNanos = intervalNanos * burst;
+		this.fullAt = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Takes a token, if there is one.
+	 * 
+	 * @param now
+	 *            - The current {@link System#nanoTime()}.
+	 * @return If a token was taken.
+	 */
+	boolean tryTake(long now) {
+		while (true) {
+			long current = fullAt.get();
+			long next = Math.max(current, now) + intervalNanos;
+			if (next - now > burstNanos) {
+				return false;
+			}
+			if (fullAt.compareAndSet(current, next)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @param now
+	 *            - The current {@link System#nanoTime()}.
+	 * @return If the bucket holds every token it can.
+	 */
+	boolean isFull(long now) {
+		return fullAt.get() - now <= 0;
+	}
+}
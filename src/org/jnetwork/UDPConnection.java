@@ -6,7 +6,11 @@ import java.io.OutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.net.ProtocolException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
  * A UDP representation of the Connection object. Used for writing and reading
@@ -15,6 +19,8 @@ import java.net.SocketAddress;
  * @author Lucas Baizer
  */
 public class UDPConnection extends Connection {
+	private static final int MAX_DATAGRAM_LENGTH = 65507;
+
 	protected InputStream in;
 	protected OutputStream out;
 	protected InetSocketAddress targetAddress;
@@ -77,9 +83,40 @@ public class UDPConnection extends Connection {
 		};
 	}
 
+	/**
+	 * Files cannot be sent over a <code>UDPConnection</code>, since datagrams
+	 * can be lost or reordered. Send them over a {@link TCPConnection}
+	 * instead.
+	 * 
+	 * @throws IOException
+	 *             Always.
+	 */
+	@Override
+	public long sendFile(Path file) throws IOException {
+		throw new IOException("UDPConnection cannot send files, since datagrams can be lost or reordered");
+	}
+
+	/**
+	 * Files cannot be received over a <code>UDPConnection</code>, since
+	 * datagrams can be lost or reordered. Receive them over a
+	 * {@link TCPConnection} instead.
+	 * 
+	 * @throws IOException
+	 *             Always.
+	 */
+	@Override
+	public long receiveFile(Path file) throws IOException {
+		throw new IOException("UDPConnection cannot receive files, since datagrams can be lost or reordered");
+	}
+
+	/**
+	 * Gets the remote socket address of the <code>DatagramSocket</code>, or,
+	 * if it is not connected, the address that data is sent to.
+	 */
 	@Override
 	public SocketAddress getRemoteSocketAddress() {
-		return socket.getRemoteSocketAddress();
+		SocketAddress address = socket.getRemoteSocketAddress();
+		return address == null ? targetAddress : address;
 	}
 
 	@Override
@@ -105,12 +142,14 @@ public class UDPConnection extends Connection {
 	@Override
 	public void write(byte[] bytes, int offset, int length) throws IOException {
 		socket.send(new DatagramPacket(bytes, offset, length, targetAddress));
+		markWritten(length);
 	}
 
 	protected DatagramPacket readPacket() throws IOException {
 		byte[] receive = new byte[bufferSize];
 		DatagramPacket packet = new DatagramPacket(receive, receive.length);
 		socket.receive(packet);
+		markRead(packet.getLength());
 
 		return packet;
 	}
@@ -129,11 +168,48 @@ public class UDPConnection extends Connection {
 	public int read(byte[] arr, int off, int len) throws IOException {
 		DatagramPacket packet = new DatagramPacket(arr, off, len);
 		socket.receive(packet);
+		markRead(packet.getLength());
 
 		System.arraycopy(packet.getData(), 0, arr, off, len);
 		return packet.getLength();
 	}
 
+	/**
+	 * Writes a frame as a single datagram. A datagram already keeps message
+	 * boundaries, so no length is written before the frame.
+	 */
+	@Override
+	public void writeFrame(ByteBuffer frame) throws IOException {
+		checkFrameLength(frame.remaining());
+		frame = compressFrame(frame);
+		int length = frame.remaining();
+		if (frame.hasArray()) {
+			write(frame.array(), frame.arrayOffset() + frame.position(), length);
+		} else {
+			byte[] bytes = new byte[length];
+			frame.duplicate().get(bytes);
+			write(bytes, 0, length);
+		}
+	}
+
+	/**
+	 * Reads a single datagram as a frame.
+	 * 
+	 * @throws ProtocolException
+	 *             If the datagram is longer than the maximum frame length.
+	 */
+	@Override
+	public ByteBuffer readFrame() throws IOException {
+		// one spare byte shows whether the datagram was cut short to fit
+		byte[] receive = new byte[(int) Math.min(getMaxWireFrameLength(), MAX_DATAGRAM_LENGTH - 1) + 1];
+		DatagramPacket packet = new DatagramPacket(receive, receive.length);
+		socket.receive(packet);
+		markRead(packet.getLength());
+		checkWireFrameLength(packet.getLength());
+
+		return decompressFrame(ByteBuffer.wrap(Arrays.copyOf(receive, packet.getLength())));
+	}
+
 	/**
 	 * @return the default buffer size of data that is send and received.
 	 */
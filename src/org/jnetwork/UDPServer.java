@@ -31,35 +31,55 @@ public class UDPServer extends Server {
 		byte[] receiveData = new byte[bufferSize];
 		DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
 		server.receive(receivePacket);
+		if (shuttingDown) {
+			// the socket stays open for replies while shutting down, but new datagrams are dropped
+			return;
+		}
 
 		UDPConnection conn = new UDPConnection(server);
 		conn.setTargetAddress((InetSocketAddress) receivePacket.getSocketAddress());
 		final ClientData event = new ClientData(conn);
+		getMetrics().markAccepted();
+		getMetrics().markRead(receivePacket.getLength());
+		if (getEventLoopGroup() != null) {
+			// every datagram from the same address is handled in order on the same loop
+			event.setEventLoop(getEventLoopGroup().loopFor(receivePacket.getSocketAddress()));
+		}
 
-		refresh();
-		clients.add(event);
-		refresh();
+		addClient(event);
 
-		Thread thr = new Thread(new Runnable() {
+		executeEventTask(event, "JNetwork-UDPServer-Thread-" + receivePacket.getSocketAddress(), new Runnable() {
 			@Override
 			public void run() {
-				((UDPConnectionCallback) getClientConnectionListener()).dataReceived(event, receivePacket.getData());
+				long start = System.nanoTime();
 				try {
-					removeClient(event);
-				} catch (IOException e) {
-					if (exceptionCallback == null) {
-						Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(),
-								e);
-					} else {
-						exceptionCallback.exceptionThrown(e);
+					((UDPConnectionCallback) getClientConnectionListener()).dataReceived(event,
+							receivePacket.getData());
+				} finally {
+					getMetrics().getHandlerLatency().recordSince(start);
+					// a callback that throws must not leave the client counted on its event loop
+					try {
+						removeClient(event, DisconnectReason.CLOSED);
+					} catch (IOException e) {
+						if (exceptionCallback == null) {
+							Thread.currentThread().getUncaughtExceptionHandler()
+									.uncaughtException(Thread.currentThread(), e);
+						} else {
+							exceptionCallback.exceptionThrown(e);
+						}
 					}
 				}
 			}
-		}, "JNetwork-UDPServer-Thread-" + receivePacket.getSocketAddress());
-		event.setHoldingThread(thr);
-		thr.start();
+		});
+	}
 
-		launchNewThread();
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (server != null) {
+			server.close();
+		}
+		super.close();
 	}
 
 	/**
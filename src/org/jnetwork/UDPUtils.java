@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * A collection of some utilities that can be found useful when using UDP
@@ -58,4 +59,46 @@ public final class UDPUtils {
 			}
 		}
 	}
+
+	/**
+	 * Encodes an object into its byte format with a codec.
+	 * 
+	 * @param obj
+	 *            - The object to encode.
+	 * @param codec
+	 *            - The codec to encode the object with.
+	 * @return The encoded bytes.
+	 * @throws IOException
+	 *             If the object cannot be encoded.
+	 */
+	public static byte[] serializeObject(Serializable obj, MessageCodec codec) throws IOException {
+		ByteBuffer encoded = codec.encode(obj);
+		if (encoded.hasArray() && encoded.arrayOffset() == 0 && encoded.position() == 0
+				&& encoded.remaining() == encoded.array().length) {
+			return encoded.array();
+		}
+
+		byte[] bytes = new byte[encoded.remaining()];
+		encoded.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Decodes an object from its byte format with a codec.
+	 * 
+	 * @param obj
+	 *            - The encoded format to decode.
+	 * @param codec
+	 *            - The codec the object was encoded with.
+	 * @return The decoded object.
+	 * @throws IOException
+	 *             If the bytes are not a valid encoding.
+	 * @throws ClassNotFoundException
+	 *             If the encoded object's class cannot be found.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Serializable> T deserializeObject(byte[] obj, MessageCodec codec)
+			throws IOException, ClassNotFoundException {
+		return (T) codec.decode(ByteBuffer.wrap(obj));
+	}
 }
@@ -0,0 +1,314 @@
+package org.jnetwork;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A Unix domain socket representation of the Connection object. Used for
+ * writing and reading data with a {@link UnixServer} on the same host, without
+ * going through the TCP/IP stack. Everything that can be done with a
+ * {@link TCPConnection} can be done with a <code>UnixConnection</code>.
+ *
+ * @author Lucas Baizer
+ */
+public class UnixConnection extends Connection {
+	protected SocketChannel channel;
+	protected OutputStream out;
+	protected InputStream in;
+	protected Path path;
+	private CoalescingOutputStream coalescer;
+	private FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
+
+	/**
+	 * Constructs a new Connection object built off of a connected, blocking
+	 * Unix domain <code>SocketChannel</code>, such as one accepted by a
+	 * {@link UnixServer}.
+	 *
+	 * @param channel
+	 *            - The channel.
+	 * @throws IOException
+	 *             If an error occurs during instantiating the streams.
+	 */
+	public UnixConnection(SocketChannel channel) throws IOException {
+		super(null, -1);
+
+		this.channel = channel;
+		setupStreams();
+	}
+
+	/**
+	 * Connects to the {@link UnixServer} bound to <code>port</code>, at the
+	 * path given by {@link UnixServer#getSocketPath(int)}.
+	 *
+	 * @param port
+	 *            - The port of the server.
+	 * @throws IOException
+	 *             If an error occurs while connecting.
+	 */
+	public UnixConnection(int port) throws IOException {
+		this(UnixServer.getSocketPath(port), port);
+	}
+
+	/**
+	 * Connects to the {@link UnixServer} bound to a socket file.
+	 *
+	 * @param path
+	 *            - The path of the socket file.
+	 * @throws IOException
+	 *             If an error occurs while connecting.
+	 * @throws NullPointerException
+	 *             If <code>path</code> is <code>null</code>.
+	 */
+	public UnixConnection(Path path) throws IOException {
+		this(path, -1);
+	}
+
+	private UnixConnection(Path path, int port) throws IOException {
+		super(path.toString(), port);
+
+		this.path = path;
+		this.channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.connect(UnixDomainSocketAddress.of(path));
+			setupStreams();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The channel that the <code>Connection</code> is built off of.
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Creates the input and output streams of the <code>Connection</code> from
+	 * its internal <code>SocketChannel</code>.
+	 *
+	 * @throws IOException
+	 *             If an error occurs while creating the streams.
+	 */
+	protected void setupStreams() throws IOException {
+		this.coalescer = new CoalescingOutputStream(new ChannelOutputStream(channel), flushPolicy);
+		this.out = new MonitoredOutputStream(coalescer, this);
+		this.in = new MonitoredInputStream(new ChannelInputStream(channel), this);
+	}
+
+	/**
+	 * Sends a file, handing it straight from the file system to the socket
+	 * with
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+	 */
+	@Override
+	public long sendFile(Path file) throws IOException {
+		try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = fileChannel.size();
+			writeFileHeader(length);
+			// the header and anything written before it must reach the socket first
+			flush();
+
+			long sent = 0;
+			while (sent < length) {
+				long transferred = fileChannel.transferTo(sent, length - sent, channel);
+				if (transferred <= 0 && sent + transferred >= fileChannel.size()) {
+					throw new EOFException("File shrank while it was being sent");
+				}
+				sent += transferred;
+				markWritten((int) Math.min(transferred, Integer.MAX_VALUE));
+			}
+			return sent;
+		}
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	/**
+	 * Gets the address of the socket file at the other end of the connection.
+	 * A client's socket is usually not bound to a file, so on a server this is
+	 * usually an address with an empty path.
+	 */
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		try {
+			return channel.getRemoteAddress();
+		} catch (IOException e) {
+			return path == null ? null : UnixDomainSocketAddress.of(path);
+		}
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		try {
+			return channel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (coalescer != null && channel.isOpen()) {
+			try {
+				coalescer.flushBuffer();
+			} catch (IOException e) {
+				// the socket is being closed anyway
+			}
+		}
+		channel.close();
+
+		super.close();
+	}
+
+	@Override
+	void abort() throws IOException {
+		channel.close();
+
+		super.close();
+	}
+
+	@Override
+	public void setFlushPolicy(FlushPolicy policy) {
+		this.flushPolicy = Objects.requireNonNull(policy);
+		if (coalescer != null) {
+			coalescer.setPolicy(policy);
+		}
+	}
+
+	@Override
+	public FlushPolicy getFlushPolicy() {
+		return flushPolicy;
+	}
+
+	@Override
+	public WriteStatistics getWriteStatistics() {
+		return coalescer == null ? super.getWriteStatistics() : coalescer.getStatistics();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] bytes, int off, int len) throws IOException {
+		out.write(bytes, off, len);
+	}
+
+	@Override
+	public int read() throws IOException {
+		return in.read();
+	}
+
+	@Override
+	public int read(byte[] arr, int off, int len) throws IOException {
+		return in.read(arr, off, len);
+	}
+
+	@Override
+	public void setOutputStream(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void setInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public String toString() {
+		SocketAddress address = getRemoteSocketAddress();
+		return address == null ? "unix:" : "unix:" + address;
+	}
+
+	/**
+	 * Reads straight from a blocking channel. Unlike the streams from
+	 * <code>java.nio.channels.Channels</code>, reading does not hold a lock
+	 * that writing needs, so one thread can block reading while another
+	 * writes.
+	 */
+	private static final class ChannelInputStream extends InputStream {
+		private final SocketChannel channel;
+
+		private ChannelInputStream(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			Objects.checkFromIndexSize(off, len, b.length);
+			if (len == 0) {
+				return 0;
+			}
+			return channel.read(ByteBuffer.wrap(b, off, len));
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes straight to a blocking channel, without holding a lock that
+	 * reading needs.
+	 */
+	private static final class ChannelOutputStream extends OutputStream {
+		private final SocketChannel channel;
+
+		private ChannelOutputStream(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			Objects.checkFromIndexSize(off, len, b.length);
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
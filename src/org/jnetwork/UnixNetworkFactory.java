@@ -0,0 +1,27 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+
+/**
+ * A factory for creating Unix domain sockets. Servers listen on the socket
+ * file given by {@link UnixServer#getSocketPath(int)}, and connections are
+ * made to it, so a port names a server just as it does for TCP. Unix domain
+ * sockets only reach the same host, so the host of a connection is ignored.
+ * 
+ * @author Lucas Baizer
+ */
+public class UnixNetworkFactory extends NetworkFactory {
+	UnixNetworkFactory() {
+	}
+
+	@Override
+	public Connection createConnection(String host, int port) throws UnknownHostException, IOException {
+		return new UnixConnection(port);
+	}
+
+	@Override
+	public Server createServer(int port, ClientConnectionCallback l) throws ServerException {
+		return new UnixServer(port, (TCPConnectionCallback) l);
+	}
+}
@@ -0,0 +1,187 @@
+package org.jnetwork;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+/**
+ * A Unix domain socket representation of the Server object. Used for sending
+ * and receiving data with UnixConnection objects on the same host, without
+ * going through the TCP/IP stack. Clients are served exactly as a
+ * {@link TCPServer} serves them, so the same {@link TCPConnectionCallback} can
+ * be used with either.
+ *
+ * A server created with a port listens on the socket file given by
+ * {@link #getSocketPath(int)}, so a {@link UnixConnection} can find it from
+ * the port alone. The socket file is created when the server starts, replacing
+ * a stale one left behind by a server that did not close, and is deleted when
+ * the server closes.
+ *
+ * Clients of a Unix domain socket usually have no address of their own, so
+ * they cannot be told apart with {@link #getClient(java.net.SocketAddress)}.
+ * The server's connection handler is given each accepted
+ * <code>SocketChannel</code>, and an {@link AdmissionController} counts every
+ * client as coming from the same address.
+ *
+ * @author Lucas Baizer
+ */
+public class UnixServer extends TCPServer {
+	protected ServerSocketChannel channel;
+	protected final Path path;
+
+	/**
+	 * Creates a server that listens on the socket file for <code>port</code>.
+	 *
+	 * @param port
+	 *            - The port, which names the socket file.
+	 * @param clientSocketThread
+	 *            - The callback to serve each client with.
+	 */
+	public UnixServer(int port, TCPConnectionCallback clientSocketThread) {
+		super(port, clientSocketThread);
+
+		this.path = getSocketPath(port);
+	}
+
+	/**
+	 * Creates a server that listens on a socket file.
+	 *
+	 * @param path
+	 *            - The path of the socket file.
+	 * @param clientSocketThread
+	 *            - The callback to serve each client with.
+	 */
+	public UnixServer(Path path, TCPConnectionCallback clientSocketThread) {
+		super(-1, clientSocketThread);
+
+		this.path = Objects.requireNonNull(path);
+	}
+
+	/**
+	 * Gets the socket file a server created with a port listens on,
+	 * <code>jnetwork-&lt;port&gt;.sock</code> in the temporary directory.
+	 *
+	 * @param port
+	 *            - The port.
+	 * @return The path of the socket file.
+	 */
+	public static Path getSocketPath(int port) {
+		return Paths.get(System.getProperty("java.io.tmpdir"), "jnetwork-" + port + ".sock");
+	}
+
+	@Override
+	public void start() throws IOException {
+		if (Files.exists(path)) {
+			// only replace the file if nothing is listening on it any more
+			boolean listening;
+			try (SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+				listening = probe.connect(UnixDomainSocketAddress.of(path));
+			} catch (IOException e) {
+				listening = false;
+			}
+			if (listening) {
+				throw new BindException("Address already in use: " + path);
+			}
+			Files.deleteIfExists(path);
+		}
+
+		channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.bind(UnixDomainSocketAddress.of(path), capacity == -1 ? 0 : capacity);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		super.startDispatch();
+	}
+
+	/**
+	 * Accepts a client. Every acceptor shares the one listening channel.
+	 */
+	@Override
+	protected void launchNewThread(int acceptor) throws IOException {
+		SocketChannel client;
+		try {
+			client = channel.accept();
+		} catch (IOException e) {
+			if (!channel.isOpen()) {
+				return;
+			}
+			throw e;
+		}
+
+		if (!admit(client)) {
+			getMetrics().markRejected();
+			client.close();
+		} else {
+			getMetrics().markAccepted();
+			ClientData event;
+			try {
+				event = new ClientData(new UnixConnection(client));
+			} catch (IOException e) {
+				release(client);
+				client.close();
+				throw e;
+			}
+			releaseOnClose(event, client);
+			launchThreadForConnectedClient(event, "UnixServer");
+		}
+	}
+
+	/**
+	 * Closes the listening channel and deletes the socket file.
+	 */
+	@Override
+	protected void stopAccepting() throws IOException {
+		closeChannel();
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		closeChannel();
+		super.close();
+	}
+
+	private void closeChannel() throws IOException {
+		if (channel != null && channel.isOpen()) {
+			channel.close();
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * A Unix domain server has no <code>ServerSocket</code>; see
+	 * {@link #getServerChannel()}.
+	 *
+	 * @return <code>null</code>.
+	 */
+	@Override
+	public ServerSocket getServerSocket() {
+		return null;
+	}
+
+	/**
+	 * @return The channel the server listens on, or <code>null</code> if it
+	 *         has not been started.
+	 */
+	public ServerSocketChannel getServerChannel() {
+		return channel;
+	}
+
+	/**
+	 * @return The path of the socket file the server listens on.
+	 */
+	public Path getSocketPath() {
+		return path;
+	}
+}
@@ -0,0 +1,24 @@
+package org.jnetwork;
+
+/**
+ * Used in pair with an {@link OutboundQueue} to find out when a client falls
+ * behind on the data written to it, and when it catches up again.
+ * 
+ * @see Server#setWritabilityCallback(WritabilityCallback)
+ * 
+ * @author Lucas Baizer
+ */
+public interface WritabilityCallback {
+	/**
+	 * This method gets called on when the bytes queued for a client rise to
+	 * the high watermark, making the client unwritable, and when they fall
+	 * back to the low watermark, making it writable again. Producers should
+	 * stop offering data to an unwritable client until it is writable again.
+	 * 
+	 * @param event
+	 *            - The client.
+	 * @param writable
+	 *            - If the client is now writable.
+	 */
+	public void writabilityChanged(ClientData event, boolean writable);
+}
@@ -0,0 +1,57 @@
+package org.jnetwork;
+
+/**
+ * A snapshot of how many writes made to a {@link Connection} were handed off
+ * to its socket, as shaped by its {@link FlushPolicy}.
+ * 
+ * This class is immutable.
+ * 
+ * @see Connection#getWriteStatistics()
+ * 
+ * @author Lucas Baizer
+ */
+public final class WriteStatistics {
+	private final long writes;
+	private final long socketWrites;
+	private final long bytes;
+
+	WriteStatistics(long writes, long socketWrites, long bytes) {
+		this.writes = writes;
+		this.socketWrites = socketWrites;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @return The number of writes made to the connection.
+	 */
+	public long getWrites() {
+		return writes;
+	}
+
+	/**
+	 * @return The number of writes handed off to the socket, each of which is
+	 *         a system call.
+	 */
+	public long getSocketWrites() {
+		return socketWrites;
+	}
+
+	/**
+	 * @return The number of system calls saved by buffering writes.
+	 */
+	public long getSavedWrites() {
+		return Math.max(writes - socketWrites, 0);
+	}
+
+	/**
+	 * @return The number of bytes written to the connection.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return "WriteStatistics:[writes=" + writes + ",socketWrites=" + socketWrites + ",bytes=" + bytes + "]";
+	}
+}
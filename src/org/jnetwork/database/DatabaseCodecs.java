@@ -0,0 +1,138 @@
+package org.jnetwork.database;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jnetwork.CompactCodec;
+
+/**
+ * Registers compact encodings for the types sent between a
+ * {@link QueryConnection} and a {@link DatabaseServerConnectionHandler}.
+ * 
+ * @author Lucas Baizer
+ */
+public final class DatabaseCodecs {
+	public static final int ENTRY_ID = 1;
+	public static final int ENTRY_SET_ID = 2;
+	public static final int COLUMN_HEADER_ID = 3;
+
+	private DatabaseCodecs() {
+	}
+
+	/**
+	 * @return A new {@link CompactCodec} with the database types registered.
+	 */
+	public static CompactCodec newCompactCodec() {
+		return register(new CompactCodec());
+	}
+
+	/**
+	 * Registers the database types with a {@link CompactCodec}, using the IDs
+	 * {@link #ENTRY_ID}, {@link #ENTRY_SET_ID} and {@link #COLUMN_HEADER_ID}.
+	 * 
+	 * @param codec
+	 *            - The codec.
+	 * @return The codec.
+	 */
+	public static CompactCodec register(CompactCodec codec) {
+		codec.register(ENTRY_ID, Entry.class, new CompactCodec.TypeAdapter<Entry>() {
+			@Override
+			public void write(Entry value, CompactCodec.Writer out) throws IOException {
+				writeEntry(value, out);
+			}
+
+			@Override
+			public Entry read(CompactCodec.Reader in) throws IOException, ClassNotFoundException {
+				return readEntry(in);
+			}
+		});
+		codec.register(ENTRY_SET_ID, EntrySet.class, new CompactCodec.TypeAdapter<EntrySet>() {
+			@Override
+			public void write(EntrySet value, CompactCodec.Writer out) throws IOException {
+				ColumnHeader[] headers = value.getTableColumnHeaders();
+				if (headers == null) {
+					out.writeVarInt(0);
+				} else {
+					out.writeVarInt(headers.length + 1);
+					for (ColumnHeader header : headers) {
+						writeColumnHeader(header, out);
+					}
+				}
+
+				out.writeVarInt(value.size());
+				for (Entry entry : value) {
+					writeEntry(entry, out);
+				}
+			}
+
+			@Override
+			public EntrySet read(CompactCodec.Reader in) throws IOException, ClassNotFoundException {
+				EntrySet set = new EntrySet();
+				int headerCount = in.readVarInt() - 1;
+				if (headerCount >= 0) {
+					ColumnHeader[] headers = new ColumnHeader[headerCount];
+					for (int i = 0; i < headers.length; i++) {
+						headers[i] = readColumnHeader(in);
+					}
+					set.setTableColumnHeaders(headers);
+				}
+
+				int size = in.readVarInt();
+				for (int i = 0; i < size; i++) {
+					set.add(readEntry(in));
+				}
+				return set;
+			}
+		});
+		codec.register(COLUMN_HEADER_ID, ColumnHeader.class, new CompactCodec.TypeAdapter<ColumnHeader>() {
+			@Override
+			public void write(ColumnHeader value, CompactCodec.Writer out) throws IOException {
+				writeColumnHeader(value, out);
+			}
+
+			@Override
+			public ColumnHeader read(CompactCodec.Reader in) throws IOException, ClassNotFoundException {
+				return readColumnHeader(in);
+			}
+		});
+		return codec;
+	}
+
+	private static void writeEntry(Entry entry, CompactCodec.Writer out) throws IOException {
+		out.writeValue(entry.getEntryID());
+		out.writeSignedVarLong(entry.getQueryTime());
+
+		Map<String, Serializable> data = entry.getDataMap();
+		out.writeVarInt(data.size());
+		for (Map.Entry<String, Serializable> column : data.entrySet()) {
+			out.writeValue(column.getKey());
+			out.writeValue(column.getValue());
+		}
+	}
+
+	private static Entry readEntry(CompactCodec.Reader in) throws IOException, ClassNotFoundException {
+		String entryID = (String) in.readValue();
+		long queryTime = in.readSignedVarLong();
+
+		int size = in.readVarInt();
+		LinkedHashMap<String, Serializable> data = new LinkedHashMap<>();
+		for (int i = 0; i < size; i++) {
+			data.put((String) in.readValue(), in.readValue());
+		}
+
+		Entry entry = new Entry(data, entryID);
+		entry.setQueryTime(queryTime);
+		return entry;
+	}
+
+	private static void writeColumnHeader(ColumnHeader header, CompactCodec.Writer out) throws IOException {
+		out.writeValue(header.getColumnName());
+		out.writeVarInt(header.getStorageType());
+	}
+
+	private static ColumnHeader readColumnHeader(CompactCodec.Reader in) throws IOException, ClassNotFoundException {
+		return new ColumnHeader((String) in.readValue(), in.readVarInt());
+	}
+}
@@ -1,30 +1,65 @@
 package org.jnetwork.database;
 
+import java.io.IOException;
+
 import org.jnetwork.DataPackage;
 import org.jnetwork.ClientData;
+import org.jnetwork.Connection;
+import org.jnetwork.MessageCodec;
 import org.jnetwork.TCPConnectionCallback;
 
 public class DatabaseServerConnectionHandler implements TCPConnectionCallback {
 	private Database db;
+	private MessageCodec codec;
 
 	public DatabaseServerConnectionHandler(Database database) {
 		this.db = database;
 	}
 
+	/**
+	 * Creates a handler that receives queries and sends their results as
+	 * frames encoded with <code>codec</code>, instead of through the object
+	 * streams. Clients must connect with a {@link QueryConnection} using the
+	 * same codec.
+	 * 
+	 * @see DatabaseCodecs#newCompactCodec()
+	 */
+	public DatabaseServerConnectionHandler(Database database, MessageCodec codec) {
+		this.db = database;
+		this.codec = codec;
+	}
+
+	private void send(Connection client, DataPackage pkg) throws IOException {
+		if (codec == null) {
+			client.getObjectOutputStream().writeObject(pkg);
+		} else {
+			client.writeMessage(pkg);
+			client.flush();
+		}
+	}
+
+	private DataPackage receive(Connection client) throws IOException, ClassNotFoundException {
+		return codec == null ? (DataPackage) client.getObjectInputStream().readObject()
+				: (DataPackage) client.readMessage();
+	}
+
 	@Override
 	public void clientConnected(ClientData event) {
+		if (codec != null) {
+			event.getConnection().setMessageCodec(codec);
+		}
+
 		try {
 			while (true) {
-				DataPackage in = (DataPackage) event.getConnection().getObjectInputStream().readObject();
+				DataPackage in = receive(event.getConnection());
 				if (in.getMessage().equals("SERVER_DATABASE_QUERY")) {
 					Query query = (Query) in.getObjects()[0];
 					try {
 						EntrySet set = db.query(query);
-						event.getConnection().getObjectOutputStream()
-								.writeObject(new DataPackage(set).setMessage("SERVER_DATABASE_QUERY_RESPONSE_SUCCESS"));
+						send(event.getConnection(),
+								new DataPackage(set).setMessage("SERVER_DATABASE_QUERY_RESPONSE_SUCCESS"));
 					} catch (QueryException e) {
-						event.getConnection().getObjectOutputStream()
-								.writeObject(new DataPackage(e).setMessage("SERVER_DATABASE_QUERY_RESPONSE_ERROR"));
+						send(event.getConnection(), new DataPackage(e).setMessage("SERVER_DATABASE_QUERY_RESPONSE_ERROR"));
 					}
 				} else {
 					return;
@@ -43,4 +78,8 @@ public class DatabaseServerConnectionHandler implements TCPConnectionCallback {
 	public void setDatabase(Database db) {
 		this.db = db;
 	}
+
+	public MessageCodec getMessageCodec() {
+		return codec;
+	}
 }
@@ -28,6 +28,10 @@ public class Entry implements Serializable {
 		return data.get(column);
 	}
 
+	Map<String, Serializable> getDataMap() {
+		return data;
+	}
+
 	public void setData(String column, Serializable value) {
 		data.put(column, value);
 	}
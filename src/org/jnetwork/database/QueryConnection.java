@@ -1,25 +1,65 @@
 package org.jnetwork.database;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.UnknownHostException;
 
 import org.jnetwork.Connection;
 import org.jnetwork.DataPackage;
+import org.jnetwork.MessageCodec;
 import org.jnetwork.Protocol;
 import org.jnetwork.TCPConnection;
 
 public class QueryConnection {
 	private Connection client;
+	private boolean framed;
 
 	public QueryConnection(String host, int port, Protocol protocol) throws UnknownHostException, IOException {
 		client = protocol.getNetworkFactory().createConnection(host, port);
 	}
 
+	/**
+	 * Sends queries over an existing connection, such as one leased from a
+	 * {@link org.jnetwork.ConnectionPool}. {@link #closeConnection()} ends the
+	 * session with the server; to hand a leased connection back to its pool
+	 * for the next query, close <code>client</code> instead.
+	 */
+	public QueryConnection(Connection client) {
+		this.client = client;
+	}
+
+	/**
+	 * Creates a connection that sends queries and receives their results as
+	 * frames encoded with <code>codec</code>, instead of through the object
+	 * streams. The server's {@link DatabaseServerConnectionHandler} must use
+	 * the same codec.
+	 * 
+	 * @see DatabaseCodecs#newCompactCodec()
+	 */
+	public QueryConnection(String host, int port, Protocol protocol, MessageCodec codec)
+			throws UnknownHostException, IOException {
+		this(host, port, protocol);
+		client.setMessageCodec(codec);
+		framed = true;
+	}
+
+	private void send(DataPackage pkg) throws IOException {
+		if (framed) {
+			client.writeMessage(pkg);
+			client.flush();
+		} else {
+			client.getObjectOutputStream().writeObject(pkg);
+		}
+	}
+
+	private Serializable receive() throws IOException, ClassNotFoundException {
+		return framed ? client.readMessage() : (Serializable) client.getObjectInputStream().readObject();
+	}
+
 	public synchronized EntrySet query(String query) throws IOException, QueryException {
 		try {
-			client.getObjectOutputStream()
-					.writeObject(new DataPackage(Query.parseQuery(query)).setMessage("SERVER_DATABASE_QUERY"));
-			DataPackage response = (DataPackage) client.getObjectInputStream().readObject();
+			send(new DataPackage(Query.parseQuery(query)).setMessage("SERVER_DATABASE_QUERY"));
+			DataPackage response = (DataPackage) receive();
 			if (response.getMessage().equals("SERVER_DATABASE_QUERY_RESPONSE_ERROR")) {
 				throw (QueryException) response.getObjects()[0];
 			} else {
@@ -31,7 +71,7 @@ public class QueryConnection {
 	}
 
 	public synchronized void closeConnection() throws IOException {
-		client.getObjectOutputStream().writeObject(new DataPackage().setMessage("CLIENT_DATABASE_CLOSE_CONNECTION"));
+		send(new DataPackage().setMessage("CLIENT_DATABASE_CLOSE_CONNECTION"));
 		if (client instanceof TCPConnection) {
 			((TCPConnection) client).getOutputStream().flush();
 		}